@@ -0,0 +1,42 @@
+package me.fabriciorby.nes;
+
+import me.fabriciorby.nes.cartridge.Cartridge;
+import me.fabriciorby.nes.ppu.Ppu;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Whole frames of nestest per second, the whole machine in every mode and renderer. With -prof gc,
+// gc.alloc.rate.norm is the bytes allocated per frame.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameBenchmark {
+
+    @Param({"DOT", "INSTRUCTION", "RECOMPILED"})
+    public Bus.Mode mode;
+
+    @Param({"DOT", "SCANLINE"})
+    public Ppu.Renderer renderer;
+
+    private Bus nes;
+
+    @Setup
+    public void setup() {
+        nes = new Bus();
+        nes.setMode(mode);
+        nes.ppu.setRenderer(renderer);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+    }
+
+    @Benchmark
+    public Bus frame() {
+        nes.frame();
+        return nes;
+    }
+
+}
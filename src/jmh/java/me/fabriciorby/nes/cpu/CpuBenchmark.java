@@ -0,0 +1,76 @@
+package me.fabriciorby.nes.cpu;
+
+import me.fabriciorby.nes.Bus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+// Instructions per second on a flat 64KB bus like CpuTest's, so only the CPU is measured: no mirroring, PPU or
+// mapper behind the reads. The program is CpuTest's multiply with a JMP back to the start, loads, stores, ADC and
+// a taken branch in a loop.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+
+    private static final int INSTRUCTIONS = 10_000;
+    private static final String PROGRAM = "A2 0A 8E 00 00 A2 03 8E 01 00 AC 00 00 A9 00 18 6D 01 00 88 D0 FA 8D 02 00 4C 00 80";
+
+    private Bus bus;
+
+    @Setup
+    public void setup() {
+        bus = new Bus() {
+            {
+                this.cpuRam = new int[0x10000];
+            }
+
+            @Override
+            public void cpuWrite(int address, int data) {
+                cpuRam[address] = data;
+            }
+
+            @Override
+            public int cpuRead(int address, boolean readOnly) {
+                return cpuRam[address];
+            }
+        };
+        byte[] program = HexFormat.ofDelimiter(" ").parseHex(PROGRAM);
+        for (int i = 0; i < program.length; i++) {
+            bus.cpuRam[0x8000 + i] = program[i] & 0xFF;
+        }
+        bus.cpuRam[0xFFFC] = 0x00;
+        bus.cpuRam[0xFFFD] = 0x80;
+        bus.cpu.reset();
+    }
+
+    // Cycle by cycle, the way Bus.clock() drives it
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public long clock() {
+        Cpu cpu = bus.cpu;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            do {
+                cpu.clock();
+            } while (!cpu.complete());
+        }
+        return cpu.clockCount;
+    }
+
+    // One clock() per instruction and the rest skipped, the way Bus.step() drives it
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public long step() {
+        Cpu cpu = bus.cpu;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            cpu.clock();
+            cpu.skipCycles(cpu.getCycles());
+        }
+        return cpu.clockCount;
+    }
+
+}
@@ -0,0 +1,53 @@
+package me.fabriciorby.nes.ppu;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Dots per second through Ppu.clock() alone, a frame's worth per invocation. nestest runs a few frames first so
+// its menu is in the name tables, then the CPU stays out of it and the mask register decides whether anything is
+// drawn at all.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PpuBenchmark {
+
+    private static final int DOTS = 341 * 262;
+
+    @Param({"DOT", "SCANLINE"})
+    public Ppu.Renderer renderer;
+
+    @Param({"true", "false"})
+    public boolean rendering;
+
+    private Ppu ppu;
+
+    @Setup
+    public void setup() {
+        Bus nes = new Bus();
+        nes.setMode(Bus.Mode.INSTRUCTION);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        for (int frame = 0; frame < 10; frame++) nes.frame();
+        ppu = nes.ppu;
+        ppu.setRenderer(renderer);
+        ppu.cpuWrite(0x0001, rendering ? 0x1E : 0x00); // background and sprites, left columns included
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOTS)
+    public boolean clock() {
+        for (int i = 0; i < DOTS; i++) {
+            ppu.clock();
+        }
+        ppu.catchUp();
+        ppu.nonMaskableInterrupt = false;
+        return ppu.frameComplete;
+    }
+
+}
@@ -1,4 +0,0 @@
-package me.fabriciorby.nes;
-
-public class Apu {
-}
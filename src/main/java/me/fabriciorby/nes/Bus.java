@@ -1,18 +1,34 @@
 package me.fabriciorby.nes;
 
+import me.fabriciorby.nes.apu.Apu;
 import me.fabriciorby.nes.cartridge.Cartridge;
 import me.fabriciorby.nes.cpu.Cpu;
+import me.fabriciorby.nes.cpu.Recompiler;
+import me.fabriciorby.nes.cpu.StatusRegister;
 import me.fabriciorby.nes.ppu.Ppu;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class Bus {
 
-    int clockCounter;
+    public enum Mode {
+        DOT, // one clock() per PPU dot, the CPU ticks every third call
+        INSTRUCTION, // a whole CPU instruction at once, then the PPU catches up
+        RECOMPILED // hot basic blocks run as generated classes, interrupts are only checked between blocks
+    }
+
+    long clockCounter;
+    private Mode mode = Mode.DOT;
 
     public Cpu cpu = new Cpu();
     public Ppu ppu = new Ppu();
+    public Apu apu = new Apu();
     public int[] cpuRam = new int[2048];
     private Cartridge cartridge;
+    // What the game gets on its next strobe. With a live input plugged in, the strobe reads it and keeps it here.
     public byte[] controller = new byte[2];
+    private final Controller[] inputs = new Controller[2];
     private byte[] controllerState = new byte[2];
 
     private int dmaPage;
@@ -22,54 +38,157 @@ public class Bus {
     private boolean dmaTransfer;
     private boolean dmaDummy;
 
+    // What RAM and PRG RAM held before a state was loaded, to find the pages translated code has to leave
+    private final int[] ramBeforeLoad = new int[2048];
+    private final byte[] prgRamBeforeLoad = new byte[8192];
+
+    // What answers each 256 byte page of the CPU address space, so an access is one switch and an array index
+    // instead of asking the mapper twice and walking the address ranges. Rebuilt on every bank switch.
+    private static final byte OPEN_BUS = 0;
+    private static final byte RAM = 1;
+    private static final byte MEMORY = 2;
+    private static final byte MAPPER = 3;
+    private static final byte PPU = 4;
+    private static final byte IO = 5;
+
+    private final byte[] readPages = new byte[256];
+    private final byte[] writePages = new byte[256];
+    private final byte[][] readMemory = new byte[256][];
+    private final byte[][] writeMemory = new byte[256][];
+    private final int[] readOffsets = new int[256];
+    private final int[] writeOffsets = new int[256];
+
     public Bus() {
         cpu.connectBus(this);
+        apu.connectBus(this);
+        mapCpuPages();
     }
 
     public void cpuWrite(int address, int data) {
-        if (cartridge.cpuCanWrite(address)) {
-            cartridge.cpuWrite(address, data);
-        } else if (address >= 0x0000 && address <= 0x1FFF) {
-            cpuRam[address & 0x07FF] = data;
-        } else if (address >= 0x2000 && address <= 0x3FFF) {
-            ppu.cpuWrite(address & 0x0007, data);
-        } else if (address == 0x4014) {
+        int page = (address >> 8) & 0xFF;
+        switch (writePages[page]) {
+            case RAM -> cpuRam[address & 0x07FF] = data;
+            case MEMORY -> writeMemory[page][writeOffsets[page] | (address & 0xFF)] = (byte) data;
+            case MAPPER -> {
+                ppu.catchUp();
+                cartridge.cpuWrite(address, data);
+            }
+            case PPU -> ppu.cpuWrite(address & 0x0007, data);
+            case IO -> ioWrite(address, data);
+        }
+    }
+
+    public int cpuRead(int address, boolean readOnly) {
+        int page = (address >> 8) & 0xFF;
+        return switch (readPages[page]) {
+            case RAM -> cpuRam[address & 0x07FF];
+            case MEMORY -> Byte.toUnsignedInt(readMemory[page][readOffsets[page] | (address & 0xFF)]);
+            case PPU -> ppu.cpuRead(address & 0x0007, readOnly);
+            case IO -> ioRead(address, readOnly);
+            default -> 0x00;
+        };
+    }
+
+    private void ioWrite(int address, int data) {
+        if (address == 0x4014) {
             dmaPage = data;
             dmaAddress = 0x00;
             dmaTransfer = true;
-        } else if (address >= 0x4016 && address <= 0x4017) {
-            controllerState[address & 0x0001] = controller[address & 0x0001];
+        } else if (address == 0x4016) {
+            // one strobe latches both ports
+            for (int port = 0; port < 2; port++) {
+                Controller input = inputs[port];
+                if (input != null) controller[port] = input.getByteCode();
+                controllerState[port] = controller[port];
+            }
+        } else if (address <= 0x4017) {
+            apu.cpuWrite(address, data);
         }
     }
 
-    public int cpuRead(int address, boolean readOnly) {
-        if (cartridge.cpuCanRead(address)) {
-            return cartridge.cpuRead(address);
-        } else if (address >= 0x0000 && address <= 0x1FFF) {
-            return cpuRam[address & 0x07FF];
-        } else if (address >= 0x2000 && address <= 0x3FFF) {
-            return ppu.cpuRead(address & 0x0007, readOnly);
+    private int ioRead(int address, boolean readOnly) {
+        if (address == 0x4015) {
+            return apu.readStatus(readOnly);
         } else if (address >= 0x4016 && address <= 0x4017) {
             int data = Byte.toUnsignedInt((byte) (controllerState[address & 0x0001] & 0x80)) > 0 ? 1 : 0;
-            controllerState[address & 0x0001] <<= 1;
+            if (!readOnly) controllerState[address & 0x0001] <<= 1;
             return data;
         }
         return 0x00;
     }
 
+    // RAM, the PPU registers and the I/O page never move. PRG RAM and the PRG windows point straight into the
+    // cartridge arrays, writes to the windows go to the mapper registers instead.
+    private void mapCpuPages() {
+        for (int page = 0; page < 256; page++) {
+            byte type;
+            if (page <= 0x1F) type = RAM;
+            else if (page <= 0x3F) type = PPU;
+            else if (page == 0x40) type = IO;
+            else type = OPEN_BUS;
+            readPages[page] = type;
+            writePages[page] = type;
+        }
+        if (cartridge == null) return;
+        for (int page = 0x60; page <= 0x7F; page++) {
+            readPages[page] = MEMORY;
+            writePages[page] = MEMORY;
+            readMemory[page] = cartridge.getPRGRam();
+            writeMemory[page] = cartridge.getPRGRam();
+            readOffsets[page] = (page & 0x1F) << 8;
+            writeOffsets[page] = (page & 0x1F) << 8;
+        }
+        for (int page = 0x80; page <= 0xFF; page++) {
+            readPages[page] = MEMORY;
+            writePages[page] = MAPPER;
+            readMemory[page] = cartridge.getPRG();
+            readOffsets[page] = cartridge.prgOffset(page << 8);
+        }
+    }
+
+    // Only blocks translated from an 8KB PRG window that shows another bank now are stale, RAM, the windows that
+    // stayed and CHR or mirroring switches don't concern the recompiler
+    private void banksSwitched() {
+        Recompiler recompiler = cpu.getRecompiler();
+        boolean prgMoved = false;
+        for (int window = 0x80; window <= 0xFF; window += 0x20) {
+            if (readOffsets[window] == cartridge.prgOffset(window << 8)) continue;
+            prgMoved = true;
+            if (recompiler == null) continue;
+            for (int page = window; page < window + 0x20; page++) {
+                recompiler.invalidate(page << 8);
+            }
+        }
+        if (prgMoved) mapCpuPages();
+        ppu.mapPages();
+    }
+
     public int cpuRead(int address) {
         return this.cpuRead(address, false);
     }
 
+    // Sampled the moment the game latches the port, up to a frame fresher than setting controller[] between frames.
+    // null goes back to controller[], which is what anything that needs frame-exact input (movies, scripts) wants.
+    public void setInput(int port, Controller input) {
+        inputs[port] = input;
+    }
+
+    public Cartridge getCartridge() {
+        return cartridge;
+    }
+
     public void insert(Cartridge cartridge) {
         this.cartridge = cartridge;
         this.ppu.connect(cartridge);
+        cartridge.setBankListener(this::banksSwitched);
+        mapCpuPages();
     }
 
     public void reset() {
         cartridge.reset();
         cpu.reset();
         ppu.reset();
+        apu.reset();
         clockCounter = 0;
     }
 
@@ -85,6 +204,7 @@ public class Bus {
                     if (clockCounter % 2 == 0) {
                         dmaData = cpuRead(dmaPage << 8 | dmaAddress);
                     } else {
+                        ppu.catchUp();
                         ppu.OAM.setData(dmaData, dmaAddress);
                         dmaAddress++;
                         if (dmaAddress > 255) { //byte overflow: I simply don't exist
@@ -95,8 +215,10 @@ public class Bus {
                     }
                 }
             } else {
+                if (cpu.complete() && apu.irq()) cpu.interruptRequestSignal();
                 cpu.clock();
             }
+            apu.clock();
         }
 
         if (ppu.nonMaskableInterrupt) {
@@ -107,4 +229,139 @@ public class Bus {
         clockCounter++;
     }
 
+    // Runs the CPU one whole instruction and then advances the PPU the 3 dots per CPU cycle it owes, instead of
+    // calling Cpu.clock() just to count the cycles down. The Bus ends up exactly where the same number of
+    // clock() calls would leave it: the NMI still lands on the same dot and stalls the CPU from there, DMA and
+    // anything not aligned to an instruction boundary simply go through clock().
+    public void step() {
+        if (dmaTransfer || clockCounter % 3 != 0 || !cpu.complete()) {
+            clock();
+            return;
+        }
+        clock();
+        if (dmaTransfer || ppu.frameComplete) return;
+
+        int elapsed = 0;
+        int phase = 1;
+        while (true) {
+            if (phase == 0) {
+                if (elapsed == cpu.getCycles()) break;
+                elapsed++;
+                apu.clock();
+            }
+            ppu.clock();
+            if (ppu.nonMaskableInterrupt) {
+                ppu.nonMaskableInterrupt = false;
+                cpu.skipCycles(elapsed);
+                elapsed = 0;
+                cpu.nonMaskableInterruptRequestSignal();
+            }
+            clockCounter++;
+            if (ppu.frameComplete) break;
+            phase = phase == 2 ? 0 : phase + 1;
+        }
+        cpu.skipCycles(elapsed);
+    }
+
+    // Not cycle exact like step(): the whole block runs before the PPU catches up with it, and an NMI raised
+    // during the catch-up waits for the end of the block.
+    public void stepBlock() {
+        if (dmaTransfer || clockCounter % 3 != 0 || !cpu.complete() || interruptPending()) {
+            clock();
+            return;
+        }
+        int blockCycles = cpu.runBlock();
+        if (blockCycles == 0) {
+            step();
+            return;
+        }
+        for (int cycle = 0; cycle < blockCycles; cycle++) {
+            ppu.clock();
+            ppu.clock();
+            ppu.clock();
+            clockCounter += 3;
+            apu.clock();
+        }
+        if (ppu.nonMaskableInterrupt) {
+            ppu.nonMaskableInterrupt = false;
+            cpu.nonMaskableInterruptRequestSignal();
+        }
+    }
+
+    public void frame() {
+        switch (mode) {
+            case DOT -> { do { clock(); } while (!ppu.frameComplete); }
+            case INSTRUCTION -> { do { step(); } while (!ppu.frameComplete); }
+            case RECOMPILED -> { do { stepBlock(); } while (!ppu.frameComplete); }
+        }
+        ppu.frameComplete = false;
+        apu.endFrame();
+    }
+
+    // An IRQ the CPU would take at the next instruction boundary
+    private boolean interruptPending() {
+        return apu.irq() && !cpu.getBooleanFlag(StatusRegister.DISABLE_INTERRUPTS);
+    }
+
+    // The whole machine, see SaveState for the format around it. The mode and the renderer are settings, not
+    // state, a state saved in one can be loaded in any other.
+    public void saveState(ByteBuffer buffer) {
+        cpu.saveState(buffer);
+        for (int data : cpuRam) buffer.put((byte) data);
+        buffer.putLong(clockCounter);
+        buffer.put(controllerState);
+        buffer.put((byte) dmaPage).put((byte) dmaAddress).put((byte) dmaData);
+        buffer.put((byte) (dmaTransfer ? 1 : 0)).put((byte) (dmaDummy ? 1 : 0));
+        ppu.saveState(buffer);
+        apu.saveState(buffer);
+        cartridge.saveState(buffer);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        Recompiler recompiler = cpu.getRecompiler();
+        if (recompiler != null) {
+            System.arraycopy(cpuRam, 0, ramBeforeLoad, 0, cpuRam.length);
+            System.arraycopy(cartridge.getPRGRam(), 0, prgRamBeforeLoad, 0, prgRamBeforeLoad.length);
+        }
+        cpu.loadState(buffer);
+        for (int i = 0; i < cpuRam.length; i++) cpuRam[i] = buffer.get() & 0xFF;
+        clockCounter = buffer.getLong();
+        buffer.get(controllerState);
+        dmaPage = buffer.get() & 0xFF;
+        dmaAddress = buffer.get() & 0xFF;
+        dmaData = buffer.get() & 0xFF;
+        dmaTransfer = buffer.get() != 0;
+        dmaDummy = buffer.get() != 0;
+        ppu.loadState(buffer);
+        apu.loadState(buffer);
+        cartridge.loadState(buffer);
+
+        // Loading states back and forth (rewind, run-ahead) shouldn't throw away every translated block, only the
+        // ones from RAM pages that changed. A bank switch in the state already dropped the windows it moved.
+        if (recompiler != null) {
+            byte[] prgRam = cartridge.getPRGRam();
+            for (int page = 0; page < 8; page++) {
+                int from = page << 8;
+                if (Arrays.mismatch(ramBeforeLoad, from, from + 256, cpuRam, from, from + 256) >= 0) {
+                    recompiler.invalidate(from);
+                }
+            }
+            for (int page = 0; page < 32; page++) {
+                int from = page << 8;
+                if (Arrays.mismatch(prgRamBeforeLoad, from, from + 256, prgRam, from, from + 256) >= 0) {
+                    recompiler.invalidate(0x6000 + from);
+                }
+            }
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        cpu.setRecompiler(mode == Mode.RECOMPILED);
+    }
+
 }
@@ -1,7 +1,9 @@
 package me.fabriciorby.nes;
 
-import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// The buttons held right now, one bit per Key. Any thread can press and release (the keyboard, a script, a socket)
+// while the emulation thread reads it whenever the game strobes $4016, nothing is locked on either side.
 public class Controller {
     public enum Key {
         RIGHT((byte) 0x01),
@@ -20,12 +22,23 @@ public class Controller {
         }
     }
 
-    EnumMap<Key, Boolean> pressedKeys = new EnumMap<>(Key.class);
+    private final AtomicInteger buttons = new AtomicInteger();
+
+    public void set(Key key, boolean pressed) {
+        int bit = key.value & 0xFF;
+        int current;
+        do {
+            current = buttons.get();
+        } while (!buttons.compareAndSet(current, pressed ? current | bit : current & ~bit));
+    }
+
+    // All of them at once, for sources that already have the whole byte
+    public void setByteCode(byte code) {
+        buttons.set(code & 0xFF);
+    }
 
     public byte getByteCode() {
-        return pressedKeys.keySet().stream()
-                .map(key -> pressedKeys.get(key) ? key.value : 0x00)
-                .reduce((byte) 0x00, (acc, val) -> (byte) (acc | val));
+        return (byte) buttons.get();
     }
 
 }
@@ -2,6 +2,7 @@ package me.fabriciorby.nes;
 
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
@@ -21,13 +22,28 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import me.fabriciorby.nes.apu.AudioOutput;
+import me.fabriciorby.nes.apu.JavaSoundDevice;
 import me.fabriciorby.nes.cartridge.Cartridge;
 import me.fabriciorby.nes.cpu.Cpu;
+import me.fabriciorby.nes.cpu.CpuSnapshot;
 import me.fabriciorby.nes.cpu.Debugger;
+import me.fabriciorby.nes.cpu.InstructionHook;
+import me.fabriciorby.nes.cpu.TraceBuffer;
 import me.fabriciorby.nes.debugger.CalculateFps;
+import me.fabriciorby.nes.emulation.EmulationThread;
+import me.fabriciorby.nes.emulation.FramePacer;
+import me.fabriciorby.nes.emulation.TripleBuffer;
+import me.fabriciorby.nes.ppu.Ppu;
 import me.fabriciorby.nes.ppu.Sprite;
-
-import java.time.Instant;
+import me.fabriciorby.nes.state.Movie;
+import me.fabriciorby.nes.state.Rewind;
+import me.fabriciorby.nes.state.RunAhead;
+import me.fabriciorby.nes.state.SaveState;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -35,8 +51,7 @@ public class NesVisualDebugger extends Application {
 
     private final Bus nes = new Bus();
     private final Cpu cpu = nes.cpu;
-    private boolean emulationRun = false;
-    private float fResidualTime = 0.0f;
+    // Only the emulation thread reads and changes it
     private int selectedPalette = 0x00;
 
     private final Label flags = new Label();
@@ -45,29 +60,67 @@ public class NesVisualDebugger extends Application {
     private final Label xRegister = new Label();
     private final Label yRegister = new Label();
     private final Label stack = new Label();
-    private final ListView<String> listView = new ListView<>();;
+    private final ListView<String> listView = new ListView<>();
+    private final ObservableList<String> instructions = FXCollections.observableArrayList();
+    // 13 instructions before the current one and 15 after, each can read 2 operand bytes past its address
+    private final CpuSnapshot shownCpu = new CpuSnapshot(13, 18);
     private final TableView<int[]> tableView = new TableView<>();
-    private WritableImage render;
     private final ImageView imageView = new ImageView();
     private final ButtonBar buttonBar = new ButtonBar();
     private Parent layoutParent;
-    private float fElapsedTime;
-    private long startTime;
-    private long auxTime;
     private final Label fpsLabel = new Label();
     private final CalculateFps realFps = new CalculateFps(fpsLabel);
     private final Label emulatorFpsLabel = new Label();
-    private final CalculateFps emulatorFps = new CalculateFps(emulatorFpsLabel);
-    private WritableImage renderPalette1;
-    private WritableImage renderPalette2;
-    private final ImageView imagePalette1 = new ImageView();
-    private final ImageView imagePalette2 = new ImageView();
+    private final Label audioLabel = new Label();
+    // 44.1kHz within 40ms, null when there's no sound card and the APU stays unheard
+    private AudioOutput audio;
+    // The machine runs on its own thread at the NTSC rate, finished pictures come over through the triple buffer.
+    // Everything that touches the Bus goes through emulation.submit().
+    private final EmulationThread emulation = new EmulationThread(new FramePacer(FramePacer.NTSC_FPS), this::emulateFrame,
+            this::emulationFailed);
+    private final TripleBuffer<View> frames = new TripleBuffer<>(View::new);
+    private final ImageView[] patternViews = {new ImageView(), new ImageView()};
     private final Controller controller = new Controller();
+    private final TraceBuffer trace = new TraceBuffer(1024);
+    private static final Path STATE_FILE = Path.of("nestest.state");
+    private final SaveState saveState = new SaveState();
+    // Holding backspace plays the last minutes backwards: a snapshot every 2 frames, a keyframe every 2 seconds
+    private final Rewind rewind = new Rewind(2, 60, 64L * 1024 * 1024);
+    private volatile boolean rewinding;
+    // U cycles through 0 to 3 frames of run-ahead
+    private final RunAhead runAhead = new RunAhead(1);
+    // M starts and stops recording a movie, N plays it back from its start. A state hash every second and a keyframe
+    // every 10 seconds.
+    private static final Path MOVIE_FILE = Path.of("nestest.movie");
+    private Movie movie;
+    private boolean recording;
+    private boolean playing;
+
+    // Everything refresh() shows, filled in on the emulation thread: the FX thread never peeks the Bus or decodes
+    // tiles into the PPU's cache. The registers and the code around them are only copied, the FX thread formats
+    // them when they changed. The pictures are already ARGB and each one has its own image sharing its memory,
+    // showing a view is just pointing the ImageViews at its images. The pattern tables are only copied and
+    // converted when the PPU redrew them.
+    private static final class View {
+        final Sprite screen = new Sprite(256, 240);
+        final Sprite[] patterns = {new Sprite(128, 128), new Sprite(128, 128)};
+        final int[] patternVersions = {-1, -1};
+        final boolean[] patternsDirty = new boolean[2];
+        final PixelBuffer<IntBuffer> screenBuffer = pixelBuffer(screen);
+        final WritableImage screenImage = new WritableImage(screenBuffer);
+        final List<PixelBuffer<IntBuffer>> patternBuffers = List.of(pixelBuffer(patterns[0]), pixelBuffer(patterns[1]));
+        final WritableImage[] patternImages = {
+                new WritableImage(patternBuffers.get(0)), new WritableImage(patternBuffers.get(1))};
+        final CpuSnapshot cpu = new CpuSnapshot(13, 18);
+    }
 
     {
         Cartridge cartridge = new Cartridge("nestest.nes");
+        nes.setMode(Bus.Mode.INSTRUCTION);
+        nes.ppu.setRenderer(Ppu.Renderer.SCANLINE);
         nes.insert(cartridge);
         nes.reset();
+        nes.setInput(0, controller);
     }
 
     @Override
@@ -79,16 +132,21 @@ public class NesVisualDebugger extends Application {
         setupSpritePalette();
         setupLayout();
         setupGameLoop();
-        refresh();
 
         Scene scene = new Scene(layoutParent);
         scene.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
             switch (e.getCode()) {
-                case SPACE -> this.emulationRun = !this.emulationRun;
-                case R -> reset();
-                case C -> clock();
-                case F -> frame();
-                case P -> {++selectedPalette; selectedPalette &= 0x7;}
+                case SPACE -> emulation.setRunning(!emulation.isRunning());
+                case R -> onEmulation(this::reset);
+                case C -> onEmulation(this::clock);
+                case F -> onEmulation(this::frame);
+                case P -> onEmulation(() -> selectedPalette = (selectedPalette + 1) & 0x7);
+                case T -> onEmulation(this::toggleTrace);
+                case F5 -> onEmulation(this::saveState);
+                case F9 -> onEmulation(this::loadState);
+                case U -> onEmulation(() -> runAhead.setFrames((runAhead.getFrames() + 1) % 4));
+                case M -> onEmulation(this::toggleRecording);
+                case N -> onEmulation(this::playMovie);
             }
         });
 
@@ -99,19 +157,30 @@ public class NesVisualDebugger extends Application {
         stage.setWidth(1024);
         stage.setHeight(880);
         stage.show();
+        setupAudio();
+        // The first picture, before the emulation thread starts and while it's still safe to do from here
+        publishFrame();
+        emulation.start();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        emulation.stop();
+        if (audio != null) audio.close();
     }
 
     private EventHandler<KeyEvent> getControllerMapping(boolean value) {
        return e -> {
            switch (e.getCode()) {
-               case A -> controller.pressedKeys.put(Controller.Key.LEFT, value);
-               case S -> controller.pressedKeys.put(Controller.Key.DOWN, value);
-               case D -> controller.pressedKeys.put(Controller.Key.RIGHT, value);
-               case W -> controller.pressedKeys.put(Controller.Key.UP, value);
-               case H -> controller.pressedKeys.put(Controller.Key.START, value);
-               case J -> controller.pressedKeys.put(Controller.Key.SELECT, value);
-               case K -> controller.pressedKeys.put(Controller.Key.A, value);
-               case L -> controller.pressedKeys.put(Controller.Key.B, value);
+               case A -> controller.set(Controller.Key.LEFT, value);
+               case S -> controller.set(Controller.Key.DOWN, value);
+               case D -> controller.set(Controller.Key.RIGHT, value);
+               case W -> controller.set(Controller.Key.UP, value);
+               case H -> controller.set(Controller.Key.START, value);
+               case J -> controller.set(Controller.Key.SELECT, value);
+               case K -> controller.set(Controller.Key.A, value);
+               case L -> controller.set(Controller.Key.B, value);
+               case BACK_SPACE -> rewinding = value;
            }
        };
     }
@@ -122,57 +191,107 @@ public class NesVisualDebugger extends Application {
     }
 
     private void setupSpritePalette() {
-        this.renderPalette1 = new WritableImage(
-                nes.ppu.getPatternTable(0, selectedPalette).getWidth(),
-                nes.ppu.getPatternTable(0, selectedPalette).getHeight()
-        );
-        this.renderPalette2 = new WritableImage(
-                nes.ppu.getPatternTable(1, selectedPalette).getWidth(),
-                nes.ppu.getPatternTable(1, selectedPalette).getHeight()
-        );
+        setupImageView(patternViews[0], 128, 128, 1);
+        setupImageView(patternViews[1], 128, 128, 1);
+    }
+
+    // The image shares the sprite's ARGB array, whoever converts the sprite in place only has to mark it dirty
+    private static PixelBuffer<IntBuffer> pixelBuffer(Sprite sprite) {
+        return new PixelBuffer<>(sprite.getWidth(), sprite.getHeight(), sprite.getArgbBuffer(),
+                PixelFormat.getIntArgbPreInstance());
+    }
+
+    // The ImageView does the scaling
+    private static void setupImageView(ImageView imageView, int width, int height, int scaleFactor) {
+        imageView.setFitWidth(width * scaleFactor);
+        imageView.setFitHeight(height * scaleFactor);
+        imageView.setSmooth(false);
     }
 
     private void setupGameLoop() {
-        startTime = Instant.now().toEpochMilli();
         AnimationTimer frameRateMeter = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                auxTime = Instant.now().toEpochMilli();
-                fElapsedTime = auxTime - startTime;
-                startTime = auxTime;
                 realFps.calculate(now);
-                if (emulationRun) {
-                    if (fResidualTime > 0.0f) {
-                        fResidualTime -= fElapsedTime;
-                    } else {
-                        emulatorFps.calculate(now);
-                        fResidualTime +=  (1000 * (1.0f / 60.0f)) - fElapsedTime;
-                        do { nes.clock(); } while (!nes.ppu.frameComplete);
-                        nes.ppu.frameComplete = false;
-                        nes.controller[0] = controller.getByteCode();
-                    }
-                }
+                emulatorFpsLabel.setText("Emulation: " + emulation.getPacer().getStats());
+                if (audio != null) audioLabel.setText("Audio: " + audio.getStats());
                 refresh();
             }
         };
         frameRateMeter.start();
     }
 
+    // Before the emulation thread starts, nothing else is touching the APU yet
+    private void setupAudio() {
+        try {
+            audio = new AudioOutput(new JavaSoundDevice(44100, 512), 0.040);
+            nes.apu.setSink(audio);
+        } catch (IllegalStateException e) {
+            System.err.println("No sound: " + e.getMessage());
+        }
+    }
+
+    // On the emulation thread, once per tick of the pacer
+    private void emulateFrame() {
+        if (rewinding && !recording) {
+            playing = false;
+            rewind.rewind(nes);
+        } else {
+            movieFrame();
+            rewind.capture(nes);
+        }
+        publishFrame();
+    }
+
+    private void publishFrame() {
+        View view = frames.back();
+        view.screen.copyFrom(nes.ppu.getScreen());
+        view.screen.toArgb();
+        for (int table = 0; table < 2; table++) {
+            Sprite pattern = nes.ppu.getPatternTable(table, selectedPalette);
+            if (pattern.getVersion() == view.patternVersions[table]) continue;
+            view.patternVersions[table] = pattern.getVersion();
+            view.patterns[table].copyFrom(pattern);
+            view.patterns[table].toArgb();
+            view.patternsDirty[table] = true;
+        }
+
+        view.cpu.capture(cpu);
+        frames.publish();
+    }
+
+    // The machine is paused already, space carries on from where it stopped
+    private void emulationFailed(RuntimeException e) {
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR, e.toString());
+            alert.setHeaderText("Emulation paused");
+            alert.show();
+        });
+    }
+
+    // Runs between two frames, then shows whatever it did even if the machine is paused
+    private void onEmulation(Runnable task) {
+        emulation.submit(() -> {
+            task.run();
+            publishFrame();
+        });
+    }
+
     private void setupLayout() {
         VBox vbox = new VBox();
         HBox hbox = new HBox();
         VBox imageAndFps = new VBox();
         HBox palettes = new HBox();
-        palettes.getChildren().addAll(imagePalette1, new Separator(), imagePalette2);
+        palettes.getChildren().addAll(patternViews[0], new Separator(), patternViews[1]);
         vbox.getChildren().addAll(flags, programCounter, accumulator, xRegister, yRegister, stack, listView, buttonBar);
-        imageAndFps.getChildren().addAll(imageView, fpsLabel, emulatorFpsLabel, palettes);
+        imageAndFps.getChildren().addAll(imageView, fpsLabel, emulatorFpsLabel, audioLabel, palettes);
         hbox.getChildren().addAll(imageAndFps, tableView, new Separator(), vbox);
         tableView.setVisible(false);
         layoutParent = hbox;
     }
 
     private void setupImageRender() {
-        this.render = new WritableImage(nes.ppu.getScreen().getWidth(), nes.ppu.getScreen().getHeight());
+        setupImageView(imageView, 256, 240, 3);
     }
 
     private void reset() {
@@ -194,8 +313,8 @@ public class NesVisualDebugger extends Application {
         buttonBar.setPadding(new Insets(10));
         Button clockButton = new Button("Clock");
         Button resetButton = new Button("Reset");
-        resetButton.setOnAction(event -> reset());
-        clockButton.setOnAction(event -> clock());
+        resetButton.setOnAction(event -> onEmulation(this::reset));
+        clockButton.setOnAction(event -> onEmulation(this::clock));
         resetButton.addEventFilter(KeyEvent.KEY_PRESSED, Event::consume);
         clockButton.addEventFilter(KeyEvent.KEY_PRESSED, Event::consume);
         buttonBar.getButtons().addAll(clockButton, resetButton);
@@ -215,16 +334,105 @@ public class NesVisualDebugger extends Application {
 
     private void setupInstructionList() {
         listView.setPrefHeight(700);
+        listView.setItems(instructions);
         listView.getSelectionModel().select(12);
         listView.addEventFilter(MouseEvent.ANY, Event::consume);
         listView.addEventFilter(KeyEvent.KEY_PRESSED, Event::consume);
     }
 
+    // Records the instructions while on, prints the last ones when turned off
+    private void toggleTrace() {
+        if (cpu.getHook() == trace) {
+            cpu.setHook(InstructionHook.NONE);
+            new Debugger(cpu).log(trace);
+        } else {
+            trace.clear();
+            cpu.setHook(trace);
+        }
+    }
+
+    // F5 keeps the machine next to the rom, F9 brings it back
+    private void saveState() {
+        try {
+            saveState.save(nes);
+            saveState.write(STATE_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not write " + STATE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private void loadState() {
+        try {
+            SaveState.load(nes, SaveState.read(STATE_FILE));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not load " + STATE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // Run-ahead puts its own picture in the PPU, that would end up in the movie's state hashes
+    private void movieFrame() {
+        if (playing) {
+            try {
+                playing = movie.play(nes);
+            } catch (IllegalStateException e) {
+                System.err.println(e.getMessage());
+                playing = false;
+            }
+        }
+        // A movie keeps one input per frame, the keyboard can't change in the middle of one
+        nes.setInput(0, recording || playing ? null : controller);
+        if (recording) {
+            nes.controller[0] = controller.getByteCode();
+            movie.record(nes);
+        }
+        if (recording || playing) {
+            nes.frame();
+        } else {
+            runAhead.frame(nes);
+        }
+    }
+
+    private void toggleRecording() {
+        if (recording) {
+            recording = false;
+            try {
+                movie.write(MOVIE_FILE);
+            } catch (IOException e) {
+                System.err.println("Could not write " + MOVIE_FILE + ": " + e.getMessage());
+            }
+        } else {
+            playing = false;
+            movie = new Movie(nes.getCartridge().getRomHash(), 60, 600);
+            recording = true;
+        }
+    }
+
+    private void playMovie() {
+        try {
+            recording = false;
+            movie = Movie.read(MOVIE_FILE);
+            movie.seek(nes, 0);
+            playing = true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not play " + MOVIE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // Shows the last view the emulation thread published, registers and picture from the same moment
     private void refresh() {
-        Debugger debugger = new Debugger(cpu);
-        debugger.setLog(false);
+        if (!frames.update()) return;
+        View view = frames.front();
 //        tableView.setItems(getHexItemsList());
 //        tableView.refresh();
+        if (!view.cpu.sameAs(shownCpu)) {
+            shownCpu.copyFrom(view.cpu);
+            showCpu(new Debugger(shownCpu));
+        }
+        render(view);
+    }
+
+    // Only formatted again when the registers or the code around them moved, a palette switch or a save state don't
+    private void showCpu(Debugger debugger) {
         flags.setText(debugger.getFlags());
         programCounter.setText(debugger.getCurrentInstruction());
         accumulator.setText(debugger.getAccumulator());
@@ -244,55 +452,21 @@ public class NesVisualDebugger extends Application {
 //        ));
 
         //Instructions
-        listView.setItems(FXCollections.observableArrayList(
-                IntStream.range(cpu.programCounter - 13, cpu.programCounter + 16)
-                        .mapToObj(debugger::getInstruction).toList()));
+        int pc = debugger.getProgramCounter();
+        instructions.setAll(IntStream.range(pc - 13, pc + 16).mapToObj(debugger::getInstruction).toList());
         listView.getSelectionModel().select(13);
-        listView.refresh();
-        render();
-        renderPalette(renderPalette1, nes.ppu.getPatternTable(0, selectedPalette), imagePalette1);
-        renderPalette(renderPalette2, nes.ppu.getPatternTable(1, selectedPalette), imagePalette2);
-    }
-
-    private void renderPalette(WritableImage palette, Sprite sprite, ImageView imageView) {
-        for (int i = 0; i < palette.getWidth(); i++) {
-            for (int j = 0; j < palette.getHeight(); j++) {
-                palette.getPixelWriter().setColor(i, j, sprite.getPixelArray()[i][j]);
-            }
-        }
-        imageView.setImage(scale(palette, 1));
     }
 
-    private void render() {
-        for (int i = 0; i < render.getWidth(); i++) {
-            for (int j = 0; j < render.getHeight(); j++) {
-                render.getPixelWriter().setColor(i, j, nes.ppu.getScreen().getPixelArray()[i][j]);
-            }
+    // A view's pattern tables are only marked dirty when they were redrawn since it was last shown
+    private void render(View view) {
+        imageView.setImage(view.screenImage);
+        view.screenBuffer.updateBuffer(b -> null);
+        for (int table = 0; table < 2; table++) {
+            patternViews[table].setImage(view.patternImages[table]);
+            if (!view.patternsDirty[table]) continue;
+            view.patternsDirty[table] = false;
+            view.patternBuffers.get(table).updateBuffer(b -> null);
         }
-        imageView.setImage(scale(render, 3));
-    }
-
-    private Image scale(Image input, int scaleFactor) {
-        final int W = (int) input.getWidth();
-        final int H = (int) input.getHeight();
-        final int S = scaleFactor;
-
-        WritableImage output = new WritableImage(W * S, H * S);
-        PixelReader reader = input.getPixelReader();
-        PixelWriter writer = output.getPixelWriter();
-
-        for (int y = 0; y < H; y++) {
-            for (int x = 0; x < W; x++) {
-                final int argb = reader.getArgb(x, y);
-                for (int dy = 0; dy < S; dy++) {
-                    for (int dx = 0; dx < S; dx++) {
-                        writer.setArgb(x * S + dx, y * S + dy, argb);
-                    }
-                }
-            }
-        }
-
-        return output;
     }
 
     private ObservableList<int[]> generateData() {
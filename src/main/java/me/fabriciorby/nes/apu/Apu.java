@@ -0,0 +1,270 @@
+package me.fabriciorby.nes.apu;
+
+import me.fabriciorby.nes.Bus;
+
+import java.nio.ByteBuffer;
+
+// Two pulses, a triangle, noise and DMC, clocked once per CPU cycle by the Bus, plus the frame counter that clocks
+// their envelopes and length counters a few times per frame and can raise an IRQ.
+// The channels are mixed through the two non-linear lookup tables from the real DAC, averaged down to the sink's
+// sample rate and filtered like the console's output (high passes at 90Hz and 440Hz, a low pass at 14kHz).
+// Samples collect in one array that goes to the sink at the end of every frame, or when it fills up.
+public class Apu {
+
+    public static final int CPU_RATE = 1_789_773;
+
+    static final int[] LENGTHS = {
+            10, 254, 20, 2, 40, 4, 80, 6, 160, 8, 60, 10, 14, 12, 26, 14,
+            12, 16, 24, 18, 48, 20, 96, 22, 192, 24, 72, 26, 16, 28, 32, 30};
+
+    // pulse1 + pulse2, and 3 * triangle + 2 * noise + dmc
+    private static final float[] PULSE_MIX = new float[31];
+    private static final float[] TND_MIX = new float[203];
+
+    static {
+        for (int i = 1; i < PULSE_MIX.length; i++) PULSE_MIX[i] = (float) (95.52 / (8128.0 / i + 100));
+        for (int i = 1; i < TND_MIX.length; i++) TND_MIX[i] = (float) (163.67 / (24329.0 / i + 100));
+    }
+
+    final Pulse pulse1 = new Pulse(true);
+    final Pulse pulse2 = new Pulse(false);
+    final Triangle triangle = new Triangle();
+    final Noise noise = new Noise();
+    final Dmc dmc = new Dmc();
+    private Bus bus;
+
+    private long cycle;
+    private int frameCycle;
+    private boolean fiveStep;
+    private boolean irqInhibit;
+    private boolean frameIrq;
+    private int frameCounterReset;
+
+    private AudioSink sink = AudioSink.NONE;
+    private boolean mixing;
+    private final float[] samples = new float[4096];
+    private int sampleCount;
+    private int sampleRate;
+    private int phase;
+    private float mixSum;
+    private int mixCycles;
+    private float highPass90;
+    private float highPass440;
+    private float lowPass14k;
+    private float lastIn90;
+    private float lastIn440;
+    private float last90;
+    private float last440;
+    private float last14k;
+
+    public Apu() {
+        setSink(AudioSink.NONE);
+    }
+
+    public void connectBus(Bus bus) {
+        this.bus = bus;
+    }
+
+    public final void setSink(AudioSink sink) {
+        this.sink = sink;
+        this.mixing = sink != AudioSink.NONE;
+        this.sampleRate = sink.sampleRate();
+        float dt = 1f / sampleRate;
+        highPass90 = highPass(90, dt);
+        highPass440 = highPass(440, dt);
+        float rc = (float) (1 / (2 * Math.PI * 14000));
+        lowPass14k = dt / (rc + dt);
+        sampleCount = 0;
+    }
+
+    public AudioSink getSink() {
+        return sink;
+    }
+
+    private static float highPass(double cutoff, float dt) {
+        float rc = (float) (1 / (2 * Math.PI * cutoff));
+        return rc / (rc + dt);
+    }
+
+    // $4000-$4013, $4015 and $4017
+    public void cpuWrite(int address, int data) {
+        switch (address) {
+            case 0x4000, 0x4001, 0x4002, 0x4003 -> pulse1.write(address & 0x03, data);
+            case 0x4004, 0x4005, 0x4006, 0x4007 -> pulse2.write(address & 0x03, data);
+            case 0x4008, 0x4009, 0x400A, 0x400B -> triangle.write(address & 0x03, data);
+            case 0x400C, 0x400D, 0x400E, 0x400F -> noise.write(address & 0x03, data);
+            case 0x4010, 0x4011, 0x4012, 0x4013 -> dmc.write(address & 0x03, data);
+            case 0x4015 -> {
+                pulse1.setEnabled((data & 0x01) != 0);
+                pulse2.setEnabled((data & 0x02) != 0);
+                triangle.setEnabled((data & 0x04) != 0);
+                noise.setEnabled((data & 0x08) != 0);
+                dmc.setEnabled((data & 0x10) != 0);
+            }
+            case 0x4017 -> {
+                fiveStep = (data & 0x80) != 0;
+                irqInhibit = (data & 0x40) != 0;
+                if (irqInhibit) frameIrq = false;
+                // the sequencer restarts 3 or 4 cycles later, depending on where in the APU cycle the write lands
+                frameCounterReset = (cycle & 0x01) == 0 ? 3 : 4;
+            }
+            default -> {}
+        }
+    }
+
+    // $4015: which length counters are running and who's asking for an IRQ. Reading acknowledges the frame IRQ.
+    public int readStatus(boolean readOnly) {
+        int status = (pulse1.length > 0 ? 0x01 : 0)
+                | (pulse2.length > 0 ? 0x02 : 0)
+                | (triangle.length > 0 ? 0x04 : 0)
+                | (noise.length > 0 ? 0x08 : 0)
+                | (dmc.bytesRemaining > 0 ? 0x10 : 0)
+                | (frameIrq ? 0x40 : 0)
+                | (dmc.irq ? 0x80 : 0);
+        if (!readOnly) frameIrq = false;
+        return status;
+    }
+
+    // The IRQ line, held as long as either flag is set
+    public boolean irq() {
+        return frameIrq || dmc.irq;
+    }
+
+    // One CPU cycle. Without a sink the channel timers don't run at all, nothing the game can read depends on them.
+    public void clock() {
+        clockFrameCounter();
+        dmc.clock(bus);
+        if (mixing) {
+            triangle.clock();
+            noise.clock();
+            if ((cycle & 0x01) == 0) {
+                pulse1.clock();
+                pulse2.clock();
+            }
+            mix();
+        }
+        cycle++;
+    }
+
+    private void clockFrameCounter() {
+        if (frameCounterReset > 0 && --frameCounterReset == 0) {
+            frameCycle = 0;
+            if (fiveStep) {
+                quarterFrame();
+                halfFrame();
+            }
+            return;
+        }
+        frameCycle++;
+        switch (frameCycle) {
+            case 7457, 22371 -> quarterFrame();
+            case 14913 -> {
+                quarterFrame();
+                halfFrame();
+            }
+            case 29828 -> {
+                if (!fiveStep) raiseFrameIrq();
+            }
+            case 29829 -> {
+                if (!fiveStep) {
+                    quarterFrame();
+                    halfFrame();
+                    raiseFrameIrq();
+                }
+            }
+            case 29830 -> {
+                if (!fiveStep) {
+                    raiseFrameIrq();
+                    frameCycle = 0;
+                }
+            }
+            case 37281 -> {
+                quarterFrame();
+                halfFrame();
+            }
+            case 37282 -> frameCycle = 0;
+            default -> {}
+        }
+    }
+
+    private void raiseFrameIrq() {
+        if (!irqInhibit) frameIrq = true;
+    }
+
+    private void quarterFrame() {
+        pulse1.envelope.quarterFrame();
+        pulse2.envelope.quarterFrame();
+        triangle.quarterFrame();
+        noise.envelope.quarterFrame();
+    }
+
+    private void halfFrame() {
+        pulse1.halfFrame();
+        pulse2.halfFrame();
+        triangle.halfFrame();
+        noise.halfFrame();
+    }
+
+    private void mix() {
+        mixSum += PULSE_MIX[pulse1.output() + pulse2.output()]
+                + TND_MIX[3 * triangle.output() + 2 * noise.output() + dmc.level];
+        mixCycles++;
+        phase += sampleRate;
+        if (phase < CPU_RATE) return;
+        phase -= CPU_RATE;
+
+        float in = mixSum / mixCycles;
+        mixSum = 0;
+        mixCycles = 0;
+        last90 = highPass90 * (last90 + in - lastIn90);
+        lastIn90 = in;
+        last440 = highPass440 * (last440 + last90 - lastIn440);
+        lastIn440 = last90;
+        last14k += (last440 - last14k) * lowPass14k;
+
+        samples[sampleCount++] = last14k;
+        if (sampleCount == samples.length) endFrame();
+    }
+
+    // Hands the frame's samples to the sink
+    public void endFrame() {
+        if (sampleCount == 0) return;
+        sink.write(samples, sampleCount);
+        sampleCount = 0;
+    }
+
+    // Channels silenced, the frame counter keeps its mode
+    public void reset() {
+        cpuWrite(0x4015, 0x00);
+        frameIrq = false;
+        frameCounterReset = 0;
+        frameCycle = 0;
+    }
+
+    // What the game can see: registers, counters, the frame counter and DMC. The channel timers, the mixer and
+    // the filters only shape the sound and are left out, a state is the same whether anyone listened or not.
+    public void saveState(ByteBuffer buffer) {
+        pulse1.saveState(buffer);
+        pulse2.saveState(buffer);
+        triangle.saveState(buffer);
+        noise.saveState(buffer);
+        dmc.saveState(buffer);
+        buffer.putLong(cycle).putInt(frameCycle).put((byte) frameCounterReset);
+        buffer.put((byte) (fiveStep ? 1 : 0)).put((byte) (irqInhibit ? 1 : 0)).put((byte) (frameIrq ? 1 : 0));
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        pulse1.loadState(buffer);
+        pulse2.loadState(buffer);
+        triangle.loadState(buffer);
+        noise.loadState(buffer);
+        dmc.loadState(buffer);
+        cycle = buffer.getLong();
+        frameCycle = buffer.getInt();
+        frameCounterReset = buffer.get();
+        fiveStep = buffer.get() != 0;
+        irqInhibit = buffer.get() != 0;
+        frameIrq = buffer.get() != 0;
+    }
+
+}
@@ -0,0 +1,16 @@
+package me.fabriciorby.nes.apu;
+
+import java.io.Closeable;
+
+// Whatever turns samples into sound. write() blocks until the device has room, so it runs at the device's clock,
+// not the emulator's.
+public interface AudioDevice extends Closeable {
+
+    int sampleRate();
+
+    void write(short[] samples, int count);
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,140 @@
+package me.fabriciorby.nes.apu;
+
+// Plays the APU on a device from a thread of its own. The emulation thread puts each frame's samples in a SampleRing,
+// the audio thread takes them out in small chunks and blocks on the device.
+// The emulator is paced by its own clock and the device by its crystal, so the two never agree exactly and the
+// ring would slowly run dry or overflow. Instead, every frame is resampled by a ratio within MAX_DELTA of 1, nudged
+// by how far the ring is from its target when a frame arrives: emptier makes more samples, fuller fewer. The
+// nudge alone would settle the ring off target by however far apart the clocks are, so a slow integral of the same
+// error learns that drift and the nudge only handles the jitter. A fraction of a percent is far below what anyone
+// hears as pitch.
+// At most the target plus a frame plus one chunk wait to be played, the target is whatever latencySeconds leaves.
+// A frame arriving to a ring already that full (the emulator caught up after a stall) is dropped.
+public final class AudioOutput implements AudioSink {
+
+    private static final double MAX_DELTA = 0.005;
+    private static final double INTEGRAL = 0.00001;
+    private static final int CHUNK = 256;
+
+    // ratio is the last frame's, drift what the integral has learned about the clocks so far. fill is the ring when
+    // the last frame arrived, before it went in.
+    public record Stats(double ratio, double drift, int fill, int target, long underruns, long overruns) {
+        @Override
+        public String toString() {
+            return "ratio %.5f (drift %+.5f), ring %d/%d, %d underruns, %d overruns"
+                    .formatted(ratio, drift, fill, target, underruns, overruns);
+        }
+    }
+
+    private final AudioDevice device;
+    private final SampleRing ring;
+    private final int target;
+    private final int frame;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // emulation thread
+    private float[] resampled = new float[0];
+    private double position;
+    private float previous;
+    private volatile double drift;
+    private volatile int fill;
+    private volatile double ratio = 1;
+    private volatile long overruns;
+
+    // audio thread
+    private final float[] chunk = new float[CHUNK];
+    private final short[] pcm = new short[CHUNK];
+    private volatile long underruns;
+
+    public AudioOutput(AudioDevice device, double latencySeconds) {
+        this.device = device;
+        int latency = (int) (latencySeconds * device.sampleRate());
+        this.frame = device.sampleRate() / 60;
+        this.target = Math.max(latency - CHUNK - frame, CHUNK);
+        this.ring = new SampleRing(Integer.highestOneBit(2 * (target + frame)) << 1);
+        this.thread = Thread.ofPlatform().name("audio").daemon().unstarted(this::play);
+        this.thread.setPriority(Thread.MAX_PRIORITY);
+        this.thread.start();
+    }
+
+    @Override
+    public int sampleRate() {
+        return device.sampleRate();
+    }
+
+    @Override
+    public void write(float[] samples, int count) {
+        if (count == 0) return;
+        int fill = ring.size();
+        this.fill = fill;
+        if (fill > target + frame) {
+            overruns++;
+            return;
+        }
+        double error = Math.max(-1, Math.min(1, (target - fill) / (double) target));
+        drift = Math.max(-MAX_DELTA, Math.min(MAX_DELTA, drift + INTEGRAL * error));
+        double ratio = 1 + Math.max(-MAX_DELTA, Math.min(MAX_DELTA, drift + MAX_DELTA * error));
+        this.ratio = ratio;
+
+        // linear interpolation, position runs over the frame's samples with the last one of the previous frame at -1
+        int maximum = (int) (count * ratio) + 2;
+        if (resampled.length < maximum) resampled = new float[maximum];
+        double step = 1 / ratio;
+        int n = 0;
+        while (position <= count - 1) {
+            int index = (int) Math.floor(position);
+            float fraction = (float) (position - index);
+            float from = index < 0 ? previous : samples[index];
+            float to = samples[index + 1];
+            resampled[n++] = from + (to - from) * fraction;
+            position += step;
+        }
+        position -= count;
+        previous = samples[count - 1];
+
+        int offered = ring.offer(resampled, 0, n);
+        if (offered < n) overruns++;
+    }
+
+    private void play() {
+        boolean primed = false;
+        float last = 0;
+        while (!closed) {
+            // silence until the ring first reaches its target, so the first frames don't underrun straight away
+            if (!primed && ring.size() < target) {
+                device.write(pcm, CHUNK);
+                continue;
+            }
+            primed = true;
+            int n = ring.poll(chunk, 0, CHUNK);
+            if (n > 0) last = chunk[n - 1];
+            if (n < CHUNK) {
+                underruns++;
+                // hold the last level instead of dropping to 0, a step is a click
+                for (int i = n; i < CHUNK; i++) chunk[i] = last;
+            }
+            for (int i = 0; i < CHUNK; i++) {
+                pcm[i] = (short) (Math.max(-1f, Math.min(1f, chunk[i])) * Short.MAX_VALUE);
+            }
+            device.write(pcm, CHUNK);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(ratio, drift, fill, target, underruns, overruns);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // unblocks the audio thread if it's waiting on the device
+        device.close();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
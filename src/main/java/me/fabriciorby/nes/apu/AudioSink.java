@@ -0,0 +1,31 @@
+package me.fabriciorby.nes.apu;
+
+import java.io.Closeable;
+
+// Where the APU's samples go: mono floats around 0, about a frame's worth per write(). The array is reused right
+// after the call, a sink copies whatever it keeps.
+// With NONE the APU doesn't even mix, headless runs pay only for what the game can read back.
+public interface AudioSink extends Closeable {
+
+    AudioSink NONE = new None();
+
+    int sampleRate();
+
+    void write(float[] samples, int count);
+
+    @Override
+    default void close() {
+    }
+
+    final class None implements AudioSink {
+        @Override
+        public int sampleRate() {
+            return 44100;
+        }
+
+        @Override
+        public void write(float[] samples, int count) {
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package me.fabriciorby.nes.apu;
+
+import me.fabriciorby.nes.Bus;
+
+import java.nio.ByteBuffer;
+
+// $4010-$4013, delta modulated samples straight from PRG: every timer period one bit moves the 7 bit output level
+// up or down by 2. The reader fetches the next byte as soon as the one-byte buffer empties, and either loops or
+// raises the IRQ at the end of the sample.
+// The fetch doesn't steal the 4 CPU cycles the real DMA does.
+class Dmc {
+
+    // In CPU cycles, NTSC
+    private static final int[] RATES = {428, 380, 340, 320, 286, 254, 226, 214, 190, 160, 142, 128, 106, 84, 72, 54};
+
+    boolean irq;
+    private boolean irqEnabled;
+    private boolean loop;
+    private int rate = RATES[0];
+    private int timer;
+    int level;
+
+    private int sampleAddress = 0xC000;
+    private int sampleLength = 1;
+    private int address;
+    int bytesRemaining;
+
+    private int sampleBuffer;
+    private boolean bufferEmpty = true;
+    private int shift;
+    private int bitsRemaining = 8;
+    private boolean silence = true;
+
+    void write(int register, int data) {
+        switch (register) {
+            case 0 -> {
+                irqEnabled = (data & 0x80) != 0;
+                loop = (data & 0x40) != 0;
+                rate = RATES[data & 0x0F];
+                if (!irqEnabled) irq = false;
+            }
+            case 1 -> level = data & 0x7F;
+            case 2 -> sampleAddress = 0xC000 | data << 6;
+            default -> sampleLength = (data << 4) + 1;
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        irq = false;
+        if (!enabled) {
+            bytesRemaining = 0;
+        } else if (bytesRemaining == 0) {
+            restart();
+        }
+    }
+
+    void clock(Bus bus) {
+        if (bufferEmpty && bytesRemaining > 0) {
+            sampleBuffer = bus.cpuRead(address);
+            bufferEmpty = false;
+            address = address == 0xFFFF ? 0x8000 : address + 1;
+            if (--bytesRemaining == 0) {
+                if (loop) {
+                    restart();
+                } else if (irqEnabled) {
+                    irq = true;
+                }
+            }
+        }
+
+        if (timer > 0) {
+            timer--;
+            return;
+        }
+        timer = rate - 1;
+        if (!silence) {
+            if ((shift & 0x01) != 0) {
+                if (level <= 125) level += 2;
+            } else if (level >= 2) {
+                level -= 2;
+            }
+        }
+        shift >>= 1;
+        if (--bitsRemaining == 0) {
+            bitsRemaining = 8;
+            silence = bufferEmpty;
+            if (!bufferEmpty) {
+                shift = sampleBuffer;
+                bufferEmpty = true;
+            }
+        }
+    }
+
+    private void restart() {
+        address = sampleAddress;
+        bytesRemaining = sampleLength;
+    }
+
+    // The timer decides when the next byte is fetched and when the IRQ fires, unlike the other channels it's state
+    void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (irq ? 1 : 0)).put((byte) (irqEnabled ? 1 : 0)).put((byte) (loop ? 1 : 0));
+        buffer.putShort((short) rate).putShort((short) timer).put((byte) level);
+        buffer.putShort((short) sampleAddress).putShort((short) sampleLength);
+        buffer.putShort((short) address).putShort((short) bytesRemaining);
+        buffer.put((byte) sampleBuffer).put((byte) (bufferEmpty ? 1 : 0)).put((byte) shift);
+        buffer.put((byte) bitsRemaining).put((byte) (silence ? 1 : 0));
+    }
+
+    void loadState(ByteBuffer buffer) {
+        irq = buffer.get() != 0;
+        irqEnabled = buffer.get() != 0;
+        loop = buffer.get() != 0;
+        rate = buffer.getShort();
+        timer = buffer.getShort();
+        level = buffer.get();
+        sampleAddress = buffer.getShort() & 0xFFFF;
+        sampleLength = buffer.getShort() & 0xFFFF;
+        address = buffer.getShort() & 0xFFFF;
+        bytesRemaining = buffer.getShort() & 0xFFFF;
+        sampleBuffer = buffer.get() & 0xFF;
+        bufferEmpty = buffer.get() != 0;
+        shift = buffer.get() & 0xFF;
+        bitsRemaining = buffer.get();
+        silence = buffer.get() != 0;
+    }
+
+}
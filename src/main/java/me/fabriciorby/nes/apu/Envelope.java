@@ -0,0 +1,57 @@
+package me.fabriciorby.nes.apu;
+
+import java.nio.ByteBuffer;
+
+// Volume of the pulse and noise channels: either constant, or a sawtooth that starts at 15 and goes down one step
+// every divider period of quarter frames. The loop bit doubles as the length counter halt.
+class Envelope {
+
+    boolean start;
+    boolean loop;
+    private boolean constant;
+    private int volume;
+    private int divider;
+    private int decay;
+
+    void write(int data) {
+        loop = (data & 0x20) != 0;
+        constant = (data & 0x10) != 0;
+        volume = data & 0x0F;
+    }
+
+    void quarterFrame() {
+        if (start) {
+            start = false;
+            decay = 15;
+            divider = volume;
+        } else if (divider == 0) {
+            divider = volume;
+            if (decay > 0) {
+                decay--;
+            } else if (loop) {
+                decay = 15;
+            }
+        } else {
+            divider--;
+        }
+    }
+
+    int output() {
+        return constant ? volume : decay;
+    }
+
+    void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (start ? 1 : 0)).put((byte) (loop ? 1 : 0)).put((byte) (constant ? 1 : 0));
+        buffer.put((byte) volume).put((byte) divider).put((byte) decay);
+    }
+
+    void loadState(ByteBuffer buffer) {
+        start = buffer.get() != 0;
+        loop = buffer.get() != 0;
+        constant = buffer.get() != 0;
+        volume = buffer.get();
+        divider = buffer.get();
+        decay = buffer.get();
+    }
+
+}
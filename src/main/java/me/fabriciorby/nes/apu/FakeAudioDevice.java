@@ -0,0 +1,70 @@
+package me.fabriciorby.nes.apu;
+
+// A device without speakers and with a clock of its own that only moves when advance() says so. It claims
+// sampleRate but plays at clockRate, which is a sound card whose crystal is a bit off: the rate control in
+// AudioOutput can be run headless, for as many simulated seconds as needed, without waiting for them.
+public class FakeAudioDevice implements AudioDevice {
+
+    private final int sampleRate;
+    private final double clockRate;
+    private final int bufferSamples;
+    private long nanos;
+    private long written;
+    private boolean waiting;
+    private boolean closed;
+
+    public FakeAudioDevice(int sampleRate, double clockRate, int bufferSamples) {
+        this.sampleRate = sampleRate;
+        this.clockRate = clockRate;
+        this.bufferSamples = bufferSamples;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    // Blocks like a real device until what's left to play fits in the buffer again
+    @Override
+    public synchronized void write(short[] samples, int count) {
+        written += count;
+        while (!closed && written - played() > bufferSamples) {
+            waiting = true;
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        waiting = false;
+    }
+
+    public synchronized void advance(long nanos) {
+        this.nanos += nanos;
+        notifyAll();
+    }
+
+    // Until the writer has filled the buffer and waits for the clock again
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!closed && !(waiting && written - played() > bufferSamples)) {
+            wait();
+        }
+    }
+
+    public synchronized long played() {
+        return Math.min(written, (long) (nanos * clockRate / 1_000_000_000.0));
+    }
+
+    public synchronized long written() {
+        return written;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+}
@@ -0,0 +1,49 @@
+package me.fabriciorby.nes.apu;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+// 16 bit mono through javax.sound.sampled, with a line buffer of only a few milliseconds: the ring in AudioOutput
+// is where the slack is.
+public class JavaSoundDevice implements AudioDevice {
+
+    private final SourceDataLine line;
+    private final int sampleRate;
+    private byte[] bytes = new byte[0];
+
+    public JavaSoundDevice(int sampleRate, int bufferSamples) {
+        this.sampleRate = sampleRate;
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, bufferSamples * 2);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new IllegalStateException("No audio line for " + format, e);
+        }
+        line.start();
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void write(short[] samples, int count) {
+        if (bytes.length < count * 2) bytes = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        line.write(bytes, 0, count * 2);
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+
+}
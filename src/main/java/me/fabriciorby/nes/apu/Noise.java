@@ -0,0 +1,74 @@
+package me.fabriciorby.nes.apu;
+
+import java.nio.ByteBuffer;
+
+// $400C-$400F. A 15 bit shift register fed back from bit 1, or bit 6 in the short mode, shifted once per timer
+// period. Bit 0 set means silence.
+class Noise {
+
+    // In CPU cycles, NTSC
+    private static final int[] PERIODS = {4, 8, 16, 32, 64, 96, 128, 160, 202, 254, 380, 508, 762, 1016, 2034, 4068};
+
+    final Envelope envelope = new Envelope();
+
+    private boolean enabled;
+    int length;
+    private boolean shortMode;
+    private int period = PERIODS[0];
+    private int timer;
+    private int shift = 1;
+
+    void write(int register, int data) {
+        switch (register) {
+            case 0 -> envelope.write(data);
+            case 1 -> {}
+            case 2 -> {
+                shortMode = (data & 0x80) != 0;
+                period = PERIODS[data & 0x0F];
+            }
+            default -> {
+                if (enabled) length = Apu.LENGTHS[data >> 3];
+                envelope.start = true;
+            }
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) length = 0;
+    }
+
+    void clock() {
+        if (timer == 0) {
+            timer = period - 1;
+            int feedback = (shift ^ (shift >> (shortMode ? 6 : 1))) & 0x01;
+            shift = (shift >> 1) | feedback << 14;
+        } else {
+            timer--;
+        }
+    }
+
+    void halfFrame() {
+        if (length > 0 && !envelope.loop) length--;
+    }
+
+    int output() {
+        if (length == 0 || (shift & 0x01) != 0) return 0;
+        return envelope.output();
+    }
+
+    // The timer and the shift register only change what comes out of the speaker, they're left out
+    void saveState(ByteBuffer buffer) {
+        envelope.saveState(buffer);
+        buffer.put((byte) (enabled ? 1 : 0)).put((byte) length).put((byte) (shortMode ? 1 : 0)).putShort((short) period);
+    }
+
+    void loadState(ByteBuffer buffer) {
+        envelope.loadState(buffer);
+        enabled = buffer.get() != 0;
+        length = buffer.get() & 0xFF;
+        shortMode = buffer.get() != 0;
+        period = buffer.getShort();
+    }
+
+}
@@ -0,0 +1,118 @@
+package me.fabriciorby.nes.apu;
+
+import java.nio.ByteBuffer;
+
+// $4000-$4003 and $4004-$4007. The timer counts APU cycles (2 CPU cycles), every time it runs out the 8 step duty
+// sequence moves on. The sweep unit bends the period every few half frames and mutes the channel when the period
+// it aims for is out of range.
+class Pulse {
+
+    // step 0 in the high bit
+    private static final int[] DUTY = {0b01000000, 0b01100000, 0b01111000, 0b10011111};
+
+    final Envelope envelope = new Envelope();
+    // pulse 1 negates in ones' complement, pulse 2 in twos'
+    private final int negateOffset;
+
+    private boolean enabled;
+    int length;
+    private int duty;
+    private int period;
+    private int timer;
+    private int step;
+
+    private boolean sweepEnabled;
+    private boolean sweepNegate;
+    private boolean sweepReload;
+    private int sweepPeriod;
+    private int sweepShift;
+    private int sweepDivider;
+
+    Pulse(boolean onesComplement) {
+        this.negateOffset = onesComplement ? 1 : 0;
+    }
+
+    void write(int register, int data) {
+        switch (register) {
+            case 0 -> {
+                duty = data >> 6;
+                envelope.write(data);
+            }
+            case 1 -> {
+                sweepEnabled = (data & 0x80) != 0;
+                sweepPeriod = (data >> 4) & 0x07;
+                sweepNegate = (data & 0x08) != 0;
+                sweepShift = data & 0x07;
+                sweepReload = true;
+            }
+            case 2 -> period = (period & 0x700) | data;
+            default -> {
+                period = (period & 0xFF) | (data & 0x07) << 8;
+                if (enabled) length = Apu.LENGTHS[data >> 3];
+                step = 0;
+                envelope.start = true;
+            }
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) length = 0;
+    }
+
+    // Every other CPU cycle
+    void clock() {
+        if (timer == 0) {
+            timer = period;
+            step = (step + 1) & 0x07;
+        } else {
+            timer--;
+        }
+    }
+
+    void halfFrame() {
+        if (length > 0 && !envelope.loop) length--;
+        if (sweepDivider == 0 && sweepEnabled && sweepShift > 0 && period >= 8 && target() <= 0x7FF) {
+            period = target();
+        }
+        if (sweepDivider == 0 || sweepReload) {
+            sweepDivider = sweepPeriod;
+            sweepReload = false;
+        } else {
+            sweepDivider--;
+        }
+    }
+
+    private int target() {
+        int change = period >> sweepShift;
+        return sweepNegate ? period - change - negateOffset : period + change;
+    }
+
+    int output() {
+        if (length == 0 || period < 8 || target() > 0x7FF || (DUTY[duty] >> (7 - step) & 1) == 0) return 0;
+        return envelope.output();
+    }
+
+    // The timer and the duty step only change what comes out of the speaker, they're left out
+    void saveState(ByteBuffer buffer) {
+        envelope.saveState(buffer);
+        buffer.put((byte) (enabled ? 1 : 0)).put((byte) length).put((byte) duty).putShort((short) period);
+        buffer.put((byte) (sweepEnabled ? 1 : 0)).put((byte) (sweepNegate ? 1 : 0)).put((byte) (sweepReload ? 1 : 0));
+        buffer.put((byte) sweepPeriod).put((byte) sweepShift).put((byte) sweepDivider);
+    }
+
+    void loadState(ByteBuffer buffer) {
+        envelope.loadState(buffer);
+        enabled = buffer.get() != 0;
+        length = buffer.get() & 0xFF;
+        duty = buffer.get();
+        period = buffer.getShort();
+        sweepEnabled = buffer.get() != 0;
+        sweepNegate = buffer.get() != 0;
+        sweepReload = buffer.get() != 0;
+        sweepPeriod = buffer.get();
+        sweepShift = buffer.get();
+        sweepDivider = buffer.get();
+    }
+
+}
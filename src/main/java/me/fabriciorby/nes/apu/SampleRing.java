@@ -0,0 +1,56 @@
+package me.fabriciorby.nes.apu;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single producer, single consumer ring of samples. Each side only ever writes its own index and publishes it
+// with a release store, so neither takes a lock and neither waits: a full ring takes fewer samples, an empty one
+// gives fewer back. The capacity is a power of two so wrapping is a mask.
+public class SampleRing {
+
+    private final float[] samples;
+    private final int mask;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+
+    public SampleRing(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two, not " + capacity);
+        }
+        this.samples = new float[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Producer side, returns how many fitted
+    public int offer(float[] source, int offset, int count) {
+        long writeIndex = written.getPlain();
+        int free = samples.length - (int) (writeIndex - read.getAcquire());
+        int n = Math.min(count, free);
+        for (int i = 0; i < n; i++) {
+            samples[(int) (writeIndex + i) & mask] = source[offset + i];
+        }
+        written.setRelease(writeIndex + n);
+        return n;
+    }
+
+    // Consumer side, returns how many there were
+    public int poll(float[] target, int offset, int count) {
+        long readIndex = read.getPlain();
+        int available = (int) (written.getAcquire() - readIndex);
+        int n = Math.min(count, available);
+        for (int i = 0; i < n; i++) {
+            target[offset + i] = samples[(int) (readIndex + i) & mask];
+        }
+        read.setRelease(readIndex + n);
+        return n;
+    }
+
+    // Exact from either side for its own purposes, a hint from anywhere else
+    public int size() {
+        return (int) (written.getAcquire() - read.getAcquire());
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+}
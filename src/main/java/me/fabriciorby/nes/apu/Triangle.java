@@ -0,0 +1,86 @@
+package me.fabriciorby.nes.apu;
+
+import java.nio.ByteBuffer;
+
+// $4008-$400B. The timer counts CPU cycles and walks a 32 step triangle, but only while both the length counter
+// and the linear counter are running. Periods under 2 would be ultrasonic, the step is held there instead.
+class Triangle {
+
+    private static final int[] SEQUENCE = {
+            15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0,
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+
+    private boolean enabled;
+    int length;
+    private boolean control;
+    private int linearReload;
+    private int linear;
+    private boolean linearReloadFlag;
+    private int period;
+    private int timer;
+    private int step;
+
+    void write(int register, int data) {
+        switch (register) {
+            case 0 -> {
+                control = (data & 0x80) != 0;
+                linearReload = data & 0x7F;
+            }
+            case 1 -> {}
+            case 2 -> period = (period & 0x700) | data;
+            default -> {
+                period = (period & 0xFF) | (data & 0x07) << 8;
+                if (enabled) length = Apu.LENGTHS[data >> 3];
+                linearReloadFlag = true;
+            }
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) length = 0;
+    }
+
+    void clock() {
+        if (timer == 0) {
+            timer = period;
+            if (length > 0 && linear > 0 && period >= 2) step = (step + 1) & 0x1F;
+        } else {
+            timer--;
+        }
+    }
+
+    void quarterFrame() {
+        if (linearReloadFlag) {
+            linear = linearReload;
+        } else if (linear > 0) {
+            linear--;
+        }
+        if (!control) linearReloadFlag = false;
+    }
+
+    void halfFrame() {
+        if (length > 0 && !control) length--;
+    }
+
+    int output() {
+        return SEQUENCE[step];
+    }
+
+    void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (enabled ? 1 : 0)).put((byte) length).put((byte) (control ? 1 : 0));
+        buffer.put((byte) linearReload).put((byte) linear).put((byte) (linearReloadFlag ? 1 : 0));
+        buffer.putShort((short) period);
+    }
+
+    void loadState(ByteBuffer buffer) {
+        enabled = buffer.get() != 0;
+        length = buffer.get() & 0xFF;
+        control = buffer.get() != 0;
+        linearReload = buffer.get();
+        linear = buffer.get();
+        linearReloadFlag = buffer.get() != 0;
+        period = buffer.getShort();
+    }
+
+}
@@ -0,0 +1,68 @@
+package me.fabriciorby.nes.apu;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+// 16 bit mono PCM. The header goes in last, on close(), once the size of the data is known.
+public class WavSink implements AudioSink {
+
+    private static final int HEADER = 44;
+
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final ByteBuffer buffer = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private long dataBytes;
+
+    public WavSink(Path file, int sampleRate) throws IOException {
+        this.channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING);
+        this.sampleRate = sampleRate;
+        channel.position(HEADER);
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void write(float[] samples, int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                if (!buffer.hasRemaining()) flush();
+                float sample = Math.max(-1f, Math.min(1f, samples[i]));
+                buffer.putShort((short) (sample * Short.MAX_VALUE));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try (channel) {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x46464952).putInt((int) (36 + dataBytes)).putInt(0x45564157); // "RIFF" size "WAVE"
+            header.putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) 1); // "fmt " PCM mono
+            header.putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+            header.putInt(0x61746164).putInt((int) dataBytes); // "data"
+            channel.write(header.flip(), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        dataBytes += buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+}
@@ -2,16 +2,26 @@ package me.fabriciorby.nes.cartridge;
 
 import me.fabriciorby.nes.mapper.Mapper;
 import me.fabriciorby.nes.mapper.Mapper000;
+import me.fabriciorby.nes.mapper.Mapper001;
+import me.fabriciorby.nes.mapper.Mapper002;
+import me.fabriciorby.nes.mapper.Mapper003;
+import me.fabriciorby.nes.mapper.Mapper007;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.zip.CRC32;
 
-public class Cartridge {
+public final class Cartridge {
 
     private final byte[] PRG;
     private final byte[] CHR;
+    private final byte[] PRGRam = new byte[8192];
+    private final TileCache tiles;
+    private final int romHash;
+    private Runnable bankListener = () -> {};
 
     int mapperId;
     int PRGBanks;
@@ -24,7 +34,8 @@ public class Cartridge {
         HORIZONTAL,
         VERTICAL,
         ONESCREEN_LO,
-        ONESCREEN_HI
+        ONESCREEN_HI,
+        FOUR_SCREEN
     }
 
     public Mirror mirror;
@@ -36,63 +47,162 @@ public class Cartridge {
                 inputStream.skipNBytes(512);
             }
             mapperId = ((header.mapper2 >> 4) << 4) | (header.mapper1 >> 4);
-            mirror = (header.mapper1 & 0x01) != 0 ? Mirror.VERTICAL : Mirror.HORIZONTAL;
+            if ((header.mapper1 & 0x08) != 0) {
+                mirror = Mirror.FOUR_SCREEN;
+            } else {
+                mirror = (header.mapper1 & 0x01) != 0 ? Mirror.VERTICAL : Mirror.HORIZONTAL;
+            }
             int fileType = 1;
             PRGBanks = header.PRGRomChunks;
             PRG = inputStream.readNBytes(PRGBanks * 16384);
             CHRBanks = header.CHRRomChunks;
             if (CHRBanks == 0) {
-                CHR = inputStream.readNBytes(8192);
+                CHR = new byte[8192];
             } else {
                 CHR = inputStream.readNBytes(CHRBanks * 8192);
             }
+            tiles = new TileCache(CHR);
+            romHash = romHash(PRG, CHRBanks == 0 ? new byte[0] : CHR);
             this.mapper = switch (mapperId) {
                 case 0 -> new Mapper000(PRGBanks, CHRBanks);
+                case 1 -> new Mapper001(PRGBanks, CHRBanks);
+                case 2 -> new Mapper002(PRGBanks, CHRBanks);
+                case 3 -> new Mapper003(PRGBanks, CHRBanks);
+                case 7 -> new Mapper007(PRGBanks, CHRBanks);
                 default -> throw new IllegalStateException("Unexpected value: " + mapperId);
             };
+            updateMirror();
+            mapper.setBankListener(this::banksChanged);
         } catch (IOException e) {
             throw new IllegalArgumentException("Invalid file!");
         }
     }
 
-    public boolean cpuCanWrite(int address) {
-        return mapper.cpuMapWrite(address) != Integer.MIN_VALUE;
+    // $6000-$7FFF is PRG RAM, $8000-$FFFF goes through the mapper's PRG windows
+    public void cpuWrite(int address, int data) {
+        if (address >= 0x8000) {
+            mapper.cpuWrite(address, data);
+        } else if (address >= 0x6000) {
+            PRGRam[address & 0x1FFF] = (byte) data;
+        }
     }
 
-    public boolean cpuCanRead(int address) {
-        return mapper.cpuMapRead(address) != Integer.MIN_VALUE;
+    public int cpuRead(int address) {
+        if (address >= 0x8000) {
+            return Byte.toUnsignedInt(PRG[prgOffset(address)]);
+        } else if (address >= 0x6000) {
+            return Byte.toUnsignedInt(PRGRam[address & 0x1FFF]);
+        }
+        return 0x00;
     }
 
-    public void cpuWrite(int address, int data) {
-        int mappedAddress = mapper.cpuMapWrite(address);
-        PRG[mappedAddress] = (byte) data;
+    public int prgOffset(int address) {
+        return mapper.prgOffsets[(address >> 13) & 0x03] + (address & 0x1FFF);
     }
 
-    public int cpuRead(int address) {
-        int mappedAddress = mapper.cpuMapRead(address);
-        return Byte.toUnsignedInt(PRG[mappedAddress]);
+    public byte[] getPRG() {
+        return PRG;
     }
 
-    public boolean ppuCanWrite(int address) {
-        return mapper.ppuMapWrite(address) != Integer.MIN_VALUE;
+    public byte[] getCHR() {
+        return CHR;
     }
 
-    public boolean ppuCanRead(int address) {
-        return mapper.ppuMapRead(address) != Integer.MIN_VALUE;
+    public byte[] getPRGRam() {
+        return PRGRam;
     }
 
+    // CRC32 of PRG and CHR ROM, without the header, which dumps often get wrong
+    public int getRomHash() {
+        return romHash;
+    }
+
+    private static int romHash(byte[] prg, byte[] chr) {
+        CRC32 crc = new CRC32();
+        crc.update(prg);
+        crc.update(chr);
+        return (int) crc.getValue();
+    }
+
+    // Only boards without CHR ROM can write, they have 8KB of CHR RAM instead
     public void ppuWrite(int address, int data) {
-        int mappedAddress = mapper.ppuMapWrite(address);
-        CHR[mappedAddress] = (byte) data;
+        if (CHRBanks == 0) {
+            int offset = mapper.chrOffsets[address >> 10] + (address & 0x03FF);
+            CHR[offset] = (byte) data;
+            tiles.invalidate(offset);
+        }
     }
 
     public int ppuRead(int address) {
-        int mappedAddress = mapper.ppuMapRead(address);
-        return Byte.toUnsignedInt(CHR[mappedAddress]);
+        return Byte.toUnsignedInt(CHR[mapper.chrOffsets[address >> 10] + (address & 0x03FF)]);
+    }
+
+    // Both planes of the pattern row at address ($0000-$1FFF), see TileCache
+    public int patternRow(int address, boolean flipped) {
+        return tiles.row(chrOffset(address), flipped);
+    }
+
+    // Where the current banks put a pattern table address in CHR
+    public int chrOffset(int address) {
+        return mapper.chrOffsets[(address >> 10) & 0x07] + (address & 0x03FF);
     }
 
-   public void reset() {
+    public int tileStamp(int address) {
+        return tiles.stamp(chrOffset(address));
+    }
+
+    // PRG RAM, CHR RAM if the board has it and the mapper. The sizes go first so a state can't be loaded into a
+    // different kind of cartridge.
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) mapperId).put((byte) PRGBanks).put((byte) CHRBanks);
+        buffer.put(PRGRam);
+        if (CHRBanks == 0) buffer.put(CHR);
+        buffer.put((byte) mirror.ordinal());
+        mapper.saveState(buffer);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        int mapperId = buffer.get() & 0xFF;
+        int PRGBanks = buffer.get() & 0xFF;
+        int CHRBanks = buffer.get() & 0xFF;
+        if (mapperId != this.mapperId || PRGBanks != this.PRGBanks || CHRBanks != this.CHRBanks) {
+            throw new IllegalArgumentException("Save state is for mapper %d with %d PRG and %d CHR banks"
+                    .formatted(mapperId, PRGBanks, CHRBanks));
+        }
+        buffer.get(PRGRam);
+        if (CHRBanks == 0) {
+            buffer.get(CHR);
+            tiles.invalidateAll();
+        }
+        Mirror mirror = Mirror.values()[buffer.get()];
+        boolean remirrored = mirror != this.mirror;
+        this.mirror = mirror;
+        mapper.loadState(buffer);
+        // same banks and mirroring as before, nobody has to remap anything
+        if (!mapper.banksChanged() && remirrored) {
+            banksChanged();
+        }
+    }
+
+    public void setBankListener(Runnable bankListener) {
+        this.bankListener = bankListener;
+    }
+
+    private void banksChanged() {
+        updateMirror();
+        bankListener.run();
+    }
+
+    // Four-screen boards have their own nametable RAM wired in, whatever the mapper does
+    private void updateMirror() {
+        if (mapper.getMirror() != null && mirror != Mirror.FOUR_SCREEN) {
+            mirror = mapper.getMirror();
+        }
+    }
+
+    // The mapper tells the listener what its power-on banks are, like after any other switch
+    public void reset() {
         mapper.reset();
-   }
+    }
 
 }
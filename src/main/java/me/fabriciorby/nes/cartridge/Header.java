@@ -3,14 +3,14 @@ package me.fabriciorby.nes.cartridge;
 public class Header {
     public Header(byte[] header) {
         this.name = new String(header, 0, 4);
-        this.PRGRomChunks = Byte.toUnsignedInt(header[5]);
-        this.CHRRomChunks = Byte.toUnsignedInt(header[6]);
-        this.mapper1 = Byte.toUnsignedInt(header[7]);
-        this.mapper2 = Byte.toUnsignedInt(header[8]);
-        this.PRGRamSize = Byte.toUnsignedInt(header[9]);
-        this.tvSystem1 = Byte.toUnsignedInt(header[10]);
-        this.tvSystem2 = Byte.toUnsignedInt(header[11]);
-        this.unused = new String(header, 11, 5); //to confirm
+        this.PRGRomChunks = Byte.toUnsignedInt(header[4]);
+        this.CHRRomChunks = Byte.toUnsignedInt(header[5]);
+        this.mapper1 = Byte.toUnsignedInt(header[6]);
+        this.mapper2 = Byte.toUnsignedInt(header[7]);
+        this.PRGRamSize = Byte.toUnsignedInt(header[8]);
+        this.tvSystem1 = Byte.toUnsignedInt(header[9]);
+        this.tvSystem2 = Byte.toUnsignedInt(header[10]);
+        this.unused = new String(header, 11, 5);
     }
     String name;
     int PRGRomChunks;
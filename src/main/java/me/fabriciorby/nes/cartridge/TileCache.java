@@ -0,0 +1,64 @@
+package me.fabriciorby.nes.cartridge;
+
+import java.util.Arrays;
+
+import static me.fabriciorby.nes.utils.ByteUtils.flipByte;
+
+// Every 8 pixel row of every tile in CHR, decoded the first time it's asked for: low plane in bits 0-7, high plane
+// in bits 8-15, once as stored and once mirrored for horizontally flipped sprites.
+// Rows are indexed by their offset in CHR, not by PPU address, so a bank switch just makes the PPU look at other
+// rows and only a CHR RAM write has to throw one away.
+class TileCache {
+
+    private static final int DECODED = 0x10000;
+
+    private final byte[] chr;
+    private final int[] rows;
+    private final int[] flippedRows;
+    private final int[] tileStamps;
+    private int stamp;
+
+    TileCache(byte[] chr) {
+        this.chr = chr;
+        this.rows = new int[chr.length / 2];
+        this.flippedRows = new int[chr.length / 2];
+        this.tileStamps = new int[chr.length / 16];
+    }
+
+    // offset of any byte of the row in CHR, either plane
+    int row(int offset, boolean flipped) {
+        int index = index(offset);
+        if (rows[index] == 0) {
+            decode(index, offset & ~0x08);
+        }
+        return (flipped ? flippedRows[index] : rows[index]) & 0xFFFF;
+    }
+
+    void invalidate(int offset) {
+        rows[index(offset)] = 0;
+        tileStamps[offset >> 4] = ++stamp;
+    }
+
+    // All of CHR changed at once, a loaded save state
+    void invalidateAll() {
+        Arrays.fill(rows, 0);
+        Arrays.fill(tileStamps, ++stamp);
+    }
+
+    // Changes every time one of the tile's bytes is written, for whoever keeps its own copy of the tile around
+    int stamp(int offset) {
+        return tileStamps[offset >> 4];
+    }
+
+    private void decode(int index, int offset) {
+        int lo = Byte.toUnsignedInt(chr[offset]);
+        int hi = Byte.toUnsignedInt(chr[offset + 8]);
+        rows[index] = DECODED | hi << 8 | lo;
+        flippedRows[index] = flipByte(hi) << 8 | flipByte(lo);
+    }
+
+    private static int index(int offset) {
+        return (offset >> 4) << 3 | (offset & 0x07);
+    }
+
+}
@@ -0,0 +1,247 @@
+package me.fabriciorby.nes.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format to write one CompiledBlock implementation: a constant pool, a default
+// constructor and a straight-line run(Cpu) method. The only jumps are early returns, they all land where the
+// locals are this, the cpu and the cycle counter with nothing on the stack, so their stack map frames are trivial.
+// https://docs.oracle.com/javase/specs/jvms/se21/html/jvms-4.html
+class BlockClassWriter {
+
+    private static final int JAVA_17 = 61;
+
+    private static final String CPU = "me/fabriciorby/nes/cpu/Cpu";
+    private static final String BLOCK = "me/fabriciorby/nes/cpu/CompiledBlock";
+    private static final String OBJECT = "java/lang/Object";
+
+    static final int ALOAD_0 = 0x2A;
+    static final int ALOAD_1 = 0x2B;
+    static final int ICONST_0 = 0x03;
+    static final int ILOAD_2 = 0x1C;
+    static final int ISTORE_2 = 0x3D;
+    static final int IADD = 0x60;
+    static final int IRETURN = 0xAC;
+    static final int IFEQ = 0x99;
+    static final int RETURN = 0xB1;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream code = new DataOutputStream(codeBytes);
+    private final List<Integer> frames = new ArrayList<>();
+
+    private final String className;
+
+    BlockClassWriter(String simpleName) {
+        this.className = "me/fabriciorby/nes/cpu/" + simpleName;
+    }
+
+    // Emitters for the body of run(Cpu cpu), local 1 is the cpu and local 2 the cycle counter
+
+    void op(int opcode) {
+        write(() -> code.writeByte(opcode));
+    }
+
+    void pushInt(int value) {
+        write(() -> {
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                code.writeByte(BIPUSH);
+                code.writeByte(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.writeByte(SIPUSH);
+                code.writeShort(value);
+            } else {
+                code.writeByte(LDC_W);
+                code.writeShort(integer(value));
+            }
+        });
+    }
+
+    void invokeCpu(String name, String descriptor) {
+        write(() -> {
+            code.writeByte(INVOKEVIRTUAL);
+            code.writeShort(methodRef(CPU, name, descriptor));
+        });
+    }
+
+    // Returns the cycles counted so far if the Cpu method, called on the cpu already on the stack, says so
+    void returnIf(String name) {
+        invokeCpu(name, "()Z");
+        write(() -> {
+            code.writeByte(IFEQ);
+            code.writeShort(5);
+            code.writeByte(ILOAD_2);
+            code.writeByte(IRETURN);
+        });
+        frames.add(code.size());
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(className);
+        int superClass = classRef(OBJECT);
+        int blockInterface = classRef(BLOCK);
+        int objectInit = methodRef(OBJECT, "<init>", "()V");
+        int init = utf8("<init>");
+        int initDescriptor = utf8("()V");
+        int run = utf8("run");
+        int runDescriptor = utf8("(L" + CPU + ";)I");
+        int codeAttribute = utf8("Code");
+        int stackMapAttribute = utf8("StackMapTable");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(JAVA_17);
+            out.writeShort(poolCount);
+            pool.flush();
+            out.write(poolBytes.toByteArray());
+            out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(blockInterface);
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+
+            byte[] initCode = {ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+            writeMethod(out, init, initDescriptor, codeAttribute, 1, 1, initCode, new byte[0]);
+
+            code.flush();
+            byte[] stackMap = frames.isEmpty() ? new byte[0] : stackMapTable(stackMapAttribute);
+            writeMethod(out, run, runDescriptor, codeAttribute, 4, 3, codeBytes.toByteArray(), stackMap);
+
+            out.writeShort(0); // class attributes
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+                                    int maxStack, int maxLocals, byte[] code, byte[] codeAttributes) throws IOException {
+        out.writeShort(0x0001); // ACC_PUBLIC
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length + codeAttributes.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(codeAttributes.length == 0 ? 0 : 1);
+        out.write(codeAttributes);
+    }
+
+    // The first frame adds the int cycle counter to the locals run(Cpu) starts with, the others are the same
+    // https://docs.oracle.com/javase/specs/jvms/se21/html/jvms-4.html#jvms-4.7.4
+    private byte[] stackMapTable(int attributeName) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(entries);
+        int previous = -1;
+        for (int offset : frames) {
+            int delta = offset - previous - 1;
+            if (previous < 0) {
+                out.writeByte(252); // append_frame, 1 local
+                out.writeShort(delta);
+                out.writeByte(1); // Integer
+            } else if (delta < 64) {
+                out.writeByte(delta); // same_frame
+            } else {
+                out.writeByte(251); // same_frame_extended
+                out.writeShort(delta);
+            }
+            previous = offset;
+        }
+        out.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream attribute = new DataOutputStream(bytes);
+        attribute.writeShort(attributeName);
+        attribute.writeInt(2 + entries.size());
+        attribute.writeShort(frames.size());
+        attribute.write(entries.toByteArray());
+        attribute.flush();
+        return bytes.toByteArray();
+    }
+
+    // Constant pool
+
+    private int utf8(String value) {
+        return constant("U" + value, () -> {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        });
+    }
+
+    private int integer(int value) {
+        return constant("I" + value, () -> {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        });
+    }
+
+    private int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, () -> {
+            pool.writeByte(7);
+            pool.writeShort(nameIndex);
+        });
+    }
+
+    private int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + descriptor, () -> {
+            pool.writeByte(12);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+        return constant("M" + owner + "." + name + descriptor, () -> {
+            pool.writeByte(10);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    private int constant(String key, Emitter emitter) {
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        write(emitter);
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private interface Emitter {
+        void emit() throws IOException;
+    }
+
+    private static void write(Emitter emitter) {
+        try {
+            emitter.emit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,7 @@
+package me.fabriciorby.nes.cpu;
+
+// Implemented by the classes Recompiler generates at runtime, run() executes a whole 6502 basic block and
+// returns the cycles it took, exactly what the interpreter would have counted for the same instructions.
+interface CompiledBlock {
+    int run(Cpu cpu);
+}
@@ -2,6 +2,9 @@ package me.fabriciorby.nes.cpu;
 
 import me.fabriciorby.nes.Bus;
 
+import java.nio.ByteBuffer;
+
+import static me.fabriciorby.nes.cpu.Instruction.*;
 import static me.fabriciorby.nes.cpu.StatusRegister.*;
 
 public class Cpu {
@@ -18,6 +21,11 @@ public class Cpu {
 
     void write(int address, int data) {
         bus.cpuWrite(address, data);
+        if (recompiler != null) recompiler.invalidate(address);
+    }
+
+    int peek(int address) {
+        return bus.cpuRead(address & 0xFFFF, true);
     }
 
     public int accumulator = 0x00;
@@ -34,7 +42,10 @@ public class Cpu {
     private int addressRelative = 0x00;
     private int cycles = 0;
 
-    protected final Instruction[] lookupInstructions = Instruction.getInstructions(this);
+    protected static final Instruction[] lookupInstructions = Instruction.LOOKUP;
+
+    private Recompiler recompiler;
+    private InstructionHook hook = InstructionHook.NONE;
 
     public int getFlag(StatusRegister statusRegister) {
         return ((this.statusRegister & statusRegister.bit) > 0) ? 1 : 0;
@@ -54,20 +65,150 @@ public class Cpu {
 
     public void clock() {
         if (cycles == 0) {
-            Debugger debugger = new Debugger(this);
             operationCode = read(programCounter);
+            hook.accept(this, programCounter, operationCode);
             programCounter++;
             programCounter &= 0xFFFF;
             setFlag(UNUSED, true);
-            cycles += lookupInstructions[operationCode].runAndGetCycles();
+            cycles += execute(operationCode);
 
             setFlag(UNUSED, true);
-            debugger.log();
         }
         cycles--;
         clockCount++;
     }
 
+    private int execute(int operationCode) {
+        int addressingCycles = switch (ADDRESSING_MODES[operationCode]) {
+            case IMP -> IMP();
+            case IMM -> IMM();
+            case ZP0 -> ZP0();
+            case ZPX -> ZPX();
+            case ZPY -> ZPY();
+            case REL -> REL();
+            case ABS -> ABS();
+            case ABX -> ABX();
+            case ABY -> ABY();
+            case IND -> IND();
+            case IZX -> IZX();
+            case IZY -> IZY();
+            default -> 0;
+        };
+        int operationCycles = switch (OPERATIONS[operationCode]) {
+            case ADC -> ADC();
+            case AND -> AND();
+            case ASL -> ASL();
+            case BCC -> BCC();
+            case BCS -> BCS();
+            case BEQ -> BEQ();
+            case BIT -> BIT();
+            case BMI -> BMI();
+            case BNE -> BNE();
+            case BPL -> BPL();
+            case BRK -> BRK();
+            case BVC -> BVC();
+            case BVS -> BVS();
+            case CLC -> CLC();
+            case CLD -> CLD();
+            case CLI -> CLI();
+            case CLV -> CLV();
+            case CMP -> CMP();
+            case CPX -> CPX();
+            case CPY -> CPY();
+            case DEC -> DEC();
+            case DEX -> DEX();
+            case DEY -> DEY();
+            case EOR -> EOR();
+            case INC -> INC();
+            case INX -> INX();
+            case INY -> INY();
+            case JMP -> JMP();
+            case JSR -> JSR();
+            case LDA -> LDA();
+            case LDX -> LDX();
+            case LDY -> LDY();
+            case LSR -> LSR();
+            case NOP -> NOP();
+            case ORA -> ORA();
+            case PHA -> PHA();
+            case PHP -> PHP();
+            case PLA -> PLA();
+            case PLP -> PLP();
+            case ROL -> ROL();
+            case ROR -> ROR();
+            case RTI -> RTI();
+            case RTS -> RTS();
+            case SBC -> SBC();
+            case SEC -> SEC();
+            case SED -> SED();
+            case SEI -> SEI();
+            case STA -> STA();
+            case STX -> STX();
+            case STY -> STY();
+            case TAX -> TAX();
+            case TAY -> TAY();
+            case TSX -> TSX();
+            case TXA -> TXA();
+            case TXS -> TXS();
+            case TYA -> TYA();
+            default -> XXX();
+        };
+        return addressingCycles + operationCycles + CYCLES[operationCode];
+    }
+
+    private boolean isImplied() {
+        return ADDRESSING_MODES[operationCode] == IMP;
+    }
+
+    public void setHook(InstructionHook hook) {
+        this.hook = hook == null ? InstructionHook.NONE : hook;
+    }
+
+    public InstructionHook getHook() {
+        return hook;
+    }
+
+    public void setRecompiler(boolean enabled) {
+        recompiler = enabled ? new Recompiler(this) : null;
+    }
+
+    public Recompiler getRecompiler() {
+        return recompiler;
+    }
+
+    // Runs the translated block at the program counter in one go, only valid when complete() is true.
+    // Returns the cycles it took or 0 when there is no hot block here yet and clock() has to do it.
+    public int runBlock() {
+        if (recompiler == null) return 0;
+        int blockCycles = recompiler.execute();
+        if (blockCycles > 0) {
+            setFlag(UNUSED, true);
+            cycles = 0; // same as clock(), whatever the branches added is overwritten
+            clockCount += blockCycles;
+        }
+        return blockCycles;
+    }
+
+    // Called by the generated blocks, the same bookkeeping clock() does around a fetch
+    void enter(int address, int operationCode) {
+        hook.accept(this, address, operationCode);
+        this.operationCode = operationCode;
+        programCounter = (address + 1) & 0xFFFF;
+        setFlag(UNUSED, true);
+    }
+
+    // IMM, ZP0 and ABS with the operand already read at translation time
+    int operand(int address, int nextProgramCounter) {
+        addressAbsolute = address;
+        programCounter = nextProgramCounter;
+        return 0;
+    }
+
+    // Checked after every store a block makes, the rest of it may have just been overwritten or switched out
+    boolean blockInvalidated() {
+        return recompiler.isRunningInvalidated();
+    }
+
     public void reset() {
         addressAbsolute = 0xFFFC;
         int low = read(addressAbsolute);
@@ -236,7 +377,7 @@ public class Cpu {
     //OperationCodes
 
     public int fetch() {
-        if (!lookupInstructions[operationCode].isIMP()) {
+        if (!isImplied()) {
             fetched = read(addressAbsolute);
         }
         return fetched;
@@ -267,7 +408,7 @@ public class Cpu {
         setFlag(CARRY, (temp & 0xFF00) > 0);
         setFlag(ZERO, (temp & 0x00FF) == 0x00);
         setFlag(NEGATIVE, (temp & 0x80) != 0);
-        if (lookupInstructions[operationCode].isIMP()) {
+        if (isImplied()) {
             accumulator = temp & 0x00FF;
         } else {
             write(addressAbsolute, temp & 0x00FF);
@@ -496,7 +637,7 @@ public class Cpu {
         int temp = fetched >> 1;
         setFlag(ZERO, (temp & 0x00FF) == 0x0000);
         setFlag(NEGATIVE, (temp & 0x0080) != 0);
-        if (lookupInstructions[operationCode].isIMP()) {
+        if (isImplied()) {
             accumulator = temp & 0x00FF;
         } else {
             write(addressAbsolute, temp & 0x00FF);
@@ -554,7 +695,7 @@ public class Cpu {
         setFlag(CARRY, (temp & 0xFF00) != 0);
         setFlag(ZERO, (temp & 0x00FF) == 0x0000);
         setFlag(NEGATIVE, (temp & 0x0080) != 0);
-        if (lookupInstructions[operationCode].isIMP())
+        if (isImplied())
             accumulator = temp & 0x00FF;
         else
             write(addressAbsolute, temp & 0x00FF);
@@ -567,7 +708,7 @@ public class Cpu {
         setFlag(CARRY, (fetched & 0x01) != 0);
         setFlag(ZERO, (temp & 0x00FF) == 0x0000);
         setFlag(NEGATIVE, (temp & 0x0080) != 0);
-        if (lookupInstructions[operationCode].isIMP())
+        if (isImplied())
             accumulator = temp & 0x00FF;
         else
             write(addressAbsolute, temp & 0x00FF);
@@ -682,8 +823,42 @@ public class Cpu {
         return 0;
     } // Illegal OperationCode
 
+    // Registers plus what's left of the instruction in flight, the program counter can be halfway through one
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(accumulator).putInt(xRegister).putInt(yRegister).putInt(stackPointer);
+        buffer.putInt(programCounter).putInt(statusRegister);
+        buffer.putLong(clockCount);
+        buffer.putInt(operationCode).putInt(fetched);
+        buffer.putInt(addressAbsolute).putInt(addressRelative).putInt(cycles);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        accumulator = buffer.getInt();
+        xRegister = buffer.getInt();
+        yRegister = buffer.getInt();
+        stackPointer = buffer.getInt();
+        programCounter = buffer.getInt();
+        statusRegister = buffer.getInt();
+        clockCount = buffer.getLong();
+        operationCode = buffer.getInt();
+        fetched = buffer.getInt();
+        addressAbsolute = buffer.getInt();
+        addressRelative = buffer.getInt();
+        cycles = buffer.getInt();
+    }
+
     // Helper functions
     public boolean complete() {
         return cycles == 0;
     }
+
+    public int getCycles() {
+        return cycles;
+    }
+
+    // Same as calling clock() count times while the current instruction is still running
+    public void skipCycles(int count) {
+        cycles -= count;
+        clockCount += count;
+    }
 }
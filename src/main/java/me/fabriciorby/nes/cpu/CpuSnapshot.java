@@ -0,0 +1,71 @@
+package me.fabriciorby.nes.cpu;
+
+import java.util.Arrays;
+
+// The registers and the bytes around the program counter, copied on the thread that runs the Cpu so a Debugger can
+// show them from another one without reading the bus. Capturing one never allocates.
+public class CpuSnapshot {
+
+    private static final int ACCUMULATOR = 0, X = 1, Y = 2, STACK_POINTER = 3, STATUS = 4, PROGRAM_COUNTER = 5;
+    private static final int MEMORY = 6;
+
+    private final int before;
+    private final int[] values;
+
+    // before and after are how many bytes get copied each side of the program counter, itself included in after
+    public CpuSnapshot(int before, int after) {
+        this.before = before;
+        this.values = new int[MEMORY + before + after];
+    }
+
+    public void capture(Cpu cpu) {
+        values[ACCUMULATOR] = cpu.accumulator;
+        values[X] = cpu.xRegister;
+        values[Y] = cpu.yRegister;
+        values[STACK_POINTER] = cpu.stackPointer;
+        values[STATUS] = cpu.statusRegister;
+        values[PROGRAM_COUNTER] = cpu.programCounter;
+        for (int i = MEMORY; i < values.length; i++) {
+            values[i] = cpu.peek(cpu.programCounter - before + i - MEMORY);
+        }
+    }
+
+    public void copyFrom(CpuSnapshot other) {
+        System.arraycopy(other.values, 0, values, 0, values.length);
+    }
+
+    public boolean sameAs(CpuSnapshot other) {
+        return Arrays.equals(values, other.values);
+    }
+
+    int accumulator() {
+        return values[ACCUMULATOR];
+    }
+
+    int xRegister() {
+        return values[X];
+    }
+
+    int yRegister() {
+        return values[Y];
+    }
+
+    int stackPointer() {
+        return values[STACK_POINTER];
+    }
+
+    int statusRegister() {
+        return values[STATUS];
+    }
+
+    int programCounter() {
+        return values[PROGRAM_COUNTER];
+    }
+
+    // 0 outside the bytes that were copied
+    int peek(int address) {
+        int i = (address - programCounter() + before) & 0xFFFF;
+        return i < values.length - MEMORY ? values[MEMORY + i] : 0;
+    }
+
+}
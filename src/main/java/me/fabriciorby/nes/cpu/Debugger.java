@@ -1,91 +1,126 @@
 package me.fabriciorby.nes.cpu;
 
+import java.util.function.IntUnaryOperator;
+
 public class Debugger {
 
     int programCounter;
     long clockCount;
     Instruction instruction;
-    Cpu cpu;
-    private boolean log = false;
+    private final int accumulator;
+    private final int xRegister;
+    private final int yRegister;
+    private final int stackPointer;
+    private final int statusRegister;
+    private final IntUnaryOperator memory;
 
     public Debugger(Cpu cpu) {
-        this.programCounter = cpu.programCounter;
-        this.clockCount = cpu.clockCount;
-        this.cpu = cpu;
-        this.instruction = cpu.lookupInstructions[cpu.read(programCounter)];
-    }
-
-    public void log() {
-        if (!log) return;
-        String debug = """
-                $%02X: %s %s
-                A: $%02X [%s]
-                X: $%02X [%s]
-                Y: $%02X [%s]
-                StackPointer: $%02X
-                Flags: %s%s%s%s%s%s%s%s
-                Clock count: %d
-                """.formatted(
-                programCounter, instruction.getName(), getInstructionInfo(instruction),
-                cpu.accumulator, cpu.accumulator, cpu.xRegister, cpu.xRegister,
-                cpu.yRegister, cpu.yRegister, cpu.stackPointer,
-                checkFlag(StatusRegister.NEGATIVE), checkFlag(StatusRegister.OVERFLOW), checkFlag(StatusRegister.UNUSED),
-                checkFlag(StatusRegister.BREAK), checkFlag(StatusRegister.DECIMAL), checkFlag(StatusRegister.DISABLE_INTERRUPTS),
-                checkFlag(StatusRegister.ZERO), checkFlag(StatusRegister.CARRY), clockCount);
-        System.out.println(debug);
-    }
-
-    public void setLog(boolean on) {
-        this.log = on;
+        this(cpu.programCounter, cpu.clockCount, cpu.accumulator, cpu.xRegister, cpu.yRegister, cpu.stackPointer,
+                cpu.statusRegister, cpu::peek);
+    }
+
+    // Only what the snapshot copied, so another thread than the Cpu's can use it
+    public Debugger(CpuSnapshot snapshot) {
+        this(snapshot.programCounter(), 0, snapshot.accumulator(), snapshot.xRegister(), snapshot.yRegister(),
+                snapshot.stackPointer(), snapshot.statusRegister(), snapshot::peek);
+    }
+
+    private Debugger(int programCounter, long clockCount, int accumulator, int xRegister, int yRegister,
+                     int stackPointer, int statusRegister, IntUnaryOperator memory) {
+        this.programCounter = programCounter;
+        this.clockCount = clockCount;
+        this.accumulator = accumulator;
+        this.xRegister = xRegister;
+        this.yRegister = yRegister;
+        this.stackPointer = stackPointer;
+        this.statusRegister = statusRegister;
+        this.memory = memory;
+        this.instruction = Cpu.lookupInstructions[peek(programCounter)];
+    }
+
+    // Prints what a TraceBuffer recorded, oldest first. Operands are read from memory as it is now.
+    public void log(TraceBuffer trace) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < trace.size(); i++) {
+            int address = trace.programCounter(i);
+            Instruction instruction = Cpu.lookupInstructions[trace.operationCode(i)];
+            out.append("""
+                    $%02X: %s %s
+                    A: $%02X [%s]
+                    X: $%02X [%s]
+                    Y: $%02X [%s]
+                    StackPointer: $%02X
+                    Flags: %s
+                    Clock count: %d
+                    
+                    """.formatted(
+                    address, instruction.getName(), getInstructionInfo(address, instruction),
+                    trace.accumulator(i), trace.accumulator(i), trace.xRegister(i), trace.xRegister(i),
+                    trace.yRegister(i), trace.yRegister(i), trace.stackPointer(i),
+                    flags(trace.statusRegister(i)), trace.clockCount(i)));
+        }
+        System.out.print(out);
     }
 
     public String getCurrentInstruction() {
-        return "$%02X: %s %s".formatted(programCounter, instruction.getName(), getInstructionInfo(instruction));
+        return "$%02X: %s %s".formatted(programCounter, instruction.getName(), getInstructionInfo(programCounter, instruction));
     }
 
     public String getInstruction(int address) {
-        var instruction = cpu.lookupInstructions[cpu.read(address)];
-        return "$%02X: %s %s".formatted(address, instruction.getName(), getInstructionInfo(instruction));
+        var instruction = Cpu.lookupInstructions[peek(address)];
+        return "$%02X: %s %s".formatted(address, instruction.getName(), getInstructionInfo(address, instruction));
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
     }
 
     public String getAccumulator() {
-        return "A: $%02X [%s]".formatted(cpu.accumulator, cpu.accumulator);
+        return "A: $%02X [%s]".formatted(accumulator, accumulator);
     }
 
     public String getXRegister() {
-        return "X: $%02X [%s]".formatted(cpu.xRegister, cpu.xRegister);
+        return "X: $%02X [%s]".formatted(xRegister, xRegister);
     }
 
     public String getYRegister() {
-        return "Y: $%02X [%s]".formatted(cpu.yRegister, cpu.yRegister);
+        return "Y: $%02X [%s]".formatted(yRegister, yRegister);
     }
 
     public String getStackPointer() {
-        return "StackPointer: $%02X".formatted(cpu.stackPointer);
+        return "StackPointer: $%02X".formatted(stackPointer);
     }
 
     public String getFlags() {
-        return "Flags: %s%s%s%s%s%s%s%s".formatted(checkFlag(StatusRegister.NEGATIVE), checkFlag(StatusRegister.OVERFLOW), checkFlag(StatusRegister.UNUSED),
-                checkFlag(StatusRegister.BREAK), checkFlag(StatusRegister.DECIMAL), checkFlag(StatusRegister.DISABLE_INTERRUPTS),
-                checkFlag(StatusRegister.ZERO), checkFlag(StatusRegister.CARRY));
+        return "Flags: " + flags(statusRegister);
     }
 
-    String getInstructionInfo(Instruction instruction) {
+    String getInstructionInfo(int programCounter, Instruction instruction) {
 
         int address = programCounter + 1;
 
         return switch (instruction.addressingModeName()) {
             case "IMM", "ZP0", "ZPX", "ZPY", "IZX", "IZY" ->
-                    "#$%02X".formatted(cpu.read(address));
+                    "#$%02X".formatted(peek(address));
             case "ABS", "IND", "ABY", "ABX" ->
-                    "$%04X".formatted((cpu.read(address + 1) << 8 | cpu.read(address)));
+                    "$%04X".formatted((peek(address + 1) << 8 | peek(address)));
             case "REL" ->
-                    "$%02X [$%04X]".formatted(cpu.read(address), ((byte) cpu.read(address) + address + 1));
+                    "$%02X [$%04X]".formatted(peek(address), ((byte) peek(address) + address + 1));
             default -> "";
         } + " {" + instruction.addressingModeName() + "}";
     }
 
-    private char checkFlag(StatusRegister statusRegister) {
-        return cpu.getFlag(statusRegister) == 1 ? statusRegister.code : '.';
+    private int peek(int address) {
+        return memory.applyAsInt(address);
+    }
+
+    private static String flags(int status) {
+        return "%s%s%s%s%s%s%s%s".formatted(checkFlag(status, StatusRegister.NEGATIVE), checkFlag(status, StatusRegister.OVERFLOW),
+                checkFlag(status, StatusRegister.UNUSED), checkFlag(status, StatusRegister.BREAK), checkFlag(status, StatusRegister.DECIMAL),
+                checkFlag(status, StatusRegister.DISABLE_INTERRUPTS), checkFlag(status, StatusRegister.ZERO), checkFlag(status, StatusRegister.CARRY));
+    }
+
+    private static char checkFlag(int status, StatusRegister statusRegister) {
+        return (status & statusRegister.bit) != 0 ? statusRegister.code : '.';
     }
 }
@@ -1,41 +1,66 @@
 package me.fabriciorby.nes.cpu;
 
-import java.util.function.Supplier;
-import java.util.stream.IntStream;
+public record Instruction(String operationName, int operation, String addressingModeName,
+                          int addressingMode, int totalCycles) {
 
-public record Instruction(String operationName, Supplier<Integer> operation, String addressingModeName,
-                          Supplier<Integer> addressingMode, int totalCycles) {
+    // Addressing modes
+    static final int IMP = 0, IMM = 1, ZP0 = 2, ZPX = 3, ZPY = 4, REL = 5;
+    static final int ABS = 6, ABX = 7, ABY = 8, IND = 9, IZX = 10, IZY = 11;
 
-    public static Instruction[] getInstructions(Cpu cpu) {
-        return new Instruction[] {
-                new Instruction("BRK", cpu::BRK, "IMM", cpu::IMM, 7), new Instruction("ORA", cpu::ORA, "IZX", cpu::IZX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 3), new Instruction("ORA", cpu::ORA, "ZP0", cpu::ZP0, 3), new Instruction("ASL", cpu::ASL, "ZP0", cpu::ZP0, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("PHP", cpu::PHP, "IMP", cpu::IMP, 3), new Instruction("ORA", cpu::ORA, "IMM", cpu::IMM, 2), new Instruction("ASL", cpu::ASL, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("ORA", cpu::ORA, "ABS", cpu::ABS, 4), new Instruction("ASL", cpu::ASL, "ABS", cpu::ABS, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6),
-                new Instruction("BPL", cpu::BPL, "REL", cpu::REL, 2), new Instruction("ORA", cpu::ORA, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("ORA", cpu::ORA, "ZPX", cpu::ZPX, 4), new Instruction("ASL", cpu::ASL, "ZPX", cpu::ZPX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("CLC", cpu::CLC, "IMP", cpu::IMP, 2), new Instruction("ORA", cpu::ORA, "ABY", cpu::ABY, 4), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("ORA", cpu::ORA, "ABX", cpu::ABX, 4), new Instruction("ASL", cpu::ASL, "ABX", cpu::ABX, 7), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7),
-                new Instruction("JSR", cpu::JSR, "ABS", cpu::ABS, 6), new Instruction("AND", cpu::AND, "IZX", cpu::IZX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("BIT", cpu::BIT, "ZP0", cpu::ZP0, 3), new Instruction("AND", cpu::AND, "ZP0", cpu::ZP0, 3), new Instruction("ROL", cpu::ROL, "ZP0", cpu::ZP0, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("PLP", cpu::PLP, "IMP", cpu::IMP, 4), new Instruction("AND", cpu::AND, "IMM", cpu::IMM, 2), new Instruction("ROL", cpu::ROL, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("BIT", cpu::BIT, "ABS", cpu::ABS, 4), new Instruction("AND", cpu::AND, "ABS", cpu::ABS, 4), new Instruction("ROL", cpu::ROL, "ABS", cpu::ABS, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6),
-                new Instruction("BMI", cpu::BMI, "REL", cpu::REL, 2), new Instruction("AND", cpu::AND, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("AND", cpu::AND, "ZPX", cpu::ZPX, 4), new Instruction("ROL", cpu::ROL, "ZPX", cpu::ZPX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("SEC", cpu::SEC, "IMP", cpu::IMP, 2), new Instruction("AND", cpu::AND, "ABY", cpu::ABY, 4), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("AND", cpu::AND, "ABX", cpu::ABX, 4), new Instruction("ROL", cpu::ROL, "ABX", cpu::ABX, 7), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7),
-                new Instruction("RTI", cpu::RTI, "IMP", cpu::IMP, 6), new Instruction("EOR", cpu::EOR, "IZX", cpu::IZX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 3), new Instruction("EOR", cpu::EOR, "ZP0", cpu::ZP0, 3), new Instruction("LSR", cpu::LSR, "ZP0", cpu::ZP0, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("PHA", cpu::PHA, "IMP", cpu::IMP, 3), new Instruction("EOR", cpu::EOR, "IMM", cpu::IMM, 2), new Instruction("LSR", cpu::LSR, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("JMP", cpu::JMP, "ABS", cpu::ABS, 3), new Instruction("EOR", cpu::EOR, "ABS", cpu::ABS, 4), new Instruction("LSR", cpu::LSR, "ABS", cpu::ABS, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6),
-                new Instruction("BVC", cpu::BVC, "REL", cpu::REL, 2), new Instruction("EOR", cpu::EOR, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("EOR", cpu::EOR, "ZPX", cpu::ZPX, 4), new Instruction("LSR", cpu::LSR, "ZPX", cpu::ZPX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("CLI", cpu::CLI, "IMP", cpu::IMP, 2), new Instruction("EOR", cpu::EOR, "ABY", cpu::ABY, 4), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("EOR", cpu::EOR, "ABX", cpu::ABX, 4), new Instruction("LSR", cpu::LSR, "ABX", cpu::ABX, 7), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7),
-                new Instruction("RTS", cpu::RTS, "IMP", cpu::IMP, 6), new Instruction("ADC", cpu::ADC, "IZX", cpu::IZX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 3), new Instruction("ADC", cpu::ADC, "ZP0", cpu::ZP0, 3), new Instruction("ROR", cpu::ROR, "ZP0", cpu::ZP0, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("PLA", cpu::PLA, "IMP", cpu::IMP, 4), new Instruction("ADC", cpu::ADC, "IMM", cpu::IMM, 2), new Instruction("ROR", cpu::ROR, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("JMP", cpu::JMP, "IND", cpu::IND, 5), new Instruction("ADC", cpu::ADC, "ABS", cpu::ABS, 4), new Instruction("ROR", cpu::ROR, "ABS", cpu::ABS, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6),
-                new Instruction("BVS", cpu::BVS, "REL", cpu::REL, 2), new Instruction("ADC", cpu::ADC, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("ADC", cpu::ADC, "ZPX", cpu::ZPX, 4), new Instruction("ROR", cpu::ROR, "ZPX", cpu::ZPX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("SEI", cpu::SEI, "IMP", cpu::IMP, 2), new Instruction("ADC", cpu::ADC, "ABY", cpu::ABY, 4), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("ADC", cpu::ADC, "ABX", cpu::ABX, 4), new Instruction("ROR", cpu::ROR, "ABX", cpu::ABX, 7), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7),
-                new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("STA", cpu::STA, "IZX", cpu::IZX, 6), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("STY", cpu::STY, "ZP0", cpu::ZP0, 3), new Instruction("STA", cpu::STA, "ZP0", cpu::ZP0, 3), new Instruction("STX", cpu::STX, "ZP0", cpu::ZP0, 3), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 3), new Instruction("DEY", cpu::DEY, "IMP", cpu::IMP, 2), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("TXA", cpu::TXA, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("STY", cpu::STY, "ABS", cpu::ABS, 4), new Instruction("STA", cpu::STA, "ABS", cpu::ABS, 4), new Instruction("STX", cpu::STX, "ABS", cpu::ABS, 4), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 4),
-                new Instruction("BCC", cpu::BCC, "REL", cpu::REL, 2), new Instruction("STA", cpu::STA, "IZY", cpu::IZY, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("STY", cpu::STY, "ZPX", cpu::ZPX, 4), new Instruction("STA", cpu::STA, "ZPX", cpu::ZPX, 4), new Instruction("STX", cpu::STX, "ZPY", cpu::ZPY, 4), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 4), new Instruction("TYA", cpu::TYA, "IMP", cpu::IMP, 2), new Instruction("STA", cpu::STA, "ABY", cpu::ABY, 5), new Instruction("TXS", cpu::TXS, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 5), new Instruction("STA", cpu::STA, "ABX", cpu::ABX, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5),
-                new Instruction("LDY", cpu::LDY, "IMM", cpu::IMM, 2), new Instruction("LDA", cpu::LDA, "IZX", cpu::IZX, 6), new Instruction("LDX", cpu::LDX, "IMM", cpu::IMM, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("LDY", cpu::LDY, "ZP0", cpu::ZP0, 3), new Instruction("LDA", cpu::LDA, "ZP0", cpu::ZP0, 3), new Instruction("LDX", cpu::LDX, "ZP0", cpu::ZP0, 3), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 3), new Instruction("TAY", cpu::TAY, "IMP", cpu::IMP, 2), new Instruction("LDA", cpu::LDA, "IMM", cpu::IMM, 2), new Instruction("TAX", cpu::TAX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("LDY", cpu::LDY, "ABS", cpu::ABS, 4), new Instruction("LDA", cpu::LDA, "ABS", cpu::ABS, 4), new Instruction("LDX", cpu::LDX, "ABS", cpu::ABS, 4), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 4),
-                new Instruction("BCS", cpu::BCS, "REL", cpu::REL, 2), new Instruction("LDA", cpu::LDA, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("LDY", cpu::LDY, "ZPX", cpu::ZPX, 4), new Instruction("LDA", cpu::LDA, "ZPX", cpu::ZPX, 4), new Instruction("LDX", cpu::LDX, "ZPY", cpu::ZPY, 4), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 4), new Instruction("CLV", cpu::CLV, "IMP", cpu::IMP, 2), new Instruction("LDA", cpu::LDA, "ABY", cpu::ABY, 4), new Instruction("TSX", cpu::TSX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 4), new Instruction("LDY", cpu::LDY, "ABX", cpu::ABX, 4), new Instruction("LDA", cpu::LDA, "ABX", cpu::ABX, 4), new Instruction("LDX", cpu::LDX, "ABY", cpu::ABY, 4), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 4),
-                new Instruction("CPY", cpu::CPY, "IMM", cpu::IMM, 2), new Instruction("CMP", cpu::CMP, "IZX", cpu::IZX, 6), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("CPY", cpu::CPY, "ZP0", cpu::ZP0, 3), new Instruction("CMP", cpu::CMP, "ZP0", cpu::ZP0, 3), new Instruction("DEC", cpu::DEC, "ZP0", cpu::ZP0, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("INY", cpu::INY, "IMP", cpu::IMP, 2), new Instruction("CMP", cpu::CMP, "IMM", cpu::IMM, 2), new Instruction("DEX", cpu::DEX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("CPY", cpu::CPY, "ABS", cpu::ABS, 4), new Instruction("CMP", cpu::CMP, "ABS", cpu::ABS, 4), new Instruction("DEC", cpu::DEC, "ABS", cpu::ABS, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6),
-                new Instruction("BNE", cpu::BNE, "REL", cpu::REL, 2), new Instruction("CMP", cpu::CMP, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("CMP", cpu::CMP, "ZPX", cpu::ZPX, 4), new Instruction("DEC", cpu::DEC, "ZPX", cpu::ZPX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("CLD", cpu::CLD, "IMP", cpu::IMP, 2), new Instruction("CMP", cpu::CMP, "ABY", cpu::ABY, 4), new Instruction("NOP", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("CMP", cpu::CMP, "ABX", cpu::ABX, 4), new Instruction("DEC", cpu::DEC, "ABX", cpu::ABX, 7), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7),
-                new Instruction("CPX", cpu::CPX, "IMM", cpu::IMM, 2), new Instruction("SBC", cpu::SBC, "IZX", cpu::IZX, 6), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("CPX", cpu::CPX, "ZP0", cpu::ZP0, 3), new Instruction("SBC", cpu::SBC, "ZP0", cpu::ZP0, 3), new Instruction("INC", cpu::INC, "ZP0", cpu::ZP0, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 5), new Instruction("INX", cpu::INX, "IMP", cpu::IMP, 2), new Instruction("SBC", cpu::SBC, "IMM", cpu::IMM, 2), new Instruction("NOP", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::SBC, "IMP", cpu::IMP, 2), new Instruction("CPX", cpu::CPX, "ABS", cpu::ABS, 4), new Instruction("SBC", cpu::SBC, "ABS", cpu::ABS, 4), new Instruction("INC", cpu::INC, "ABS", cpu::ABS, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6),
-                new Instruction("BEQ", cpu::BEQ, "REL", cpu::REL, 2), new Instruction("SBC", cpu::SBC, "IZY", cpu::IZY, 5), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 8), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("SBC", cpu::SBC, "ZPX", cpu::ZPX, 4), new Instruction("INC", cpu::INC, "ZPX", cpu::ZPX, 6), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 6), new Instruction("SED", cpu::SED, "IMP", cpu::IMP, 2), new Instruction("SBC", cpu::SBC, "ABY", cpu::ABY, 4), new Instruction("NOP", cpu::NOP, "IMP", cpu::IMP, 2), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7), new Instruction("???", cpu::NOP, "IMP", cpu::IMP, 4), new Instruction("SBC", cpu::SBC, "ABX", cpu::ABX, 4), new Instruction("INC", cpu::INC, "ABX", cpu::ABX, 7), new Instruction("???", cpu::XXX, "IMP", cpu::IMP, 7),
-        };
-    }
+    // Operations
+    static final int ADC = 0, AND = 1, ASL = 2, BCC = 3, BCS = 4, BEQ = 5, BIT = 6, BMI = 7, BNE = 8, BPL = 9;
+    static final int BRK = 10, BVC = 11, BVS = 12, CLC = 13, CLD = 14, CLI = 15, CLV = 16, CMP = 17, CPX = 18, CPY = 19;
+    static final int DEC = 20, DEX = 21, DEY = 22, EOR = 23, INC = 24, INX = 25, INY = 26, JMP = 27, JSR = 28, LDA = 29;
+    static final int LDX = 30, LDY = 31, LSR = 32, NOP = 33, ORA = 34, PHA = 35, PHP = 36, PLA = 37, PLP = 38, ROL = 39;
+    static final int ROR = 40, RTI = 41, RTS = 42, SBC = 43, SEC = 44, SED = 45, SEI = 46, STA = 47, STX = 48, STY = 49;
+    static final int TAX = 50, TAY = 51, TSX = 52, TXA = 53, TXS = 54, TYA = 55, XXX = 56;
+
+    // Method names in Cpu, the "???" entries below still run one of these
+    static final String[] OPERATION_NAMES = {
+            "ADC", "AND", "ASL", "BCC", "BCS", "BEQ", "BIT", "BMI", "BNE", "BPL",
+            "BRK", "BVC", "BVS", "CLC", "CLD", "CLI", "CLV", "CMP", "CPX", "CPY",
+            "DEC", "DEX", "DEY", "EOR", "INC", "INX", "INY", "JMP", "JSR", "LDA",
+            "LDX", "LDY", "LSR", "NOP", "ORA", "PHA", "PHP", "PLA", "PLP", "ROL",
+            "ROR", "RTI", "RTS", "SBC", "SEC", "SED", "SEI", "STA", "STX", "STY",
+            "TAX", "TAY", "TSX", "TXA", "TXS", "TYA", "XXX"};
 
-    public int runAndGetCycles() {
-        return IntStream.of(this.addressingMode.get(), this.operation.get(), this.totalCycles).sum();
+    static final Instruction[] LOOKUP = getInstructions();
+
+    // Flat copies of the table so the Cpu hot path only touches primitive arrays
+    static final int[] OPERATIONS = new int[256];
+    static final int[] ADDRESSING_MODES = new int[256];
+    static final int[] CYCLES = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            OPERATIONS[i] = LOOKUP[i].operation;
+            ADDRESSING_MODES[i] = LOOKUP[i].addressingMode;
+            CYCLES[i] = LOOKUP[i].totalCycles;
+        }
     }
 
-    boolean isIMP() {
-        return this.addressingModeName.equals("IMP");
+    public static Instruction[] getInstructions() {
+        return new Instruction[] {
+                new Instruction("BRK", BRK, "IMM", IMM, 7), new Instruction("ORA", ORA, "IZX", IZX, 6), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 3), new Instruction("ORA", ORA, "ZP0", ZP0, 3), new Instruction("ASL", ASL, "ZP0", ZP0, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("PHP", PHP, "IMP", IMP, 3), new Instruction("ORA", ORA, "IMM", IMM, 2), new Instruction("ASL", ASL, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("ORA", ORA, "ABS", ABS, 4), new Instruction("ASL", ASL, "ABS", ABS, 6), new Instruction("???", XXX, "IMP", IMP, 6),
+                new Instruction("BPL", BPL, "REL", REL, 2), new Instruction("ORA", ORA, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("ORA", ORA, "ZPX", ZPX, 4), new Instruction("ASL", ASL, "ZPX", ZPX, 6), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("CLC", CLC, "IMP", IMP, 2), new Instruction("ORA", ORA, "ABY", ABY, 4), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 7), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("ORA", ORA, "ABX", ABX, 4), new Instruction("ASL", ASL, "ABX", ABX, 7), new Instruction("???", XXX, "IMP", IMP, 7),
+                new Instruction("JSR", JSR, "ABS", ABS, 6), new Instruction("AND", AND, "IZX", IZX, 6), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("BIT", BIT, "ZP0", ZP0, 3), new Instruction("AND", AND, "ZP0", ZP0, 3), new Instruction("ROL", ROL, "ZP0", ZP0, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("PLP", PLP, "IMP", IMP, 4), new Instruction("AND", AND, "IMM", IMM, 2), new Instruction("ROL", ROL, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("BIT", BIT, "ABS", ABS, 4), new Instruction("AND", AND, "ABS", ABS, 4), new Instruction("ROL", ROL, "ABS", ABS, 6), new Instruction("???", XXX, "IMP", IMP, 6),
+                new Instruction("BMI", BMI, "REL", REL, 2), new Instruction("AND", AND, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("AND", AND, "ZPX", ZPX, 4), new Instruction("ROL", ROL, "ZPX", ZPX, 6), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("SEC", SEC, "IMP", IMP, 2), new Instruction("AND", AND, "ABY", ABY, 4), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 7), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("AND", AND, "ABX", ABX, 4), new Instruction("ROL", ROL, "ABX", ABX, 7), new Instruction("???", XXX, "IMP", IMP, 7),
+                new Instruction("RTI", RTI, "IMP", IMP, 6), new Instruction("EOR", EOR, "IZX", IZX, 6), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 3), new Instruction("EOR", EOR, "ZP0", ZP0, 3), new Instruction("LSR", LSR, "ZP0", ZP0, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("PHA", PHA, "IMP", IMP, 3), new Instruction("EOR", EOR, "IMM", IMM, 2), new Instruction("LSR", LSR, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("JMP", JMP, "ABS", ABS, 3), new Instruction("EOR", EOR, "ABS", ABS, 4), new Instruction("LSR", LSR, "ABS", ABS, 6), new Instruction("???", XXX, "IMP", IMP, 6),
+                new Instruction("BVC", BVC, "REL", REL, 2), new Instruction("EOR", EOR, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("EOR", EOR, "ZPX", ZPX, 4), new Instruction("LSR", LSR, "ZPX", ZPX, 6), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("CLI", CLI, "IMP", IMP, 2), new Instruction("EOR", EOR, "ABY", ABY, 4), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 7), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("EOR", EOR, "ABX", ABX, 4), new Instruction("LSR", LSR, "ABX", ABX, 7), new Instruction("???", XXX, "IMP", IMP, 7),
+                new Instruction("RTS", RTS, "IMP", IMP, 6), new Instruction("ADC", ADC, "IZX", IZX, 6), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 3), new Instruction("ADC", ADC, "ZP0", ZP0, 3), new Instruction("ROR", ROR, "ZP0", ZP0, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("PLA", PLA, "IMP", IMP, 4), new Instruction("ADC", ADC, "IMM", IMM, 2), new Instruction("ROR", ROR, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("JMP", JMP, "IND", IND, 5), new Instruction("ADC", ADC, "ABS", ABS, 4), new Instruction("ROR", ROR, "ABS", ABS, 6), new Instruction("???", XXX, "IMP", IMP, 6),
+                new Instruction("BVS", BVS, "REL", REL, 2), new Instruction("ADC", ADC, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("ADC", ADC, "ZPX", ZPX, 4), new Instruction("ROR", ROR, "ZPX", ZPX, 6), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("SEI", SEI, "IMP", IMP, 2), new Instruction("ADC", ADC, "ABY", ABY, 4), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 7), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("ADC", ADC, "ABX", ABX, 4), new Instruction("ROR", ROR, "ABX", ABX, 7), new Instruction("???", XXX, "IMP", IMP, 7),
+                new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("STA", STA, "IZX", IZX, 6), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("STY", STY, "ZP0", ZP0, 3), new Instruction("STA", STA, "ZP0", ZP0, 3), new Instruction("STX", STX, "ZP0", ZP0, 3), new Instruction("???", XXX, "IMP", IMP, 3), new Instruction("DEY", DEY, "IMP", IMP, 2), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("TXA", TXA, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("STY", STY, "ABS", ABS, 4), new Instruction("STA", STA, "ABS", ABS, 4), new Instruction("STX", STX, "ABS", ABS, 4), new Instruction("???", XXX, "IMP", IMP, 4),
+                new Instruction("BCC", BCC, "REL", REL, 2), new Instruction("STA", STA, "IZY", IZY, 6), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("STY", STY, "ZPX", ZPX, 4), new Instruction("STA", STA, "ZPX", ZPX, 4), new Instruction("STX", STX, "ZPY", ZPY, 4), new Instruction("???", XXX, "IMP", IMP, 4), new Instruction("TYA", TYA, "IMP", IMP, 2), new Instruction("STA", STA, "ABY", ABY, 5), new Instruction("TXS", TXS, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("???", NOP, "IMP", IMP, 5), new Instruction("STA", STA, "ABX", ABX, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("???", XXX, "IMP", IMP, 5),
+                new Instruction("LDY", LDY, "IMM", IMM, 2), new Instruction("LDA", LDA, "IZX", IZX, 6), new Instruction("LDX", LDX, "IMM", IMM, 2), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("LDY", LDY, "ZP0", ZP0, 3), new Instruction("LDA", LDA, "ZP0", ZP0, 3), new Instruction("LDX", LDX, "ZP0", ZP0, 3), new Instruction("???", XXX, "IMP", IMP, 3), new Instruction("TAY", TAY, "IMP", IMP, 2), new Instruction("LDA", LDA, "IMM", IMM, 2), new Instruction("TAX", TAX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("LDY", LDY, "ABS", ABS, 4), new Instruction("LDA", LDA, "ABS", ABS, 4), new Instruction("LDX", LDX, "ABS", ABS, 4), new Instruction("???", XXX, "IMP", IMP, 4),
+                new Instruction("BCS", BCS, "REL", REL, 2), new Instruction("LDA", LDA, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("LDY", LDY, "ZPX", ZPX, 4), new Instruction("LDA", LDA, "ZPX", ZPX, 4), new Instruction("LDX", LDX, "ZPY", ZPY, 4), new Instruction("???", XXX, "IMP", IMP, 4), new Instruction("CLV", CLV, "IMP", IMP, 2), new Instruction("LDA", LDA, "ABY", ABY, 4), new Instruction("TSX", TSX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 4), new Instruction("LDY", LDY, "ABX", ABX, 4), new Instruction("LDA", LDA, "ABX", ABX, 4), new Instruction("LDX", LDX, "ABY", ABY, 4), new Instruction("???", XXX, "IMP", IMP, 4),
+                new Instruction("CPY", CPY, "IMM", IMM, 2), new Instruction("CMP", CMP, "IZX", IZX, 6), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("CPY", CPY, "ZP0", ZP0, 3), new Instruction("CMP", CMP, "ZP0", ZP0, 3), new Instruction("DEC", DEC, "ZP0", ZP0, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("INY", INY, "IMP", IMP, 2), new Instruction("CMP", CMP, "IMM", IMM, 2), new Instruction("DEX", DEX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("CPY", CPY, "ABS", ABS, 4), new Instruction("CMP", CMP, "ABS", ABS, 4), new Instruction("DEC", DEC, "ABS", ABS, 6), new Instruction("???", XXX, "IMP", IMP, 6),
+                new Instruction("BNE", BNE, "REL", REL, 2), new Instruction("CMP", CMP, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("CMP", CMP, "ZPX", ZPX, 4), new Instruction("DEC", DEC, "ZPX", ZPX, 6), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("CLD", CLD, "IMP", IMP, 2), new Instruction("CMP", CMP, "ABY", ABY, 4), new Instruction("NOP", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 7), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("CMP", CMP, "ABX", ABX, 4), new Instruction("DEC", DEC, "ABX", ABX, 7), new Instruction("???", XXX, "IMP", IMP, 7),
+                new Instruction("CPX", CPX, "IMM", IMM, 2), new Instruction("SBC", SBC, "IZX", IZX, 6), new Instruction("???", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("CPX", CPX, "ZP0", ZP0, 3), new Instruction("SBC", SBC, "ZP0", ZP0, 3), new Instruction("INC", INC, "ZP0", ZP0, 5), new Instruction("???", XXX, "IMP", IMP, 5), new Instruction("INX", INX, "IMP", IMP, 2), new Instruction("SBC", SBC, "IMM", IMM, 2), new Instruction("NOP", NOP, "IMP", IMP, 2), new Instruction("???", SBC, "IMP", IMP, 2), new Instruction("CPX", CPX, "ABS", ABS, 4), new Instruction("SBC", SBC, "ABS", ABS, 4), new Instruction("INC", INC, "ABS", ABS, 6), new Instruction("???", XXX, "IMP", IMP, 6),
+                new Instruction("BEQ", BEQ, "REL", REL, 2), new Instruction("SBC", SBC, "IZY", IZY, 5), new Instruction("???", XXX, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 8), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("SBC", SBC, "ZPX", ZPX, 4), new Instruction("INC", INC, "ZPX", ZPX, 6), new Instruction("???", XXX, "IMP", IMP, 6), new Instruction("SED", SED, "IMP", IMP, 2), new Instruction("SBC", SBC, "ABY", ABY, 4), new Instruction("NOP", NOP, "IMP", IMP, 2), new Instruction("???", XXX, "IMP", IMP, 7), new Instruction("???", NOP, "IMP", IMP, 4), new Instruction("SBC", SBC, "ABX", ABX, 4), new Instruction("INC", INC, "ABX", ABX, 7), new Instruction("???", XXX, "IMP", IMP, 7),
+        };
     }
 
     public String getName() {
         return this.operationName;
     }
-}
\ No newline at end of file
+}
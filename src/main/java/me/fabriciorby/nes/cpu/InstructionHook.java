@@ -0,0 +1,18 @@
+package me.fabriciorby.nes.cpu;
+
+// Called after every opcode fetch, before the instruction runs, so the cpu registers still hold the values the
+// instruction starts with. The default does nothing and, being the only implementation most of the time, gets
+// inlined away by the JIT.
+public interface InstructionHook {
+
+    InstructionHook NONE = new None();
+
+    void accept(Cpu cpu, int programCounter, int operationCode);
+
+    final class None implements InstructionHook {
+        @Override
+        public void accept(Cpu cpu, int programCounter, int operationCode) {
+        }
+    }
+
+}
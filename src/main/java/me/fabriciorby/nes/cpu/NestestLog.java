@@ -0,0 +1,225 @@
+package me.fabriciorby.nes.cpu;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// One line per instruction in nestest.log's format, as Nintendulator writes it:
+// C72F  B0 04     BCS $C735                       A:00 X:00 Y:00 P:27 SP:FB PPU:  0, 93 CYC:31
+// Operands show what they point at, unofficial opcodes get a *. They're read with peek, which leaves the PPU registers
+// and the controller ports alone, so a traced run is the same as an untraced one.
+// Every line is built in the same byte array and written straight to the stream, nothing is allocated per
+// instruction. Given a golden log, each line is compared to the next one of it as it's written, and the first one
+// that differs stops the log: done() turns true and divergence() says where.
+public class NestestLog implements InstructionHook {
+
+    public record Divergence(int line, String expected, String actual) {
+        @Override
+        public String toString() {
+            return "line %d\nexpected %s\nactual   %s".formatted(line, expected, actual);
+        }
+    }
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] NAMES = new byte[256][];
+    private static final boolean[] UNOFFICIAL = new boolean[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            Instruction instruction = Instruction.LOOKUP[i];
+            UNOFFICIAL[i] = instruction.getName().equals("???");
+            NAMES[i] = Instruction.OPERATION_NAMES[instruction.operation()].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final int MNEMONIC = 16;
+    private static final int REGISTERS = 48;
+
+    private final OutputStream out;
+    private final byte[] line = new byte[128];
+    private Cpu cpu;
+    private byte[] golden;
+    private int goldenPosition;
+    private int lines;
+    private Divergence divergence;
+
+    public NestestLog(OutputStream out) {
+        this.out = out;
+    }
+
+    public void setGolden(byte[] golden) {
+        this.golden = golden;
+        this.goldenPosition = 0;
+    }
+
+    @Override
+    public void accept(Cpu cpu, int programCounter, int operationCode) {
+        if (done()) return;
+        this.cpu = cpu;
+        int length = format(programCounter, operationCode);
+        line[length] = '\n';
+        try {
+            out.write(line, 0, length + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lines++;
+        if (golden != null) compare(length);
+    }
+
+    // Once a golden log runs out or differs, there's nothing left to check
+    public boolean done() {
+        return divergence != null || (golden != null && goldenPosition >= golden.length);
+    }
+
+    public int lines() {
+        return lines;
+    }
+
+    public Divergence divergence() {
+        return divergence;
+    }
+
+    private void compare(int length) {
+        int end = goldenPosition;
+        while (end < golden.length && golden[end] != '\n') end++;
+        int next = end + 1;
+        if (end > goldenPosition && golden[end - 1] == '\r') end--;
+        if (!equals(golden, goldenPosition, end, line, length)) {
+            divergence = new Divergence(lines,
+                    new String(golden, goldenPosition, end - goldenPosition, StandardCharsets.US_ASCII),
+                    new String(line, 0, length, StandardCharsets.US_ASCII));
+        }
+        goldenPosition = next;
+    }
+
+    private static boolean equals(byte[] a, int from, int to, byte[] b, int length) {
+        if (to - from != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (a[from + i] != b[i]) return false;
+        }
+        return true;
+    }
+
+    private int format(int programCounter, int operationCode) {
+        int mode = Instruction.ADDRESSING_MODES[operationCode];
+        int operation = Instruction.OPERATIONS[operationCode];
+        int size = operation == Instruction.BRK ? 1 : switch (mode) {
+            case Instruction.IMP -> 1;
+            case Instruction.ABS, Instruction.ABX, Instruction.ABY, Instruction.IND -> 3;
+            default -> 2;
+        };
+        int low = cpu.peek((programCounter + 1) & 0xFFFF);
+        int high = cpu.peek((programCounter + 2) & 0xFFFF);
+
+        int p = hex4(0, programCounter);
+        p = pad(p, 6);
+        p = hex2(p, operationCode);
+        if (size > 1) p = hex2(put(p, ' '), low);
+        if (size > 2) p = hex2(put(p, ' '), high);
+        p = pad(p, MNEMONIC - 1);
+        p = put(p, UNOFFICIAL[operationCode] ? '*' : ' ');
+        for (byte b : NAMES[operationCode]) p = put(p, b);
+        if (operation != Instruction.BRK) p = operand(put(p, ' '), mode, operation, programCounter, low, high);
+        p = pad(p, REGISTERS);
+
+        p = hex2(string(p, "A:"), cpu.accumulator);
+        p = hex2(string(p, " X:"), cpu.xRegister);
+        p = hex2(string(p, " Y:"), cpu.yRegister);
+        p = hex2(string(p, " P:"), cpu.statusRegister);
+        p = hex2(string(p, " SP:"), cpu.stackPointer);
+        // 3 dots per cycle from the top of the frame, rendering is off the whole time so no frame is a dot short
+        long dots = cpu.clockCount * 3;
+        p = decimal(string(p, " PPU:"), (dots / 341) % 262, 3);
+        p = decimal(put(p, ','), dots % 341, 3);
+        return decimal(string(p, " CYC:"), cpu.clockCount, 1);
+    }
+
+    private int operand(int p, int mode, int operation, int programCounter, int low, int high) {
+        int absolute = high << 8 | low;
+        return switch (mode) {
+            case Instruction.IMP -> switch (operation) {
+                case Instruction.ASL, Instruction.LSR, Instruction.ROL, Instruction.ROR -> put(p, 'A');
+                default -> p;
+            };
+            case Instruction.IMM -> hex2(string(p, "#$"), low);
+            case Instruction.ZP0 -> hex2(string(hex2(put(p, '$'), low), " = "), cpu.peek(low));
+            case Instruction.ZPX -> indexed8(string(hex2(put(p, '$'), low), ",X @ "), (low + cpu.xRegister) & 0xFF);
+            case Instruction.ZPY -> indexed8(string(hex2(put(p, '$'), low), ",Y @ "), (low + cpu.yRegister) & 0xFF);
+            case Instruction.REL -> hex4(put(p, '$'), (programCounter + 2 + (byte) low) & 0xFFFF);
+            case Instruction.ABS -> operation == Instruction.JMP || operation == Instruction.JSR
+                    ? hex4(put(p, '$'), absolute)
+                    : hex2(string(hex4(put(p, '$'), absolute), " = "), cpu.peek(absolute));
+            case Instruction.ABX -> indexed16(string(hex4(put(p, '$'), absolute), ",X @ "), absolute + cpu.xRegister);
+            case Instruction.ABY -> indexed16(string(hex4(put(p, '$'), absolute), ",Y @ "), absolute + cpu.yRegister);
+            case Instruction.IND -> {
+                // the page wrap bug: ($10FF) reads its high byte from $1000
+                int target = cpu.peek((absolute & 0xFF00) | ((absolute + 1) & 0xFF)) << 8 | cpu.peek(absolute);
+                yield hex4(string(hex4(string(p, "($"), absolute), ") = "), target);
+            }
+            case Instruction.IZX -> {
+                int pointer = (low + cpu.xRegister) & 0xFF;
+                int address = cpu.peek((pointer + 1) & 0xFF) << 8 | cpu.peek(pointer);
+                p = hex2(string(hex2(string(p, "($"), low), ",X) @ "), pointer);
+                yield hex2(string(hex4(string(p, " = "), address), " = "), cpu.peek(address));
+            }
+            case Instruction.IZY -> {
+                int base = cpu.peek((low + 1) & 0xFF) << 8 | cpu.peek(low);
+                int address = (base + cpu.yRegister) & 0xFFFF;
+                p = hex4(string(hex2(string(p, "($"), low), "),Y = "), base);
+                yield hex2(string(hex4(string(p, " @ "), address), " = "), cpu.peek(address));
+            }
+            default -> p;
+        };
+    }
+
+    private int indexed8(int p, int address) {
+        return hex2(string(hex2(p, address), " = "), cpu.peek(address));
+    }
+
+    private int indexed16(int p, int address) {
+        address &= 0xFFFF;
+        return hex2(string(hex4(p, address), " = "), cpu.peek(address));
+    }
+
+    private int put(int p, int b) {
+        line[p] = (byte) b;
+        return p + 1;
+    }
+
+    // Only ever called with literals, charAt on a constant string doesn't allocate
+    private int string(int p, String s) {
+        for (int i = 0; i < s.length(); i++) line[p++] = (byte) s.charAt(i);
+        return p;
+    }
+
+    private int pad(int p, int column) {
+        while (p < column) line[p++] = ' ';
+        return p;
+    }
+
+    private int hex2(int p, int value) {
+        line[p] = HEX[(value >> 4) & 0x0F];
+        line[p + 1] = HEX[value & 0x0F];
+        return p + 2;
+    }
+
+    private int hex4(int p, int value) {
+        return hex2(hex2(p, value >> 8), value);
+    }
+
+    // Right aligned in width columns, wider if it needs to
+    private int decimal(int p, long value, int width) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) digits++;
+        p = pad(p, p + Math.max(width - digits, 0));
+        int end = p + digits;
+        for (int i = end - 1; i >= p; i--) {
+            line[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+}
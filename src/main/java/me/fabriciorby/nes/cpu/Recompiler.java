@@ -0,0 +1,216 @@
+package me.fabriciorby.nes.cpu;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static me.fabriciorby.nes.cpu.Instruction.*;
+
+// Translates hot basic blocks (straight runs of instructions ending on a jump, branch, return or interrupt) into
+// generated classes, so HotSpot compiles them like any other method instead of going through the switch in
+// Cpu.execute() for every instruction.
+// Each instruction becomes direct calls to the same addressing mode and operation methods the interpreter uses,
+// with the opcode, the program counter and any constant operand baked in, so flags, memory accesses and cycle
+// counts are the interpreter's own. Blocks can live in RAM ($0000-$1FFF), cartridge RAM ($6000-$7FFF) or PRG ROM,
+// a write to any page holding translated code drops every block that touches it. When that drops the block being
+// run, it returns right after the store and the interpreter picks up from the new code. A store to $4014 or $4016
+// ends its block too: the OAM DMA stall and the controller strobe have to happen before the next instruction runs.
+public class Recompiler {
+
+    static final int HOT_THRESHOLD = 16;
+    private static final int MAX_INSTRUCTIONS = 64;
+    private static final int NOT_COMPILABLE = -1;
+
+    private final Cpu cpu;
+    private final CompiledBlock[] blocks = new CompiledBlock[0x10000];
+    private final int[] hits = new int[0x10000];
+    private final List<List<Integer>> pageBlocks = new ArrayList<>(256);
+    private int compiledCount;
+    private int running = -1;
+    private boolean runningInvalidated;
+
+    Recompiler(Cpu cpu) {
+        this.cpu = cpu;
+        for (int page = 0; page < 256; page++) {
+            pageBlocks.add(new ArrayList<>());
+        }
+    }
+
+    // Cycles taken by the block at the current program counter, 0 if the interpreter has to run this one
+    int execute() {
+        int pc = cpu.programCounter;
+        CompiledBlock block = blocks[pc];
+        if (block == null) {
+            if (hits[pc] == NOT_COMPILABLE || ++hits[pc] < HOT_THRESHOLD) return 0;
+            block = compile(pc);
+            if (block == null) {
+                hits[pc] = NOT_COMPILABLE;
+                return 0;
+            }
+        }
+        running = pc;
+        runningInvalidated = false;
+        int cycles = block.run(cpu);
+        running = -1;
+        return cycles;
+    }
+
+    public void invalidate(int address) {
+        List<Integer> starts = pageBlocks.get(page(address));
+        if (starts.isEmpty()) return;
+        for (int start : starts) {
+            if (start == running) runningInvalidated = true;
+            if (blocks[start] != null) {
+                blocks[start] = null;
+                compiledCount--;
+            }
+            hits[start] = 0;
+        }
+        starts.clear();
+    }
+
+    public void flush() {
+        Arrays.fill(blocks, null);
+        Arrays.fill(hits, 0);
+        for (List<Integer> starts : pageBlocks) {
+            starts.clear();
+        }
+        compiledCount = 0;
+        runningInvalidated = running >= 0;
+    }
+
+    public int compiledCount() {
+        return compiledCount;
+    }
+
+    boolean isRunningInvalidated() {
+        return runningInvalidated;
+    }
+
+    boolean isCompiled(int address) {
+        return blocks[address] != null;
+    }
+
+    private CompiledBlock compile(int start) {
+        if (!isCodeRegion(start)) return null;
+
+        BlockClassWriter writer = new BlockClassWriter("Block$%04X".formatted(start));
+        writer.op(BlockClassWriter.ICONST_0);
+        writer.op(BlockClassWriter.ISTORE_2);
+
+        List<Integer> pages = new ArrayList<>();
+        int pc = start;
+        int count = 0;
+        boolean endOfBlock = false;
+        while (!endOfBlock && count < MAX_INSTRUCTIONS) {
+            int opcode = cpu.peek(pc);
+            int mode = ADDRESSING_MODES[opcode];
+            int operation = OPERATIONS[opcode];
+            int length = length(mode);
+            if (operation == XXX || !isCodeRegion(pc + length - 1)) break;
+            for (int address = pc; address < pc + length; address++) {
+                if (!pages.contains(page(address))) pages.add(page(address));
+            }
+
+            writer.op(BlockClassWriter.ALOAD_1);
+            writer.pushInt(pc);
+            writer.pushInt(opcode);
+            writer.invokeCpu("enter", "(II)V");
+
+            writer.op(BlockClassWriter.ALOAD_1);
+            switch (mode) {
+                case IMM -> constantOperand(writer, pc + 1, pc + 2);
+                case ZP0 -> constantOperand(writer, cpu.peek(pc + 1), pc + 2);
+                case ABS -> constantOperand(writer, cpu.peek(pc + 2) << 8 | cpu.peek(pc + 1), pc + 3);
+                default -> writer.invokeCpu(LOOKUP[opcode].addressingModeName(), "()I");
+            }
+            writer.op(BlockClassWriter.ALOAD_1);
+            writer.invokeCpu(OPERATION_NAMES[operation], "()I");
+            writer.op(BlockClassWriter.IADD);
+            writer.pushInt(CYCLES[opcode]);
+            writer.op(BlockClassWriter.IADD);
+            writer.op(BlockClassWriter.ILOAD_2);
+            writer.op(BlockClassWriter.IADD);
+            writer.op(BlockClassWriter.ISTORE_2);
+
+            int constantAddress = mode == ABS ? cpu.peek(pc + 2) << 8 | cpu.peek(pc + 1) : -1;
+            endOfBlock = endsBlock(operation) || (mode == ABS && storesToPort(operation, constantAddress));
+            if (!endOfBlock && storesToCode(operation, mode, constantAddress)) {
+                writer.op(BlockClassWriter.ALOAD_1);
+                writer.returnIf("blockInvalidated");
+            }
+            pc += length;
+            count++;
+        }
+        if (count == 0) return null;
+
+        writer.op(BlockClassWriter.ILOAD_2);
+        writer.op(BlockClassWriter.IRETURN);
+
+        CompiledBlock block = define(writer.toByteArray());
+        blocks[start] = block;
+        compiledCount++;
+        for (int page : pages) {
+            pageBlocks.get(page).add(start);
+        }
+        return block;
+    }
+
+    private static void constantOperand(BlockClassWriter writer, int address, int nextProgramCounter) {
+        writer.pushInt(address & 0xFFFF);
+        writer.pushInt(nextProgramCounter & 0xFFFF);
+        writer.invokeCpu("operand", "(II)I");
+    }
+
+    private static CompiledBlock define(byte[] bytes) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (CompiledBlock) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not define compiled block", e);
+        }
+    }
+
+    private static boolean isCodeRegion(int address) {
+        return (address >= 0x0000 && address <= 0x1FFF) || (address >= 0x6000 && address <= 0xFFFF);
+    }
+
+    // RAM is mirrored every 2KB, a write to any mirror has to hit the blocks translated from the others
+    private static int page(int address) {
+        return address <= 0x1FFF ? (address & 0x07FF) >> 8 : address >> 8;
+    }
+
+    private static int length(int mode) {
+        return switch (mode) {
+            case IMP -> 1;
+            case ABS, ABX, ABY, IND -> 3;
+            default -> 2;
+        };
+    }
+
+    private static boolean endsBlock(int operation) {
+        return switch (operation) {
+            case BCC, BCS, BEQ, BMI, BNE, BPL, BVC, BVS, JMP, JSR, RTS, RTI, BRK -> true;
+            default -> false;
+        };
+    }
+
+    // Any store that can land in RAM, cartridge RAM or a mapper register, only absolute stores to the PPU and the
+    // APU/IO registers are known to miss every block
+    private static boolean storesToCode(int operation, int mode, int constantAddress) {
+        boolean stores = switch (operation) {
+            case STA, STX, STY, INC, DEC, PHA, PHP -> true;
+            case ASL, LSR, ROL, ROR -> mode != IMP;
+            default -> false;
+        };
+        return stores && (mode != ABS || isCodeRegion(constantAddress) || constantAddress >= 0x4020);
+    }
+
+    // OAM DMA and the controller strobe, the bus has to see them before the block carries on
+    private static boolean storesToPort(int operation, int address) {
+        return (operation == STA || operation == STX || operation == STY) && (address == 0x4014 || address == 0x4016);
+    }
+
+}
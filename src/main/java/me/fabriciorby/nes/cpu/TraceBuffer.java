@@ -0,0 +1,94 @@
+package me.fabriciorby.nes.cpu;
+
+// Keeps the last N instructions in primitive arrays, recording one never allocates.
+// Entries are indexed from the oldest (0) to the newest (size() - 1).
+public class TraceBuffer implements InstructionHook {
+
+    private final int mask;
+    private final int[] programCounter;
+    private final int[] operationCode;
+    private final int[] accumulator;
+    private final int[] xRegister;
+    private final int[] yRegister;
+    private final int[] stackPointer;
+    private final int[] statusRegister;
+    private final long[] clockCount;
+    private long count;
+
+    public TraceBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.programCounter = new int[capacity];
+        this.operationCode = new int[capacity];
+        this.accumulator = new int[capacity];
+        this.xRegister = new int[capacity];
+        this.yRegister = new int[capacity];
+        this.stackPointer = new int[capacity];
+        this.statusRegister = new int[capacity];
+        this.clockCount = new long[capacity];
+    }
+
+    @Override
+    public void accept(Cpu cpu, int programCounter, int operationCode) {
+        int i = (int) (count++ & mask);
+        this.programCounter[i] = programCounter;
+        this.operationCode[i] = operationCode;
+        this.accumulator[i] = cpu.accumulator;
+        this.xRegister[i] = cpu.xRegister;
+        this.yRegister[i] = cpu.yRegister;
+        this.stackPointer[i] = cpu.stackPointer;
+        this.statusRegister[i] = cpu.statusRegister;
+        this.clockCount[i] = cpu.clockCount;
+    }
+
+    public int size() {
+        return (int) Math.min(count, mask + 1);
+    }
+
+    public long totalCount() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    private int slot(int index) {
+        return (int) ((count - size() + index) & mask);
+    }
+
+    public int programCounter(int index) {
+        return programCounter[slot(index)];
+    }
+
+    public int operationCode(int index) {
+        return operationCode[slot(index)];
+    }
+
+    public int accumulator(int index) {
+        return accumulator[slot(index)];
+    }
+
+    public int xRegister(int index) {
+        return xRegister[slot(index)];
+    }
+
+    public int yRegister(int index) {
+        return yRegister[slot(index)];
+    }
+
+    public int stackPointer(int index) {
+        return stackPointer[slot(index)];
+    }
+
+    public int statusRegister(int index) {
+        return statusRegister[slot(index)];
+    }
+
+    public long clockCount(int index) {
+        return clockCount[slot(index)];
+    }
+
+}
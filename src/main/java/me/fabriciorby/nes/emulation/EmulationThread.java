@@ -0,0 +1,93 @@
+package me.fabriciorby.nes.emulation;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Runs one emulated frame per FramePacer tick on its own thread, so the UI thread's layout and GC hiccups don't
+// stall the machine and the machine doesn't stall the UI. Only this thread touches the Bus: anyone else hands it
+// a task with submit(), run between two frames, paused or not. A frame or task that throws pauses the machine and
+// goes to onError, on this thread, for the UI to show.
+public final class EmulationThread {
+
+    private final FramePacer pacer;
+    private final Runnable frame;
+    private final Consumer<RuntimeException> onError;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    public EmulationThread(FramePacer pacer, Runnable frame, Consumer<RuntimeException> onError) {
+        this.pacer = pacer;
+        this.frame = frame;
+        this.onError = onError;
+        this.thread = Thread.ofPlatform().name("emulation").daemon().unstarted(this::loop);
+        this.thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        stopped = true;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    public void submit(Runnable task) {
+        tasks.add(task);
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+        LockSupport.unpark(thread);
+    }
+
+    public FramePacer getPacer() {
+        return pacer;
+    }
+
+    private void loop() {
+        boolean paused = true;
+        while (!stopped) {
+            runTasks();
+            if (!running) {
+                paused = true;
+                LockSupport.park(this);
+                continue;
+            }
+            if (paused) {
+                paused = false;
+                pacer.restart();
+            }
+            pacer.await();
+            runTasks();
+            run(frame);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            run(task);
+        }
+    }
+
+    // A frame or a task that blows up pauses the machine instead of killing the thread
+    private void run(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (RuntimeException e) {
+            running = false;
+            onError.accept(e);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package me.fabriciorby.nes.emulation;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Wakes the emulation up once per frame on a fixed nanosecond schedule. Sleeping alone overshoots by whatever the
+// OS timer feels like (often a millisecond or more), spinning alone burns a core, so it sleeps until SPIN_NANOS before
+// the deadline and spins the rest. Deadlines advance by exactly one period, so the rate doesn't drift with the
+// time the frames take, and after falling behind by more than a few frames it starts over instead of
+// running the backlog as a burst.
+public class FramePacer {
+
+    // 1.789773 MHz / 29780.5 CPU cycles per frame
+    public static final double NTSC_FPS = 60.0988;
+
+    private static final long SPIN_NANOS = 1_000_000;
+    private static final int MAX_BEHIND = 4;
+
+    // Lateness is how long after its deadline a frame got to start, an overrun is a frame whose deadline had already
+    // passed when it started waiting: the previous frame took too long.
+    public record Stats(long frames, double fps, double meanLatenessMicros, double stdDevLatenessMicros,
+                        double maxLatenessMicros, long overruns) {
+        @Override
+        public String toString() {
+            return "%.3f fps, lateness %.1f ± %.1f µs (max %.1f), %d overruns in %d frames"
+                    .formatted(fps, meanLatenessMicros, stdDevLatenessMicros, maxLatenessMicros, overruns, frames);
+        }
+    }
+
+    private final long period;
+    private long deadline;
+
+    private long start;
+    private long frames;
+    private double latenessSum;
+    private double latenessSquares;
+    private long maxLateness;
+    private long overruns;
+    private volatile Stats stats = new Stats(0, 0, 0, 0, 0, 0);
+
+    public FramePacer(double fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("Can't pace " + fps + " frames per second");
+        }
+        this.period = Math.round(1_000_000_000.0 / fps);
+        restart();
+    }
+
+    // The next frame is one period from now, after a pause for example
+    public final void restart() {
+        deadline = System.nanoTime() + period;
+        start = deadline - period;
+        frames = 0;
+        latenessSum = 0;
+        latenessSquares = 0;
+        maxLateness = 0;
+        overruns = 0;
+    }
+
+    // Blocks until the next frame is due
+    public void await() {
+        long now = System.nanoTime();
+        if (now >= deadline) overruns++;
+        while (deadline - now > SPIN_NANOS) {
+            LockSupport.parkNanos(deadline - now - SPIN_NANOS);
+            now = System.nanoTime();
+        }
+        while (now < deadline) {
+            Thread.onSpinWait();
+            now = System.nanoTime();
+        }
+
+        long lateness = now - deadline;
+        frames++;
+        latenessSum += lateness;
+        latenessSquares += (double) lateness * lateness;
+        maxLateness = Math.max(maxLateness, lateness);
+        double mean = latenessSum / frames;
+        double variance = Math.max(0, latenessSquares / frames - mean * mean);
+        stats = new Stats(frames, frames * 1_000_000_000.0 / (now - start), mean / 1000, Math.sqrt(variance) / 1000,
+                maxLateness / 1000.0, overruns);
+
+        deadline += period;
+        if (now - deadline > MAX_BEHIND * period) {
+            deadline = now + period;
+        }
+    }
+
+    // Since the last restart, safe to read from any thread
+    public Stats getStats() {
+        return stats;
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+}
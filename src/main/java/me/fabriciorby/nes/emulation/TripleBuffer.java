@@ -0,0 +1,46 @@
+package me.fabriciorby.nes.emulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Hands finished frames from one producer thread to one consumer thread without locks or copies between them.
+// The producer draws into back(), publish() swaps it with the middle slot; the consumer's update() swaps the middle
+// with its front() if something new was published. Neither side ever waits, the producer just overwrites frames
+// the consumer was too slow to pick up. The middle slot index and a fresh bit share one atomic int.
+public class TripleBuffer<T> {
+
+    private static final int FRESH = 0x4;
+    private static final int INDEX = 0x3;
+
+    private final Object[] slots;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    public TripleBuffer(Supplier<T> slot) {
+        this.slots = new Object[]{slot.get(), slot.get(), slot.get()};
+    }
+
+    // Producer side
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // Consumer side: true if front() is now a newer frame
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) return false;
+        front = middle.getAndSet(front) & INDEX;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) slots[front];
+    }
+
+}
@@ -0,0 +1,51 @@
+package me.fabriciorby.nes.headless;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.ppu.Ppu;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Usage: HeadlessMain [--threads N] [--mode dot|instruction|recompiled] [--renderer dot|scanline] [--frames N] [--input script.txt] [--movie run.movie] rom.nes [rom.nes ...]
+// --frames, --input and --movie apply to every rom that comes after them, so each rom can have its own settings:
+//   HeadlessMain --frames 3600 smb.nes zelda.nes --frames 600 --input start.txt nestest.nes
+public class HeadlessMain {
+
+    private static final int DEFAULT_FRAMES = 600;
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Bus.Mode mode = Bus.Mode.INSTRUCTION;
+        Ppu.Renderer renderer = Ppu.Renderer.SCANLINE;
+        int frames = DEFAULT_FRAMES;
+        InputScript input = InputScript.NONE;
+        Path movie = null;
+        List<HeadlessRunner.Job> jobs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--mode" -> mode = Bus.Mode.valueOf(args[++i].toUpperCase());
+                case "--renderer" -> renderer = Ppu.Renderer.valueOf(args[++i].toUpperCase());
+                case "--frames" -> frames = Integer.parseInt(args[++i]);
+                case "--input" -> input = InputScript.load(Path.of(args[++i]));
+                case "--movie" -> movie = Path.of(args[++i]);
+                default -> jobs.add(new HeadlessRunner.Job(args[i], frames, input, movie));
+            }
+        }
+
+        if (jobs.isEmpty()) {
+            System.err.println("Usage: HeadlessMain [--threads N] [--mode dot|instruction|recompiled] [--renderer dot|scanline] [--frames N] [--input script.txt] [--movie run.movie] rom.nes [rom.nes ...]");
+            System.exit(1);
+        }
+
+        HeadlessRunner.Report report = new HeadlessRunner(threads, mode, renderer).run(jobs);
+        for (HeadlessRunner.Result result : report.results()) {
+            System.out.printf("%-40s %8d frames %10.2f fps%n", result.job().rom(), result.job().frames(), result.fps());
+        }
+        System.out.printf("%-40s %8d frames %10.2f fps (%d threads, %.2fs)%n",
+                "TOTAL", report.frames(), report.fps(), threads, report.nanos() / 1_000_000_000.0);
+    }
+
+}
@@ -0,0 +1,133 @@
+package me.fabriciorby.nes.headless;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import me.fabriciorby.nes.ppu.Ppu;
+import me.fabriciorby.nes.state.Movie;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class HeadlessRunner {
+
+    // With a movie the job starts from the movie's first keyframe and takes its input, the script only covers
+    // whatever frames are left after the movie ends
+    public record Job(String rom, int frames, InputScript input, Path movie) {
+        public Job(String rom, int frames) {
+            this(rom, frames, InputScript.NONE);
+        }
+
+        public Job(String rom, int frames, InputScript input) {
+            this(rom, frames, input, null);
+        }
+    }
+
+    public record Result(Job job, long nanos) {
+        public double fps() {
+            return job.frames() * 1_000_000_000.0 / nanos;
+        }
+    }
+
+    public record Report(List<Result> results, long nanos) {
+        public long frames() {
+            return results.stream().mapToLong(result -> result.job().frames()).sum();
+        }
+
+        public double fps() {
+            return frames() * 1_000_000_000.0 / nanos;
+        }
+    }
+
+    // Called after every frame with how many have run so far, on whichever thread runs the job
+    public interface FrameListener {
+        FrameListener NONE = (frame, nes) -> {};
+
+        void frame(int frame, Bus nes);
+    }
+
+    private final int parallelism;
+    private final Bus.Mode mode;
+    private final Ppu.Renderer renderer;
+
+    public HeadlessRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public HeadlessRunner(int parallelism) {
+        this(parallelism, Bus.Mode.INSTRUCTION);
+    }
+
+    public HeadlessRunner(int parallelism, Bus.Mode mode) {
+        this(parallelism, mode, Ppu.Renderer.SCANLINE);
+    }
+
+    public HeadlessRunner(int parallelism, Bus.Mode mode, Ppu.Renderer renderer) {
+        this.parallelism = parallelism;
+        this.mode = mode;
+        this.renderer = renderer;
+    }
+
+    // Every job gets its own Bus + Cartridge, nothing is shared between them so they can run on any core
+    public Report run(List<Job> jobs) {
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            long start = System.nanoTime();
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(pool.submit(() -> run(job, mode, renderer)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return new Report(results, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running " + jobs.size() + " jobs", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Headless job failed", e.getCause());
+        }
+    }
+
+    public static Result run(Job job, Bus.Mode mode, Ppu.Renderer renderer) {
+        return run(job, mode, renderer, FrameListener.NONE);
+    }
+
+    public static Result run(Job job, Bus.Mode mode, Ppu.Renderer renderer, FrameListener listener) {
+        Bus nes = new Bus();
+        nes.setMode(mode);
+        nes.ppu.setRenderer(renderer);
+        nes.insert(new Cartridge(job.rom()));
+        nes.reset();
+
+        Movie movie = job.movie() == null ? null : readMovie(job.movie());
+        if (movie != null) movie.seek(nes, 0);
+
+        InputScript input = job.input();
+        int inputIndex = -1;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < job.frames(); frame++) {
+            if (movie == null || !movie.play(nes)) {
+                inputIndex = input.advance(inputIndex, frame);
+                nes.controller[0] = input.player1(inputIndex);
+                nes.controller[1] = input.player2(inputIndex);
+            }
+            nes.frame();
+            listener.frame(frame + 1, nes);
+        }
+        return new Result(job, System.nanoTime() - start);
+    }
+
+    private static Movie readMovie(Path path) {
+        try {
+            return Movie.read(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid movie: " + path, e);
+        }
+    }
+
+}
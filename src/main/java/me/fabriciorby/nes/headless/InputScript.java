@@ -0,0 +1,80 @@
+package me.fabriciorby.nes.headless;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// One line per change: "<frame> <player1 hex> [<player2 hex>]", the buttons are held until the next line.
+// Bits follow Controller.Key (RIGHT = 01 ... B = 80), anything after a '#' is ignored.
+//  0    00
+//  120  10      # press START
+//  124  00
+public class InputScript {
+
+    public static final InputScript NONE = new InputScript(new int[0], new byte[0], new byte[0]);
+
+    private final int[] frames;
+    private final byte[] player1;
+    private final byte[] player2;
+
+    private InputScript(int[] frames, byte[] player1, byte[] player2) {
+        this.frames = frames;
+        this.player1 = player1;
+        this.player2 = player2;
+    }
+
+    public static InputScript load(Path path) {
+        try {
+            return parse(Files.readAllLines(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid input script: " + path, e);
+        }
+    }
+
+    public static InputScript parse(List<String> lines) {
+        List<int[]> entries = new ArrayList<>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).strip();
+            if (content.isEmpty()) continue;
+            String[] columns = content.split("\\s+");
+            int frame = Integer.parseInt(columns[0]);
+            int p1 = columns.length > 1 ? HexFormat.fromHexDigits(columns[1]) : 0;
+            int p2 = columns.length > 2 ? HexFormat.fromHexDigits(columns[2]) : 0;
+            if (!entries.isEmpty() && entries.getLast()[0] >= frame) {
+                throw new IllegalArgumentException("Input script frames must be increasing: " + line);
+            }
+            entries.add(new int[]{frame, p1, p2});
+        }
+        int[] frames = new int[entries.size()];
+        byte[] player1 = new byte[entries.size()];
+        byte[] player2 = new byte[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            frames[i] = entries.get(i)[0];
+            player1[i] = (byte) entries.get(i)[1];
+            player2[i] = (byte) entries.get(i)[2];
+        }
+        return new InputScript(frames, player1, player2);
+    }
+
+    // Index of the entry active at the given frame, -1 before the first one.
+    // Callers going frame by frame pass the previous index back so this stays O(1).
+    public int advance(int index, int frame) {
+        while (index + 1 < frames.length && frames[index + 1] <= frame) {
+            index++;
+        }
+        return index;
+    }
+
+    public byte player1(int index) {
+        return index < 0 ? 0 : player1[index];
+    }
+
+    public byte player2(int index) {
+        return index < 0 ? 0 : player2[index];
+    }
+
+}
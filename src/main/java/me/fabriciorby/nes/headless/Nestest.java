@@ -0,0 +1,91 @@
+package me.fabriciorby.nes.headless;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import me.fabriciorby.nes.cpu.NestestLog;
+import me.fabriciorby.nes.ppu.Ppu;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Usage: Nestest [--golden nestest.log] [--out trace.log] nestest.nes
+// Runs nestest in automation mode: straight from $C000 with the registers nestest.log starts with, no PPU and no
+// controller involved, until the log is as long as the golden one (or nestest.log's 8991 lines without one).
+// The trace goes to --out, every line is checked against --golden as it's written and the first one that differs
+// ends the run. Exits with 1 on a divergence, so it can gate a CPU change.
+public class Nestest {
+
+    public static final int LINES = 8991;
+    private static final int START = 0xC000;
+
+    // official and unofficial are what nestest left at $02 and $03, 0 when every test it ran passed
+    public record Result(int lines, NestestLog.Divergence divergence, int official, int unofficial, long nanos) {
+        public boolean passed() {
+            return divergence == null;
+        }
+    }
+
+    public static Result run(String rom, byte[] golden, OutputStream out) {
+        Bus nes = new Bus();
+        nes.setMode(Bus.Mode.INSTRUCTION);
+        nes.ppu.setRenderer(Ppu.Renderer.SCANLINE);
+        nes.insert(new Cartridge(rom));
+        nes.reset();
+        nes.cpu.skipCycles(nes.cpu.getCycles());
+        nes.cpu.programCounter = START;
+        nes.cpu.statusRegister = 0x24;
+        nes.cpu.clockCount = 7;
+
+        NestestLog log = new NestestLog(out);
+        if (golden != null) log.setGolden(golden);
+        nes.cpu.setHook(log);
+        long start = System.nanoTime();
+        while (!log.done() && log.lines() < LINES) {
+            nes.step();
+        }
+        long nanos = System.nanoTime() - start;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Result(log.lines(), log.divergence(), nes.cpuRam[0x02], nes.cpuRam[0x03], nanos);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path golden = null;
+        Path trace = null;
+        String rom = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--golden" -> golden = Path.of(args[++i]);
+                case "--out" -> trace = Path.of(args[++i]);
+                default -> rom = args[i];
+            }
+        }
+        if (rom == null) {
+            System.err.println("Usage: Nestest [--golden nestest.log] [--out trace.log] nestest.nes");
+            System.exit(1);
+        }
+
+        byte[] expected = golden == null ? null : Files.readAllBytes(golden);
+        Result result;
+        try (OutputStream out = trace == null
+                ? OutputStream.nullOutputStream()
+                : new BufferedOutputStream(Files.newOutputStream(trace), 1 << 16)) {
+            result = run(rom, expected, out);
+        }
+
+        System.out.printf("%d lines in %.1fms, $02=%02X $03=%02X%n",
+                result.lines(), result.nanos() / 1_000_000.0, result.official(), result.unofficial());
+        if (!result.passed()) {
+            System.out.println("Diverged at " + result.divergence());
+            System.exit(1);
+        }
+    }
+
+}
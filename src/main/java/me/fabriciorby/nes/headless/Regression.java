@@ -0,0 +1,219 @@
+package me.fabriciorby.nes.headless;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.ppu.Ppu;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Usage: Regression [--threads N] [--mode dot|instruction|recompiled] [--renderer dot|scanline] [--frames N] [--interval K] [--update] roms/
+// Runs every .nes in the directory for the same number of frames, in parallel, and every K frames takes a CRC32 of
+// the screen and one of cpuRam. Those go to a baseline next to the rom (smb.nes -> smb.hashes) the first time, or
+// with --update, and are compared with it every time after. A rom plays smb.movie or smb.txt (an InputScript) if
+// there is one next to it. The report points at the first sample that differs and which of the two hashes did,
+// the change happened somewhere in the K frames before it. Exits with 1 if any rom failed.
+// Baseline file: "<frame> <screen crc> <ram crc>" per sample, anything after a '#' is ignored.
+public class Regression {
+
+    private static final int DEFAULT_FRAMES = 600;
+    private static final int DEFAULT_INTERVAL = 30;
+
+    public enum Status { PASS, FAIL, NEW }
+
+    public record Sample(int frame, int screen, int ram) {
+        @Override
+        public String toString() {
+            return "%d %08X %08X".formatted(frame, screen, ram);
+        }
+    }
+
+    // expected and actual are the first samples that differ, null unless the rom failed
+    public record Outcome(HeadlessRunner.Job job, Status status, int samples, int mismatches,
+                          Sample expected, Sample actual) {
+        @Override
+        public String toString() {
+            String rom = Path.of(job.rom()).getFileName().toString();
+            return switch (status) {
+                case PASS -> "%-32s PASS %d samples".formatted(rom, samples);
+                case NEW -> "%-32s NEW  %d samples written".formatted(rom, samples);
+                case FAIL -> "%-32s FAIL %d of %d samples differ, first at frame %d (%s)%n%32s   expected %s%n%32s   actual   %s"
+                        .formatted(rom, mismatches, samples, firstFrame(), differs(), "", expected, "", actual);
+            };
+        }
+
+        // -1 stands for a sample one side doesn't have
+        public int firstFrame() {
+            return actual.frame() >= 0 ? actual.frame() : expected.frame();
+        }
+
+        private String differs() {
+            if (expected.frame() != actual.frame()) return "baseline sampled other frames, --update it";
+            if (expected.screen() != actual.screen() && expected.ram() != actual.ram()) return "screen and ram";
+            return expected.screen() != actual.screen() ? "screen" : "ram";
+        }
+    }
+
+    private final int parallelism;
+    private final Bus.Mode mode;
+    private final Ppu.Renderer renderer;
+    private final int interval;
+    private final boolean update;
+
+    public Regression(int parallelism, Bus.Mode mode, Ppu.Renderer renderer, int interval, boolean update) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval has to be at least 1 frame");
+        }
+        this.parallelism = parallelism;
+        this.mode = mode;
+        this.renderer = renderer;
+        this.interval = interval;
+        this.update = update;
+    }
+
+    // Every .nes in the directory, sorted, with its movie or input script if it has one
+    public static List<HeadlessRunner.Job> jobs(Path directory, int frames) throws IOException {
+        List<HeadlessRunner.Job> jobs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path rom : files.filter(file -> file.toString().endsWith(".nes")).sorted().toList()) {
+                Path movie = sibling(rom, ".movie");
+                Path script = sibling(rom, ".txt");
+                InputScript input = Files.exists(script) ? InputScript.load(script) : InputScript.NONE;
+                jobs.add(new HeadlessRunner.Job(rom.toString(), frames, input, Files.exists(movie) ? movie : null));
+            }
+        }
+        return jobs;
+    }
+
+    public List<Outcome> run(List<HeadlessRunner.Job> jobs) {
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (HeadlessRunner.Job job : jobs) {
+                futures.add(pool.submit(() -> check(job)));
+            }
+            List<Outcome> outcomes = new ArrayList<>();
+            for (Future<Outcome> future : futures) {
+                outcomes.add(future.get());
+            }
+            return outcomes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running " + jobs.size() + " roms", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Regression job failed", e.getCause());
+        }
+    }
+
+    private Outcome check(HeadlessRunner.Job job) throws IOException {
+        List<Sample> actual = sample(job);
+        Path baseline = sibling(Path.of(job.rom()), ".hashes");
+        if (update || !Files.exists(baseline)) {
+            write(baseline, job, actual);
+            return new Outcome(job, Status.NEW, actual.size(), 0, null, null);
+        }
+
+        List<Sample> expected = read(baseline);
+        int mismatches = 0;
+        int first = -1;
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            if (i < expected.size() && i < actual.size() && expected.get(i).equals(actual.get(i))) continue;
+            mismatches++;
+            if (first < 0) first = i;
+        }
+        if (first < 0) return new Outcome(job, Status.PASS, actual.size(), 0, null, null);
+        Sample missing = new Sample(-1, 0, 0);
+        return new Outcome(job, Status.FAIL, actual.size(), mismatches,
+                first < expected.size() ? expected.get(first) : missing,
+                first < actual.size() ? actual.get(first) : missing);
+    }
+
+    private List<Sample> sample(HeadlessRunner.Job job) {
+        List<Sample> samples = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        byte[] ram = new byte[2048];
+        HeadlessRunner.run(job, mode, renderer, (frame, nes) -> {
+            if (frame % interval != 0) return;
+            crc.reset();
+            crc.update(nes.ppu.getScreen().getIndices());
+            int screen = (int) crc.getValue();
+            for (int i = 0; i < ram.length; i++) ram[i] = (byte) nes.cpuRam[i];
+            crc.reset();
+            crc.update(ram);
+            samples.add(new Sample(frame, screen, (int) crc.getValue()));
+        });
+        return samples;
+    }
+
+    private void write(Path baseline, HeadlessRunner.Job job, List<Sample> samples) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# %s, %d frames every %d, %s %s".formatted(
+                Path.of(job.rom()).getFileName(), job.frames(), interval, mode, renderer));
+        for (Sample sample : samples) lines.add(sample.toString());
+        Files.write(baseline, lines);
+    }
+
+    private static List<Sample> read(Path baseline) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        for (String line : Files.readAllLines(baseline)) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).strip();
+            if (content.isEmpty()) continue;
+            String[] columns = content.split("\\s+");
+            if (columns.length != 3) {
+                throw new IllegalArgumentException("Invalid baseline line in " + baseline + ": " + line);
+            }
+            samples.add(new Sample(Integer.parseInt(columns[0]),
+                    HexFormat.fromHexDigits(columns[1]), HexFormat.fromHexDigits(columns[2])));
+        }
+        return samples;
+    }
+
+    private static Path sibling(Path rom, String extension) {
+        String name = rom.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return rom.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Bus.Mode mode = Bus.Mode.INSTRUCTION;
+        Ppu.Renderer renderer = Ppu.Renderer.SCANLINE;
+        int frames = DEFAULT_FRAMES;
+        int interval = DEFAULT_INTERVAL;
+        boolean update = false;
+        Path directory = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--mode" -> mode = Bus.Mode.valueOf(args[++i].toUpperCase());
+                case "--renderer" -> renderer = Ppu.Renderer.valueOf(args[++i].toUpperCase());
+                case "--frames" -> frames = Integer.parseInt(args[++i]);
+                case "--interval" -> interval = Integer.parseInt(args[++i]);
+                case "--update" -> update = true;
+                default -> directory = Path.of(args[i]);
+            }
+        }
+        if (directory == null) {
+            System.err.println("Usage: Regression [--threads N] [--mode dot|instruction|recompiled] [--renderer dot|scanline] [--frames N] [--interval K] [--update] roms/");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        List<Outcome> outcomes = new Regression(threads, mode, renderer, interval, update).run(jobs(directory, frames));
+        outcomes.forEach(System.out::println);
+        long failed = outcomes.stream().filter(outcome -> outcome.status() == Status.FAIL).count();
+        System.out.printf("%d roms, %d failed (%d threads, %.2fs)%n",
+                outcomes.size(), failed, threads, (System.nanoTime() - start) / 1_000_000_000.0);
+        if (failed > 0) System.exit(1);
+    }
+
+}
@@ -1,19 +1,99 @@
 package me.fabriciorby.nes.mapper;
 
+import me.fabriciorby.nes.cartridge.Cartridge;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// A mapper only decides which bank shows up in each window of the address space. Bank switches recompute the
+// offsets below, so reading through a window is just a shift and an add:
+//   PRG, four 8KB windows from $8000: PRG[prgOffsets[(address >> 13) & 0x03] + (address & 0x1FFF)]
+//   CHR, eight 1KB windows from $0000: CHR[chrOffsets[address >> 10] + (address & 0x03FF)]
 public abstract class Mapper {
 
     int PRGBanks;
     int CHRBanks;
 
+    public final int[] prgOffsets = new int[4];
+    public final int[] chrOffsets = new int[8];
+
+    // null while the board keeps the mirroring the header says it's soldered with
+    Cartridge.Mirror mirror;
+
+    private Runnable bankListener = () -> {};
+    private final int[] announcedPrgOffsets = new int[4];
+    private final int[] announcedChrOffsets = new int[8];
+    private Cartridge.Mirror announcedMirror;
+
     public Mapper(int PRGBanks, int CHRBanks) {
         this.PRGBanks = PRGBanks;
         this.CHRBanks = CHRBanks;
     }
 
-    public abstract int cpuMapRead(int address);
-    public abstract int cpuMapWrite(int address);
-    public abstract int ppuMapRead(int address);
-    public abstract int ppuMapWrite(int address);
+    // Writes to $8000-$FFFF, where the boards keep their bank registers
+    public abstract void cpuWrite(int address, int data);
     public abstract void reset();
 
+    // The windows and the mirroring, boards with registers of their own add them
+    public void saveState(ByteBuffer buffer) {
+        for (int offset : prgOffsets) buffer.putInt(offset);
+        for (int offset : chrOffsets) buffer.putInt(offset);
+        buffer.put((byte) (mirror == null ? -1 : mirror.ordinal()));
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        for (int i = 0; i < prgOffsets.length; i++) prgOffsets[i] = buffer.getInt();
+        for (int i = 0; i < chrOffsets.length; i++) chrOffsets[i] = buffer.getInt();
+        int mirror = buffer.get();
+        this.mirror = mirror < 0 ? null : Cartridge.Mirror.values()[mirror];
+    }
+
+    public Cartridge.Mirror getMirror() {
+        return mirror;
+    }
+
+    // Run after every bank switch, whoever caches what the windows point at has to refresh it
+    public void setBankListener(Runnable bankListener) {
+        this.bankListener = bankListener;
+    }
+
+    // Games rewrite the bank they already have all the time, the listener only hears about windows or mirroring
+    // that really moved. True if it did.
+    public boolean banksChanged() {
+        if (Arrays.equals(prgOffsets, announcedPrgOffsets) && Arrays.equals(chrOffsets, announcedChrOffsets)
+                && mirror == announcedMirror) {
+            return false;
+        }
+        System.arraycopy(prgOffsets, 0, announcedPrgOffsets, 0, prgOffsets.length);
+        System.arraycopy(chrOffsets, 0, announcedChrOffsets, 0, chrOffsets.length);
+        announcedMirror = mirror;
+        bankListener.run();
+        return true;
+    }
+
+    // window 0 is $8000, window 1 is $C000
+    void prg16k(int window, int bank) {
+        bank %= PRGBanks;
+        prgOffsets[window * 2] = bank * 0x4000;
+        prgOffsets[window * 2 + 1] = bank * 0x4000 + 0x2000;
+    }
+
+    void prg32k(int bank) {
+        prg16k(0, bank * 2);
+        prg16k(1, bank * 2 + 1);
+    }
+
+    // window 0 is $0000, window 1 is $1000. Boards without CHR ROM have 8KB of CHR RAM.
+    void chr4k(int window, int bank) {
+        bank %= Math.max(CHRBanks, 1) * 2;
+        for (int i = 0; i < 4; i++) {
+            chrOffsets[window * 4 + i] = bank * 0x1000 + i * 0x0400;
+        }
+    }
+
+    void chr8k(int bank) {
+        chr4k(0, bank * 2);
+        chr4k(1, bank * 2 + 1);
+    }
+
 }
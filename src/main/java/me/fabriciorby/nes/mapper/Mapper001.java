@@ -0,0 +1,98 @@
+package me.fabriciorby.nes.mapper;
+
+import me.fabriciorby.nes.cartridge.Cartridge;
+
+import java.nio.ByteBuffer;
+
+// MMC1: registers are loaded one bit at a time through a 5 bit shift register
+// https://www.nesdev.org/wiki/MMC1
+public final class Mapper001 extends Mapper {
+
+    private int shift;
+    private int control;
+    private int chrBank0;
+    private int chrBank1;
+    private int prgBank;
+
+    public Mapper001(int PRGBanks, int CHRBanks) {
+        super(PRGBanks, CHRBanks);
+        reset();
+    }
+
+    @Override
+    public void cpuWrite(int address, int data) {
+        if ((data & 0x80) != 0) {
+            shift = 0x10;
+            control |= 0x0C;
+            updateBanks();
+            return;
+        }
+        boolean full = (shift & 0x01) != 0;
+        shift = (shift >> 1) | ((data & 0x01) << 4);
+        if (!full) return;
+
+        switch ((address >> 13) & 0x03) {
+            case 0 -> control = shift;
+            case 1 -> chrBank0 = shift;
+            case 2 -> chrBank1 = shift;
+            case 3 -> prgBank = shift & 0x0F;
+        }
+        shift = 0x10;
+        updateBanks();
+    }
+
+    private void updateBanks() {
+        mirror = switch (control & 0x03) {
+            case 0 -> Cartridge.Mirror.ONESCREEN_LO;
+            case 1 -> Cartridge.Mirror.ONESCREEN_HI;
+            case 2 -> Cartridge.Mirror.VERTICAL;
+            default -> Cartridge.Mirror.HORIZONTAL;
+        };
+
+        switch ((control >> 2) & 0x03) {
+            case 0, 1 -> prg32k(prgBank >> 1);
+            case 2 -> {
+                prg16k(0, 0);
+                prg16k(1, prgBank);
+            }
+            case 3 -> {
+                prg16k(0, prgBank);
+                prg16k(1, PRGBanks - 1);
+            }
+        }
+
+        if ((control & 0x10) != 0) {
+            chr4k(0, chrBank0);
+            chr4k(1, chrBank1);
+        } else {
+            chr8k(chrBank0 >> 1);
+        }
+        banksChanged();
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        buffer.put((byte) shift).put((byte) control).put((byte) chrBank0).put((byte) chrBank1).put((byte) prgBank);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        shift = buffer.get() & 0xFF;
+        control = buffer.get() & 0xFF;
+        chrBank0 = buffer.get() & 0xFF;
+        chrBank1 = buffer.get() & 0xFF;
+        prgBank = buffer.get() & 0xFF;
+    }
+
+    @Override
+    public void reset() {
+        shift = 0x10;
+        control = 0x0C;
+        chrBank0 = 0;
+        chrBank1 = 0;
+        prgBank = 0;
+        updateBanks();
+    }
+}
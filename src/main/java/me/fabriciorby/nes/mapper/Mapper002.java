@@ -0,0 +1,24 @@
+package me.fabriciorby.nes.mapper;
+
+// UxROM: switchable 16KB at $8000, the last bank fixed at $C000, CHR RAM
+public final class Mapper002 extends Mapper {
+
+    public Mapper002(int PRGBanks, int CHRBanks) {
+        super(PRGBanks, CHRBanks);
+        reset();
+    }
+
+    @Override
+    public void cpuWrite(int address, int data) {
+        prg16k(0, data & 0x0F);
+        banksChanged();
+    }
+
+    @Override
+    public void reset() {
+        prg16k(0, 0);
+        prg16k(1, PRGBanks - 1);
+        chr8k(0);
+        banksChanged();
+    }
+}
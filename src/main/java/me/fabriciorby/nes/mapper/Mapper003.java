@@ -0,0 +1,24 @@
+package me.fabriciorby.nes.mapper;
+
+// CNROM: PRG laid out like NROM, switchable 8KB of CHR ROM
+public final class Mapper003 extends Mapper {
+
+    public Mapper003(int PRGBanks, int CHRBanks) {
+        super(PRGBanks, CHRBanks);
+        reset();
+    }
+
+    @Override
+    public void cpuWrite(int address, int data) {
+        chr8k(data & 0x03);
+        banksChanged();
+    }
+
+    @Override
+    public void reset() {
+        prg16k(0, 0);
+        prg16k(1, PRGBanks - 1);
+        chr8k(0);
+        banksChanged();
+    }
+}
@@ -0,0 +1,27 @@
+package me.fabriciorby.nes.mapper;
+
+import me.fabriciorby.nes.cartridge.Cartridge;
+
+// AxROM: switchable 32KB of PRG, one screen mirroring picked by bit 4, CHR RAM
+public final class Mapper007 extends Mapper {
+
+    public Mapper007(int PRGBanks, int CHRBanks) {
+        super(PRGBanks, CHRBanks);
+        reset();
+    }
+
+    @Override
+    public void cpuWrite(int address, int data) {
+        prg32k(data & 0x07);
+        mirror = (data & 0x10) != 0 ? Cartridge.Mirror.ONESCREEN_HI : Cartridge.Mirror.ONESCREEN_LO;
+        banksChanged();
+    }
+
+    @Override
+    public void reset() {
+        prg32k(0);
+        chr8k(0);
+        mirror = Cartridge.Mirror.ONESCREEN_LO;
+        banksChanged();
+    }
+}
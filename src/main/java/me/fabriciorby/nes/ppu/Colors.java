@@ -1,81 +1,107 @@
 package me.fabriciorby.nes.ppu;
 
-import javafx.scene.paint.Color;
-
 public class Colors {
 
-    public static Color[] getColors() {
-        return new Color[] {
+    public static int[] getColors() {
+        return new int[] {
 
-                Color.rgb(84, 84, 84),
-                Color.rgb(0, 30, 116),
-                Color.rgb(8, 16, 144),
-                Color.rgb(48, 0, 136),
-                Color.rgb(68, 0, 100),
-                Color.rgb(92, 0, 48),
-                Color.rgb(84, 4, 0),
-                Color.rgb(60, 24, 0),
-                Color.rgb(32, 42, 0),
-                Color.rgb(8, 58, 0),
-                Color.rgb(0, 64, 0),
-                Color.rgb(0, 60, 0),
-                Color.rgb(0, 50, 60),
-                Color.rgb(0, 0, 0),
-                Color.rgb(0, 0, 0),
-                Color.rgb(0, 0, 0),
+                rgb(84, 84, 84),
+                rgb(0, 30, 116),
+                rgb(8, 16, 144),
+                rgb(48, 0, 136),
+                rgb(68, 0, 100),
+                rgb(92, 0, 48),
+                rgb(84, 4, 0),
+                rgb(60, 24, 0),
+                rgb(32, 42, 0),
+                rgb(8, 58, 0),
+                rgb(0, 64, 0),
+                rgb(0, 60, 0),
+                rgb(0, 50, 60),
+                rgb(0, 0, 0),
+                rgb(0, 0, 0),
+                rgb(0, 0, 0),
 
-                Color.rgb(152, 150, 152),
-                Color.rgb(8, 76, 196),
-                Color.rgb(48, 50, 236),
-                Color.rgb(92, 30, 228),
-                Color.rgb(136, 20, 176),
-                Color.rgb(160, 20, 100),
-                Color.rgb(152, 34, 32),
-                Color.rgb(120, 60, 0),
-                Color.rgb(84, 90, 0),
-                Color.rgb(40, 114, 0),
-                Color.rgb(8, 124, 0),
-                Color.rgb(0, 118, 40),
-                Color.rgb(0, 102, 120),
-                Color.rgb(0, 0, 0),
-                Color.rgb(0, 0, 0),
-                Color.rgb(0, 0, 0),
+                rgb(152, 150, 152),
+                rgb(8, 76, 196),
+                rgb(48, 50, 236),
+                rgb(92, 30, 228),
+                rgb(136, 20, 176),
+                rgb(160, 20, 100),
+                rgb(152, 34, 32),
+                rgb(120, 60, 0),
+                rgb(84, 90, 0),
+                rgb(40, 114, 0),
+                rgb(8, 124, 0),
+                rgb(0, 118, 40),
+                rgb(0, 102, 120),
+                rgb(0, 0, 0),
+                rgb(0, 0, 0),
+                rgb(0, 0, 0),
 
-                Color.rgb(236, 238, 236),
-                Color.rgb(76, 154, 236),
-                Color.rgb(120, 124, 236),
-                Color.rgb(176, 98, 236),
-                Color.rgb(228, 84, 236),
-                Color.rgb(236, 88, 180),
-                Color.rgb(236, 106, 100),
-                Color.rgb(212, 136, 32),
-                Color.rgb(160, 170, 0),
-                Color.rgb(116, 196, 0),
-                Color.rgb(76, 208, 32),
-                Color.rgb(56, 204, 108),
-                Color.rgb(56, 180, 204),
-                Color.rgb(60, 60, 60),
-                Color.rgb(0, 0, 0),
-                Color.rgb(0, 0, 0),
+                rgb(236, 238, 236),
+                rgb(76, 154, 236),
+                rgb(120, 124, 236),
+                rgb(176, 98, 236),
+                rgb(228, 84, 236),
+                rgb(236, 88, 180),
+                rgb(236, 106, 100),
+                rgb(212, 136, 32),
+                rgb(160, 170, 0),
+                rgb(116, 196, 0),
+                rgb(76, 208, 32),
+                rgb(56, 204, 108),
+                rgb(56, 180, 204),
+                rgb(60, 60, 60),
+                rgb(0, 0, 0),
+                rgb(0, 0, 0),
 
-                Color.rgb(236, 238, 236),
-                Color.rgb(168, 204, 236),
-                Color.rgb(188, 188, 236),
-                Color.rgb(212, 178, 236),
-                Color.rgb(236, 174, 236),
-                Color.rgb(236, 174, 212),
-                Color.rgb(236, 180, 176),
-                Color.rgb(228, 196, 144),
-                Color.rgb(204, 210, 120),
-                Color.rgb(180, 222, 120),
-                Color.rgb(168, 226, 144),
-                Color.rgb(152, 226, 180),
-                Color.rgb(160, 214, 228),
-                Color.rgb(160, 162, 160),
-                Color.rgb(0, 0, 0),
-                Color.rgb(0, 0, 0)
+                rgb(236, 238, 236),
+                rgb(168, 204, 236),
+                rgb(188, 188, 236),
+                rgb(212, 178, 236),
+                rgb(236, 174, 236),
+                rgb(236, 174, 212),
+                rgb(236, 180, 176),
+                rgb(228, 196, 144),
+                rgb(204, 210, 120),
+                rgb(180, 222, 120),
+                rgb(168, 226, 144),
+                rgb(152, 226, 180),
+                rgb(160, 214, 228),
+                rgb(160, 162, 160),
+                rgb(0, 0, 0),
+                rgb(0, 0, 0)
 
         };
     }
 
+    // 8 copies of the palette, one for each combination of the PPUMASK emphasis bits (red, green, blue):
+    // the emphasized channels stay, the others are dimmed. Columns $xE and $xF are black either way.
+    public static int[] getEmphasisColors() {
+        int[] colors = getColors();
+        int[] emphasized = new int[8 * 64];
+        for (int emphasis = 0; emphasis < 8; emphasis++) {
+            for (int index = 0; index < 64; index++) {
+                int argb = colors[index];
+                if (emphasis != 0 && (index & 0x0E) != 0x0E) {
+                    int red = dim((argb >> 16) & 0xFF, (emphasis & 0x01) == 0);
+                    int green = dim((argb >> 8) & 0xFF, (emphasis & 0x02) == 0);
+                    int blue = dim(argb & 0xFF, (emphasis & 0x04) == 0);
+                    argb = rgb(red, green, blue);
+                }
+                emphasized[emphasis << 6 | index] = argb;
+            }
+        }
+        return emphasized;
+    }
+
+    private static int dim(int channel, boolean dimmed) {
+        return dimmed ? (int) (channel * 0.816) : channel;
+    }
+
+    private static int rgb(int red, int green, int blue) {
+        return 0xFF000000 | red << 16 | green << 8 | blue;
+    }
+
 }
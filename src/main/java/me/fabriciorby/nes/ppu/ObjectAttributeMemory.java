@@ -1,25 +1,15 @@
 package me.fabriciorby.nes.ppu;
 
+import java.nio.ByteBuffer;
+
+// 64 sprites, 4 bytes each, laid out exactly like the real OAM: y, tile id, attribute, x
 public class ObjectAttributeMemory {
 
     final int MEMORY_ENTRIES = 64;
 
-    public static class MemoryEntry {
-        public int y;
-        public int id;
-        public int attribute;
-        public int x;
-    }
-
     final int POSSIBLE_ADDRESSES = MEMORY_ENTRIES*4;
 
-    public MemoryEntry[] memoryEntries = new MemoryEntry[MEMORY_ENTRIES];
-    {
-        for(int i = 0; i < MEMORY_ENTRIES ; i++)
-        {
-            memoryEntries[i] = new MemoryEntry();
-        }
-    }
+    public final byte[] memory = new byte[POSSIBLE_ADDRESSES];
 
     private int address = 0x00;
 
@@ -31,24 +21,24 @@ public class ObjectAttributeMemory {
         }
     }
 
-    public MemoryEntry getObject(int index) {
-        var copy = new MemoryEntry();
-        copy.y = memoryEntries[index].y;
-        copy.id = memoryEntries[index].id;
-        copy.attribute = memoryEntries[index].attribute;
-        copy.x = memoryEntries[index].x;
-        return copy;
+    public int y(int index) {
+        return memory[index << 2] & 0xFF;
+    }
+
+    public int id(int index) {
+        return memory[(index << 2) | 1] & 0xFF;
+    }
+
+    public int attribute(int index) {
+        return memory[(index << 2) | 2] & 0xFF;
+    }
+
+    public int x(int index) {
+        return memory[(index << 2) | 3] & 0xFF;
     }
 
     public int getData(int address) {
-        int index = address / 4;
-        return switch (address % 4) {
-            case 0 -> memoryEntries[index].y;
-            case 1 -> memoryEntries[index].id;
-            case 2 -> memoryEntries[index].attribute;
-            case 3 -> memoryEntries[index].x;
-            default -> 0;
-        };
+        return memory[address] & 0xFF;
     }
 
     public int getData() {
@@ -60,13 +50,15 @@ public class ObjectAttributeMemory {
     }
 
     public void setData(int data, int address) {
-        int index = address / 4;
-        switch (address % 4) {
-            case 0 -> memoryEntries[index].y = data;
-            case 1 -> memoryEntries[index].id = data;
-            case 2 -> memoryEntries[index].attribute = data;
-            case 3 -> memoryEntries[index].x = data;
-            default -> {}
-        };
+        memory[address] = (byte) data;
+    }
+
+    public void saveState(ByteBuffer buffer) {
+        buffer.put(memory).putShort((short) address);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        buffer.get(memory);
+        address = buffer.getShort();
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,9 @@
 package me.fabriciorby.nes.ppu;
 
-import javafx.scene.paint.Color;
 import me.fabriciorby.nes.cartridge.Cartridge;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.function.Consumer;
 
 import static me.fabriciorby.nes.utils.ByteUtils.flipByte;
 
@@ -12,12 +11,13 @@ public class Ppu {
 
     private Cartridge cartridge;
 
-    int[][] tablePattern = new int[2][4096]; //useless, but it does exist
-    public int[][] tableName = new int[2][1024];
+    // 4KB of nametable RAM, enough for four-screen boards, the others only ever map the first two 1KB tables
+    public byte[][] tableName = new byte[4][1024];
     int[] tablePalette = new int[32];
 
-    // https://www.nesdev.org/wiki/PPU_palettes#Palettes
-    Color[] paletteColors = Colors.getColors();
+    // $0000-$3EFF in 1KB pages, each pointing at CHR or at a nametable, $3000-$3EFF mirrors $2000-$2EFF
+    private final byte[][] pages = new byte[16][];
+    private final int[] pageOffsets = new int[16];
 
     ControlRegister controlRegister = new ControlRegister();
     MaskRegister maskRegister = new MaskRegister();
@@ -33,7 +33,11 @@ public class Ppu {
     public boolean nonMaskableInterrupt;
 
     public ObjectAttributeMemory OAM = new ObjectAttributeMemory();
-    public ObjectAttributeMemory.MemoryEntry[] spriteScanline = new ObjectAttributeMemory.MemoryEntry[8];
+    // Secondary OAM, the sprites found on the next line, spriteX counts down to the dot the sprite starts on
+    final int[] spriteY = new int[8];
+    final int[] spriteId = new int[8];
+    final int[] spriteAttribute = new int[8];
+    final int[] spriteX = new int[8];
     public byte spriteCount = 0x00;
     private final int[] spriteShifterPatternLo = new int[8];
     private final int[] spriteShifterPatternHi = new int[8];
@@ -41,6 +45,7 @@ public class Ppu {
     private boolean isSpriteZeroBeingRendered;
 
     public void cpuWrite(int address, int data) {
+        catchUp();
 
         switch (address) {
             case 0x0000 -> { // Control
@@ -83,18 +88,19 @@ public class Ppu {
     }
 
     public int cpuRead(int address, boolean readOnly) {
-        readOnly = false;
+        catchUp();
         if (readOnly) {
 
+            // what a read would return, without clearing vblank, resetting the latch or moving the VRAM address
             return switch (address) {
                 case 0x0000 -> controlRegister.controlRegister; // Control
                 case 0x0001 -> maskRegister.maskRegister; // Mask
-                case 0x0002 -> statusRegister.statusRegister; // Status
+                case 0x0002 -> (statusRegister.statusRegister & 0xE0) | (ppuDataBuffer & 0x1F); // Status
                 case 0x0003 -> 0; // OAM Address
-                case 0x0004 -> 0; // OAM Data
+                case 0x0004 -> OAM.getData(); // OAM Data
                 case 0x0005 -> 0; // Scroll
                 case 0x0006 -> 0; // PPU Address
-                case 0x0007 -> 0; // PPU Data
+                case 0x0007 -> vRamAddress.loopyRegister >= 0x3F00 ? ppuRead(vRamAddress.loopyRegister) : ppuDataBuffer; // PPU Data
                 default -> 0;
             };
 
@@ -129,81 +135,52 @@ public class Ppu {
     }
 
     public void ppuWrite(int address, int data) {
-
         address &= 0x3FFF;
-
-        if (cartridge.ppuCanWrite(address)) {
+        if (address <= 0x1FFF) {
             cartridge.ppuWrite(address, data);
-        } else if (address >= 0x0000 && address <= 0x1FFF) {
-            tablePattern[(address & 0x1000) >> 12][address & 0x0FFF] = data;
-        } else if (address >= 0x2000 && address <= 0x3EFF) {
-            address &= 0x0FFF;
-            switch (cartridge.mirror) {
-                case VERTICAL -> {
-                    if (address >= 0x0000 && address <= 0x03FF) tableName[0][address & 0x03FF] = data;
-                    if (address >= 0x0400 && address <= 0x07FF) tableName[1][address & 0x03FF] = data;
-                    if (address >= 0x0800 && address <= 0x0BFF) tableName[0][address & 0x03FF] = data;
-                    if (address >= 0x0C00 && address <= 0x0FFF) tableName[1][address & 0x03FF] = data;
-                }
-                case HORIZONTAL -> {
-                    if (address >= 0x0000 && address <= 0x03FF) tableName[0][address & 0x03FF] = data;
-                    if (address >= 0x0400 && address <= 0x07FF) tableName[0][address & 0x03FF] = data;
-                    if (address >= 0x0800 && address <= 0x0BFF) tableName[1][address & 0x03FF] = data;
-                    if (address >= 0x0C00 && address <= 0x0FFF) tableName[1][address & 0x03FF] = data;
-                }
-                default -> {
-                }
-            }
-        } else if (address >= 0x3F00 && address <= 0x3FFF) {
-            address &= 0x001F;
-            if (address == 0x0010) address = 0x0000;
-            if (address == 0x0014) address = 0x0004;
-            if (address == 0x0018) address = 0x0008;
-            if (address == 0x001C) address = 0x000C;
-            tablePalette[address] = data;
+        } else if (address <= 0x3EFF) {
+            pages[address >> 10][pageOffsets[address >> 10] + (address & 0x03FF)] = (byte) data;
+        } else {
+            tablePalette[paletteAddress(address)] = data;
         }
-
     }
 
     public int ppuRead(int address) {
-        int data = 0x00;
         address &= 0x3FFF;
+        if (address <= 0x3EFF) {
+            return Byte.toUnsignedInt(pages[address >> 10][pageOffsets[address >> 10] + (address & 0x03FF)]);
+        }
+        return tablePalette[paletteAddress(address)] & (maskRegister.get(MaskRegister.Mask.GRAYSCALE) != 0 ? 0x30 : 0x3F);
+    }
 
-        if (cartridge.ppuCanRead(address)) {
-            data = cartridge.ppuRead(address);
-        } else if (address >= 0x0000 && address <= 0x1FFF) {
-            data = tablePattern[(address & 0x1000) >> 12][address & 0x0FFF];
-        } else if (address >= 0x2000 && address <= 0x3EFF) {
-            address &= 0x0FFF;
-            switch (cartridge.mirror) {
-                case VERTICAL -> {
-                    if (address >= 0x0000 && address <= 0x03FF) data = tableName[0][address & 0x03FF];
-                    if (address >= 0x0400 && address <= 0x07FF) data = tableName[1][address & 0x03FF];
-                    if (address >= 0x0800 && address <= 0x0BFF) data = tableName[0][address & 0x03FF];
-                    if (address >= 0x0C00 && address <= 0x0FFF) data = tableName[1][address & 0x03FF];
-                }
-                case HORIZONTAL -> {
-                    if (address >= 0x0000 && address <= 0x03FF) data = tableName[0][address & 0x03FF];
-                    if (address >= 0x0400 && address <= 0x07FF) data = tableName[0][address & 0x03FF];
-                    if (address >= 0x0800 && address <= 0x0BFF) data = tableName[1][address & 0x03FF];
-                    if (address >= 0x0C00 && address <= 0x0FFF) data = tableName[1][address & 0x03FF];
-                }
-                default -> {
-                }
-            }
-        } else if (address >= 0x3F00 && address <= 0x3FFF) {
-            address &= 0x001F;
-            if (address == 0x0010) address = 0x0000;
-            if (address == 0x0014) address = 0x0004;
-            if (address == 0x0018) address = 0x0008;
-            if (address == 0x001C) address = 0x000C;
-            data = tablePalette[address] & (maskRegister.get(MaskRegister.Mask.GRAYSCALE) != 0 ? 0x30 : 0x3F);
+    // The backdrop colour of the sprite palettes is the one of the background palettes
+    private static int paletteAddress(int address) {
+        address &= 0x001F;
+        return (address & 0x13) == 0x10 ? address & 0x0F : address;
+    }
+
+    // Has to run again whenever the mapper switches CHR banks or mirroring
+    public void mapPages() {
+        for (int page = 0; page < 8; page++) {
+            pages[page] = cartridge.getCHR();
+            pageOffsets[page] = cartridge.chrOffset(page << 10);
+        }
+        for (int page = 8; page < 16; page++) {
+            int table = page & 0x03;
+            pages[page] = tableName[switch (cartridge.mirror) {
+                case HORIZONTAL -> table >> 1;
+                case VERTICAL -> table & 0x01;
+                case ONESCREEN_LO -> 0;
+                case ONESCREEN_HI -> 1;
+                case FOUR_SCREEN -> table;
+            }];
+            pageOffsets[page] = 0;
         }
-        return data;
     }
 
     public void connect(Cartridge cartridge) {
         this.cartridge = cartridge;
+        mapPages();
     }
 
     private int cycle;
@@ -220,129 +197,84 @@ public class Ppu {
     int bgShifterAttribLo = 0x0000;
     int bgShifterAttribHi = 0x0000;
 
-    public void clock() {
-        //For more information about this shit go to
-        // https://github.com/OneLoneCoder/olcNES/blob/master/Part%20%234%20-%20PPU%20Backgrounds/olc2C02.cpp
-
-        Consumer<Ppu> incrementScrollX = ppu -> {
-            if (maskRegister.get(MaskRegister.Mask.RENDER_BACKGROUND) != 0 || maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) != 0) {
-                if (vRamAddress.get(LoopyRegister.Loopy.COARSE_X) == 31) {
-                    vRamAddress.set(LoopyRegister.Loopy.COARSE_X, 0b0);
-                    vRamAddress.set(LoopyRegister.Loopy.NAMETABLE_X, ~vRamAddress.get(LoopyRegister.Loopy.NAMETABLE_X));
-                } else {
-                    vRamAddress.set(LoopyRegister.Loopy.COARSE_X, vRamAddress.get(LoopyRegister.Loopy.COARSE_X) + 1);
-                }
-            }
-        };
+    public enum Renderer {
+        DOT, // every dot goes through the whole state machine when the bus clocks it
+        SCANLINE // dots are only counted, whole lines are rendered at once when the CPU looks or an interrupt is due
+    }
 
-        Consumer<Ppu> incrementScrollY = ppu -> {
-            if (maskRegister.get(MaskRegister.Mask.RENDER_BACKGROUND) != 0 || maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) != 0) {
-                if (vRamAddress.get(LoopyRegister.Loopy.FINE_Y) < 7) {
-                    vRamAddress.set(LoopyRegister.Loopy.FINE_Y, vRamAddress.get(LoopyRegister.Loopy.FINE_Y) + 1);
-                } else {
-                    vRamAddress.set(LoopyRegister.Loopy.FINE_Y, 0b0);
-                    if (vRamAddress.get(LoopyRegister.Loopy.COARSE_Y) == 29) {
-                        vRamAddress.set(LoopyRegister.Loopy.COARSE_Y, 0b0);
-                        vRamAddress.set(LoopyRegister.Loopy.NAMETABLE_Y, ~vRamAddress.get(LoopyRegister.Loopy.NAMETABLE_Y));
-                    } else if (vRamAddress.get(LoopyRegister.Loopy.COARSE_Y) == 31) {
-                        vRamAddress.set(LoopyRegister.Loopy.COARSE_Y, 0b0);
-                    } else {
-                        vRamAddress.set(LoopyRegister.Loopy.COARSE_Y, vRamAddress.get(LoopyRegister.Loopy.COARSE_Y) + 1);
-                    }
-                }
-            }
-        };
+    private Renderer renderer = Renderer.DOT;
+    private int pending;
+    private int deadline;
 
-        Consumer<Ppu> transferAddressX = ppu -> {
-            if (maskRegister.get(MaskRegister.Mask.RENDER_BACKGROUND) != 0 || maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) != 0) {
-                vRamAddress.set(LoopyRegister.Loopy.NAMETABLE_X, tRamAddress.get(LoopyRegister.Loopy.NAMETABLE_X));
-                vRamAddress.set(LoopyRegister.Loopy.COARSE_X, tRamAddress.get(LoopyRegister.Loopy.COARSE_X));
-            }
-        };
+    public void clock() {
+        if (renderer == Renderer.DOT) {
+            dot();
+        } else if (++pending >= deadline) {
+            catchUp();
+        }
+    }
 
-        Consumer<Ppu> transferAddressY = ppu -> {
-            if (maskRegister.get(MaskRegister.Mask.RENDER_BACKGROUND) != 0 || maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) != 0) {
-                vRamAddress.set(LoopyRegister.Loopy.FINE_Y, tRamAddress.get(LoopyRegister.Loopy.FINE_Y));
-                vRamAddress.set(LoopyRegister.Loopy.NAMETABLE_Y, tRamAddress.get(LoopyRegister.Loopy.NAMETABLE_Y));
-                vRamAddress.set(LoopyRegister.Loopy.COARSE_Y, tRamAddress.get(LoopyRegister.Loopy.COARSE_Y));
-            }
-        };
+    public Renderer getRenderer() {
+        return renderer;
+    }
 
-        Consumer<Ppu> loadBackgroundShifters = ppu -> {
-            bgShifterPatternLo = (bgShifterPatternLo & 0xFF00) | bgNextTileLsb;
-            bgShifterPatternHi = (bgShifterPatternHi & 0xFF00) | bgNextTileMsb;
-            bgShifterAttribLo = (bgShifterAttribLo & 0xFF00) | ((bgNextTileAttrib & 0b01) != 0 ? 0xFF : 0x00);
-            bgShifterAttribHi = (bgShifterAttribHi & 0xFF00) | ((bgNextTileAttrib & 0b10) != 0 ? 0xFF : 0x00);
-        };
+    public void setRenderer(Renderer renderer) {
+        catchUp();
+        this.renderer = renderer;
+    }
 
-        Consumer<Ppu> updateShifters = ppu -> {
-            if (maskRegister.get(MaskRegister.Mask.RENDER_BACKGROUND) != 0) {
-                bgShifterPatternLo <<= 1;
-                bgShifterPatternHi <<= 1;
-                bgShifterAttribLo <<= 1;
-                bgShifterAttribHi <<= 1;
+    // Runs the dots the bus has clocked but nobody has seen yet. Anything the CPU does to the PPU (registers, OAM
+    // DMA, bank switches) has to call this first, so it lands on the same dot it would have with the DOT renderer.
+    // Whole lines go through line(), a line the CPU interrupted goes dot by dot.
+    public void catchUp() {
+        while (pending > 0) {
+            int lineDots = scanline == 0 ? 340 : 341;
+            if (cycle == 0 && pending >= lineDots) {
+                line();
+                pending -= lineDots;
+            } else {
+                dot();
+                pending--;
             }
+        }
+        deadline = dotsUntilInterrupt();
+    }
 
-            if ((maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) > 0) && cycle >= 1 && cycle < 258) {
-                for (int i = 0; i < spriteCount; i++) {
-                    if (spriteScanline[i].x > 0) {
-                        spriteScanline[i].x--; //att
-                    } else {
-                        spriteShifterPatternLo[i] <<= 1;
-                        spriteShifterPatternHi[i] <<= 1;
-                    }
-                }
-            }
-        };
+    // The bus has to see the NMI and the end of the frame on the dot they happen, so catchUp() runs there too
+    private int dotsUntilInterrupt() {
+        int now = frameDot(scanline, cycle);
+        int vblank = frameDot(241, 1);
+        return (now <= vblank ? vblank : frameDot(260, 340)) - now + 1;
+    }
 
+    // How many dots were run since the pre-render line started, dot 0 of scanline 0 is always skipped
+    private static int frameDot(int scanline, int cycle) {
+        if (scanline == -1) return cycle;
+        if (scanline == 0) return 341 + Math.max(cycle, 1) - 1;
+        return 681 + (scanline - 1) * 341 + cycle;
+    }
+
+    private void dot() {
+        //For more information about this shit go to
+        // https://github.com/OneLoneCoder/olcNES/blob/master/Part%20%234%20-%20PPU%20Backgrounds/olc2C02.cpp
 
         if (scanline >= -1 && scanline < 240) {
             if (scanline == 0 && cycle == 0) {
                 cycle = 1;
             }
             if (scanline == -1 && cycle == 1) {
-                statusRegister.setVerticalBlank(0);
-                statusRegister.setSpriteOverflow(0);
-                statusRegister.setSpriteZeroHit(0);
-                Arrays.fill(spriteShifterPatternHi, 0);
-                Arrays.fill(spriteShifterPatternLo, 0);
+                startFrame();
             }
             if ((cycle >= 2 && cycle < 258) || (cycle >= 321 && cycle < 338)) {
-                updateShifters.accept(this);
-                switch ((cycle - 1) % 8) {
-                    case 0 -> {
-                        loadBackgroundShifters.accept(this);
-                        bgNextTileId = ppuRead(0x2000 | (vRamAddress.loopyRegister & 0x0FFF));
-                    }
-                    case 2 -> {
-                        bgNextTileAttrib = ppuRead(0x23C0
-                                | (vRamAddress.get(LoopyRegister.Loopy.NAMETABLE_Y) << 11)
-                                | (vRamAddress.get(LoopyRegister.Loopy.NAMETABLE_X) << 10)
-                                | ((vRamAddress.get(LoopyRegister.Loopy.COARSE_Y) >> 2) << 3)
-                                | (vRamAddress.get(LoopyRegister.Loopy.COARSE_X) >> 2));
-                        if ((vRamAddress.get(LoopyRegister.Loopy.COARSE_Y) & 0x02) != 0) bgNextTileAttrib >>= 4;
-                        if ((vRamAddress.get(LoopyRegister.Loopy.COARSE_X) & 0x02) != 0) bgNextTileAttrib >>= 2;
-                        bgNextTileAttrib &= 0x03;
-                    }
-                    case 4 -> bgNextTileLsb = ppuRead(
-                                    (controlRegister.get(ControlRegister.Control.PATTERN_BACKGROUND) << 12)
-                                            + (bgNextTileId << 4)
-                                            + vRamAddress.get(LoopyRegister.Loopy.FINE_Y));
-
-                    case 6 -> bgNextTileMsb = ppuRead(
-                                    (controlRegister.get(ControlRegister.Control.PATTERN_BACKGROUND) << 12)
-                                            + (bgNextTileId << 4)
-                                            + (vRamAddress.get(LoopyRegister.Loopy.FINE_Y) + 8));
-
-                    case 7 -> incrementScrollX.accept(this);
-                }
+                updateShifters();
+                fetchBackground();
             }
             if (cycle == 256) {
-                incrementScrollY.accept(this);
+                incrementScrollY();
             }
             if (cycle == 257) {
-                loadBackgroundShifters.accept(this);
-                transferAddressX.accept(this);
+                loadBackgroundShifters();
+                transferAddressX();
             }
             if (cycle == 338 || cycle == 340) {
                 bgNextTileId = ppuRead(0x2000 | (vRamAddress.loopyRegister & 0x0FFF));
@@ -350,87 +282,15 @@ public class Ppu {
 
             //workaround render
             if (cycle == 257 && scanline >= 0) {
-                for (int i = 0; i < spriteScanline.length; i++) {
-                    spriteScanline[i] = new ObjectAttributeMemory.MemoryEntry();
-                }
-                Arrays.fill(spriteShifterPatternLo, 0);
-                Arrays.fill(spriteShifterPatternHi, 0);
-                spriteCount = 0;
-                int count = 0;
-                isSpriteZeroHitPossible = false;
-                while (count < 64 && spriteCount < 9) {
-                    int diff = scanline - OAM.getObject(count).y;
-                    if (diff >= 0 && diff < (controlRegister.get(ControlRegister.Control.SPRITE_SIZE) > 0 ? 16 : 8)) {
-                        if (spriteCount < 8) {
-                            if (count == 0) {
-                                isSpriteZeroHitPossible = true;
-                            }
-                            spriteScanline[spriteCount] = OAM.getObject(count);
-                            spriteCount++;
-                        }
-                    }
-                    count++;
-                }
-                statusRegister.setSpriteOverflow(spriteCount > 8 ? 1 : 0);
+                evaluateSprites();
             }
 
             if (cycle == 340) {
-                for (int i = 0; i < spriteCount; i++) {
-                    int spritePatternBitsLo, spritePatternBitsHi;
-                    int spritePatternAddressLo, spritePatternAddressHi;
-                    if (controlRegister.get(ControlRegister.Control.SPRITE_SIZE) == 0) {
-                        if ((spriteScanline[i].attribute & 0x80) == 0) {
-                            spritePatternAddressLo = (controlRegister.get(ControlRegister.Control.PATTERN_SPRITE) << 12)
-                                    | (spriteScanline[i].id << 4)
-                                    | (scanline - spriteScanline[i].y);
-                        } else {
-                            spritePatternAddressLo = (controlRegister.get(ControlRegister.Control.PATTERN_SPRITE) << 12)
-                                    | (spriteScanline[i].id << 4)
-                                    | (7 - (scanline - spriteScanline[i].y));
-                        }
-                    } else {
-                        if ((spriteScanline[i].attribute & 0x80) == 0) {
-                            if (scanline - spriteScanline[i].y < 8) {
-                                spritePatternAddressLo = ((spriteScanline[i].id & 0x01) << 12)
-                                        | ((spriteScanline[i].id & 0xFE) << 4)
-                                        | ((scanline - spriteScanline[i].y) & 0x07);
-                            } else {
-                                spritePatternAddressLo = ((spriteScanline[i].id & 0x01) << 12)
-                                        | (((spriteScanline[i].id & 0xFE) + 1) << 4)
-                                        | ((scanline - spriteScanline[i].y) & 0x07);
-                            }
-                        } else {
-                            if (scanline - spriteScanline[i].y < 8) {
-                                spritePatternAddressLo = ((spriteScanline[i].id & 0x01) << 12)
-                                        | (((spriteScanline[i].id & 0xFE) + 1) << 4)
-                                        | (7 - (scanline - spriteScanline[i].y) & 0x07);
-                            } else {
-                                spritePatternAddressLo = ((spriteScanline[i].id & 0x01) << 12)
-                                        | ((spriteScanline[i].id & 0xFE) << 4)
-                                        | (7 - (scanline - spriteScanline[i].y) & 0x07);
-                            }
-                        }
-                    }
-
-                    spritePatternAddressHi = spritePatternAddressLo + 8;
-
-                    spritePatternBitsLo = ppuRead(spritePatternAddressLo);
-                    spritePatternBitsHi = ppuRead(spritePatternAddressHi);
-
-                    if ((spriteScanline[i].attribute & 0x40) > 0) {
-                        spritePatternBitsLo = flipByte(spritePatternBitsLo);
-                        spritePatternBitsHi = flipByte(spritePatternBitsHi);
-                    }
-
-                    spriteShifterPatternLo[i] = spritePatternBitsLo;
-                    spriteShifterPatternHi[i] = spritePatternBitsHi;
-
-                }
+                fetchSprites();
             }
 
-
             if (scanline == -1 && cycle >= 280 && cycle < 305) {
-                transferAddressY.accept(this);
+                transferAddressY();
             }
 
         }
@@ -441,10 +301,7 @@ public class Ppu {
 
         if (scanline >= 241 && scanline < 261) {
             if (scanline == 241 && cycle == 1) {
-                statusRegister.setVerticalBlank(1);
-                if (controlRegister.get(ControlRegister.Control.ENABLE_NMI) != 0) {
-                    nonMaskableInterrupt = true;
-                }
+                startVerticalBlank();
             }
         }
 
@@ -470,13 +327,13 @@ public class Ppu {
         if (maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) > 0) {
             isSpriteZeroBeingRendered = false;
             for (int i = 0; i < spriteCount; i++) {
-                if (spriteScanline[i].x == 0) {
+                if (spriteX[i] == 0) {
                     int fgPixelLo = (spriteShifterPatternLo[i] & 0x80) > 0 ? 1 : 0;
                     int fgPixelHi = (spriteShifterPatternHi[i] & 0x80) > 0 ? 1 : 0;
                     fgPixel = (fgPixelHi << 1) | fgPixelLo;
 
-                    fgPalette = (spriteScanline[i].attribute & 0x03) + 0x04;
-                    fgPriority = (spriteScanline[i].attribute & 0x20) == 0 ? 1 : 0;
+                    fgPalette = (spriteAttribute[i] & 0x03) + 0x04;
+                    fgPriority = (spriteAttribute[i] & 0x20) == 0 ? 1 : 0;
 
                     if (fgPixel != 0) {
                         if (i == 0) {
@@ -525,16 +382,383 @@ public class Ppu {
         }
 
 
+        if (cycle == 1) spriteScreen.setEmphasis(scanline, maskRegister.maskRegister >> 5);
         spriteScreen.setPixel(cycle - 1, scanline, getColourFromPaletteRam(palette, pixel));
 
         cycle++;
         if (cycle >= 341) {
-            cycle = 0;
-            scanline++;
-            if (scanline >= 261) {
-                scanline = -1;
-                frameComplete = true;
+            nextScanline();
+        }
+    }
+
+    private void nextScanline() {
+        cycle = 0;
+        scanline++;
+        if (scanline >= 261) {
+            scanline = -1;
+            frameComplete = true;
+        }
+    }
+
+    // A whole line from dot 0, doing exactly what dot() would over it. The registers can't change halfway, so the
+    // flags are checked once, the sprites are laid out on the line before the background is drawn, and the dots
+    // with nothing to fetch or draw are skipped.
+    private void line() {
+        if (scanline < 240) {
+            renderLine();
+        } else {
+            blankLine();
+        }
+        nextScanline();
+    }
+
+    private final int[] lineSpritePixel = new int[256];
+    private final int[] lineSpritePalette = new int[256];
+    private final boolean[] lineSpriteInFront = new boolean[256];
+    private final boolean[] lineSpriteZero = new boolean[256];
+    private final int[] linePalette = new int[32];
+
+    private void renderLine() {
+        boolean background = (maskRegister.maskRegister & MaskRegister.Mask.RENDER_BACKGROUND.bit) != 0;
+        boolean sprites = (maskRegister.maskRegister & MaskRegister.Mask.RENDER_SPRITES.bit) != 0;
+
+        if (scanline == -1) {
+            startFrame();
+        } else {
+            spriteScreen.setEmphasis(scanline, maskRegister.maskRegister >> 5);
+        }
+        // The pre-render line just cleared the sprite shifters, on the others the sprites are where the last
+        // line left them: pixel x shows bit 7 - (x - sprite.x) of the pattern, the lowest sprite wins
+        boolean spritesOnLine = sprites && scanline >= 0 && spriteCount > 0;
+        if (spritesOnLine) {
+            layOutSprites();
+        }
+        boolean zeroHit = background && sprites && isSpriteZeroHitPossible && spritesOnLine;
+        for (int i = 0; i < 32; i++) {
+            linePalette[i] = ppuRead(0x3F00 + i) & 0x3F;
+        }
+
+        // cycle 1 draws pixel 0 and cycles 2 to 257 each shift, fetch and draw the next one
+        byte[] indices = spriteScreen.indices;
+        int row = scanline * spriteScreen.width;
+        int bitMux = 0x8000 >> fineX;
+        for (int x = 0; x < 256; x++) {
+            if (x > 0) {
+                if (background) shiftBackground();
+                fetchBackground(x + 1);
+            }
+            int bgPixel = 0;
+            int bgPalette = 0;
+            if (background) {
+                bgPixel = ((bgShifterPatternHi & bitMux) != 0 ? 2 : 0) | ((bgShifterPatternLo & bitMux) != 0 ? 1 : 0);
+                bgPalette = ((bgShifterAttribHi & bitMux) != 0 ? 2 : 0) | ((bgShifterAttribLo & bitMux) != 0 ? 1 : 0);
+            }
+            int pixel = bgPixel;
+            int palette = bgPixel != 0 ? bgPalette : 0;
+            if (spritesOnLine) {
+                int fgPixel = lineSpritePixel[x];
+                if (fgPixel != 0 && (bgPixel == 0 || lineSpriteInFront[x])) {
+                    pixel = fgPixel;
+                    palette = lineSpritePalette[x];
+                }
+                if (zeroHit && bgPixel != 0 && fgPixel != 0 && lineSpriteZero[x]) {
+                    statusRegister.setSpriteZeroHit(1);
+                }
+            }
+            if (row >= 0) indices[row + x] = (byte) linePalette[(palette << 2) + pixel];
+        }
+        incrementScrollY();
+
+        // cycle 257
+        if (background) shiftBackground();
+        fetchBackground(257);
+        if (sprites) {
+            for (int i = 0; i < spriteCount; i++) {
+                spriteX[i] = 0;
+            }
+        }
+        loadBackgroundShifters();
+        transferAddressX();
+        if (scanline >= 0) {
+            evaluateSprites();
+        } else {
+            transferAddressY();
+        }
+
+        // cycles 321 to 340 fetch the first two tiles of the next line and its sprites
+        for (int cycle = 321; cycle < 338; cycle++) {
+            if (background) shiftBackground();
+            fetchBackground(cycle);
+        }
+        bgNextTileId = ppuRead(0x2000 | (vRamAddress.loopyRegister & 0x0FFF));
+        fetchSprites();
+        if (sprites) {
+            isSpriteZeroBeingRendered = spriteZeroInFront();
+        }
+    }
+
+    private void layOutSprites() {
+        Arrays.fill(lineSpritePixel, 0);
+        for (int i = spriteCount - 1; i >= 0; i--) {
+            int palette = (spriteAttribute[i] & 0x03) + 0x04;
+            boolean inFront = (spriteAttribute[i] & 0x20) == 0;
+            for (int bit = 0; bit < 8; bit++) {
+                int x = spriteX[i] + bit;
+                if (x > 255) break;
+                int pixel = ((spriteShifterPatternHi[i] << bit) & 0x80) >> 6 | ((spriteShifterPatternLo[i] << bit) & 0x80) >> 7;
+                if (pixel != 0) {
+                    lineSpritePixel[x] = pixel;
+                    lineSpritePalette[x] = palette;
+                    lineSpriteInFront[x] = inFront;
+                    lineSpriteZero[x] = i == 0;
+                }
+            }
+        }
+    }
+
+    // Nothing moves during vblank, so every dot draws the same (invisible) pixel and the sprite zero hit is
+    // decided once for the whole line
+    private void blankLine() {
+        if (scanline == 241) {
+            startVerticalBlank();
+        }
+        if ((maskRegister.maskRegister & MaskRegister.Mask.RENDER_SPRITES.bit) != 0) {
+            isSpriteZeroBeingRendered = spriteZeroInFront();
+            if (isSpriteZeroBeingRendered && isSpriteZeroHitPossible
+                    && (maskRegister.maskRegister & MaskRegister.Mask.RENDER_BACKGROUND.bit) != 0) {
+                int bitMux = 0x8000 >> fineX;
+                if ((bgShifterPatternLo & bitMux) != 0 || (bgShifterPatternHi & bitMux) != 0) {
+                    statusRegister.setSpriteZeroHit(1);
+                }
+            }
+        }
+    }
+
+    // Whether the first sprite with a pixel on the current dot is sprite zero, without any shifting going on
+    private boolean spriteZeroInFront() {
+        for (int i = 0; i < spriteCount; i++) {
+            if (spriteX[i] == 0 && ((spriteShifterPatternLo[i] | spriteShifterPatternHi[i]) & 0x80) != 0) {
+                return i == 0;
+            }
+        }
+        return false;
+    }
+
+    private void startFrame() {
+        statusRegister.setVerticalBlank(0);
+        statusRegister.setSpriteOverflow(0);
+        statusRegister.setSpriteZeroHit(0);
+        Arrays.fill(spriteShifterPatternHi, 0);
+        Arrays.fill(spriteShifterPatternLo, 0);
+    }
+
+    private void startVerticalBlank() {
+        statusRegister.setVerticalBlank(1);
+        if (controlRegister.get(ControlRegister.Control.ENABLE_NMI) != 0) {
+            nonMaskableInterrupt = true;
+        }
+    }
+
+    private boolean isRendering() {
+        return (maskRegister.maskRegister & (MaskRegister.Mask.RENDER_BACKGROUND.bit | MaskRegister.Mask.RENDER_SPRITES.bit)) != 0;
+    }
+
+    // Loopy register layout: yyy NN YYYYY XXXXX, fine Y, nametable, coarse Y, coarse X
+
+    private void incrementScrollX() {
+        if (isRendering()) {
+            int v = vRamAddress.loopyRegister;
+            if ((v & 0x001F) == 31) {
+                v = (v & ~0x001F) ^ 0x0400;
+            } else {
+                v++;
+            }
+            vRamAddress.loopyRegister = v;
+        }
+    }
+
+    private void incrementScrollY() {
+        if (isRendering()) {
+            int v = vRamAddress.loopyRegister;
+            if ((v & 0x7000) != 0x7000) {
+                v += 0x1000;
+            } else {
+                v &= ~0x7000;
+                int coarseY = (v >> 5) & 0x1F;
+                if (coarseY == 29) {
+                    v = (v & ~0x03E0) ^ 0x0800;
+                } else if (coarseY == 31) {
+                    v &= ~0x03E0;
+                } else {
+                    v += 0x0020;
+                }
+            }
+            vRamAddress.loopyRegister = v;
+        }
+    }
+
+    private void transferAddressX() {
+        if (isRendering()) {
+            vRamAddress.loopyRegister = (vRamAddress.loopyRegister & ~0x041F) | (tRamAddress.loopyRegister & 0x041F);
+        }
+    }
+
+    private void transferAddressY() {
+        if (isRendering()) {
+            vRamAddress.loopyRegister = (vRamAddress.loopyRegister & ~0x7BE0) | (tRamAddress.loopyRegister & 0x7BE0);
+        }
+    }
+
+    private void loadBackgroundShifters() {
+        bgShifterPatternLo = (bgShifterPatternLo & 0xFF00) | bgNextTileLsb;
+        bgShifterPatternHi = (bgShifterPatternHi & 0xFF00) | bgNextTileMsb;
+        bgShifterAttribLo = (bgShifterAttribLo & 0xFF00) | ((bgNextTileAttrib & 0b01) != 0 ? 0xFF : 0x00);
+        bgShifterAttribHi = (bgShifterAttribHi & 0xFF00) | ((bgNextTileAttrib & 0b10) != 0 ? 0xFF : 0x00);
+    }
+
+    private void shiftBackground() {
+        bgShifterPatternLo <<= 1;
+        bgShifterPatternHi <<= 1;
+        bgShifterAttribLo <<= 1;
+        bgShifterAttribHi <<= 1;
+    }
+
+    private void updateShifters() {
+        if (maskRegister.get(MaskRegister.Mask.RENDER_BACKGROUND) != 0) {
+            shiftBackground();
+        }
+
+        if ((maskRegister.get(MaskRegister.Mask.RENDER_SPRITES) > 0) && cycle >= 1 && cycle < 258) {
+            for (int i = 0; i < spriteCount; i++) {
+                if (spriteX[i] > 0) {
+                    spriteX[i]--; //att
+                } else {
+                    spriteShifterPatternLo[i] <<= 1;
+                    spriteShifterPatternHi[i] <<= 1;
+                }
+            }
+        }
+    }
+
+    private void fetchBackground() {
+        fetchBackground(cycle);
+    }
+
+    // Every 8 dots: nametable byte, attribute byte, pattern low and high, then on to the next tile
+    private void fetchBackground(int cycle) {
+        int v = vRamAddress.loopyRegister;
+        switch ((cycle - 1) % 8) {
+            case 0 -> {
+                loadBackgroundShifters();
+                bgNextTileId = ppuRead(0x2000 | (v & 0x0FFF));
+            }
+            case 2 -> {
+                bgNextTileAttrib = ppuRead(0x23C0 | (v & 0x0C00) | ((v >> 4) & 0x38) | ((v >> 2) & 0x07));
+                if ((v & 0x0040) != 0) bgNextTileAttrib >>= 4;
+                if ((v & 0x0002) != 0) bgNextTileAttrib >>= 2;
+                bgNextTileAttrib &= 0x03;
+            }
+            case 4 -> {
+                int row = cartridge.patternRow(
+                        ((controlRegister.controlRegister & ControlRegister.Control.PATTERN_BACKGROUND.bit) << 8)
+                                + (bgNextTileId << 4)
+                                + ((v >> 12) & 0x07), false);
+                bgNextTileLsb = row & 0xFF;
+                bgNextTileMsb = row >> 8;
+            }
+            case 7 -> incrementScrollX();
+        }
+    }
+
+    private void evaluateSprites() {
+        Arrays.fill(spriteY, 0);
+        Arrays.fill(spriteId, 0);
+        Arrays.fill(spriteAttribute, 0);
+        Arrays.fill(spriteX, 0);
+        Arrays.fill(spriteShifterPatternLo, 0);
+        Arrays.fill(spriteShifterPatternHi, 0);
+        spriteCount = 0;
+        isSpriteZeroHitPossible = false;
+        int height = controlRegister.get(ControlRegister.Control.SPRITE_SIZE) > 0 ? 16 : 8;
+        for (int count = 0; count < 64; count++) {
+            int diff = scanline - OAM.y(count);
+            if (diff < 0 || diff >= height) continue;
+            // A 9th sprite on the line sets the overflow until the pre-render line, only while rendering. The real
+            // PPU's buggy diagonal OAM scan after the 8th sprite, with its false positives and negatives, isn't copied.
+            if (spriteCount == 8) {
+                if ((maskRegister.maskRegister & (MaskRegister.Mask.RENDER_BACKGROUND.bit | MaskRegister.Mask.RENDER_SPRITES.bit)) != 0) {
+                    statusRegister.setSpriteOverflow(1);
+                }
+                break;
+            }
+            if (count == 0) {
+                isSpriteZeroHitPossible = true;
+            }
+            spriteY[spriteCount] = OAM.y(count);
+            spriteId[spriteCount] = OAM.id(count);
+            spriteAttribute[spriteCount] = OAM.attribute(count);
+            spriteX[spriteCount] = OAM.x(count);
+            spriteCount++;
+        }
+    }
+
+    private void fetchSprites() {
+        for (int i = 0; i < spriteCount; i++) {
+            int spritePatternBitsLo, spritePatternBitsHi;
+            int spritePatternAddressLo;
+            if (controlRegister.get(ControlRegister.Control.SPRITE_SIZE) == 0) {
+                if ((spriteAttribute[i] & 0x80) == 0) {
+                    spritePatternAddressLo = (controlRegister.get(ControlRegister.Control.PATTERN_SPRITE) << 12)
+                            | (spriteId[i] << 4)
+                            | (scanline - spriteY[i]);
+                } else {
+                    spritePatternAddressLo = (controlRegister.get(ControlRegister.Control.PATTERN_SPRITE) << 12)
+                            | (spriteId[i] << 4)
+                            | (7 - (scanline - spriteY[i]));
+                }
+            } else {
+                if ((spriteAttribute[i] & 0x80) == 0) {
+                    if (scanline - spriteY[i] < 8) {
+                        spritePatternAddressLo = ((spriteId[i] & 0x01) << 12)
+                                | ((spriteId[i] & 0xFE) << 4)
+                                | ((scanline - spriteY[i]) & 0x07);
+                    } else {
+                        spritePatternAddressLo = ((spriteId[i] & 0x01) << 12)
+                                | (((spriteId[i] & 0xFE) + 1) << 4)
+                                | ((scanline - spriteY[i]) & 0x07);
+                    }
+                } else {
+                    if (scanline - spriteY[i] < 8) {
+                        spritePatternAddressLo = ((spriteId[i] & 0x01) << 12)
+                                | (((spriteId[i] & 0xFE) + 1) << 4)
+                                | (7 - (scanline - spriteY[i]) & 0x07);
+                    } else {
+                        spritePatternAddressLo = ((spriteId[i] & 0x01) << 12)
+                                | ((spriteId[i] & 0xFE) << 4)
+                                | (7 - (scanline - spriteY[i]) & 0x07);
+                    }
+                }
+            }
+
+            boolean flipped = (spriteAttribute[i] & 0x40) != 0;
+            if ((spritePatternAddressLo & ~0x1FF7) == 0) {
+                int row = cartridge.patternRow(spritePatternAddressLo, flipped);
+                spritePatternBitsLo = row & 0xFF;
+                spritePatternBitsHi = row >> 8;
+            } else {
+                // not a plain tile row: the pre-render line fetches a row above the sprite, which lands outside the
+                // pattern tables, and a sprite size change after evaluation can run past the low plane
+                spritePatternBitsLo = ppuRead(spritePatternAddressLo);
+                spritePatternBitsHi = ppuRead(spritePatternAddressLo + 8);
+                if (flipped) {
+                    spritePatternBitsLo = flipByte(spritePatternBitsLo);
+                    spritePatternBitsHi = flipByte(spritePatternBitsHi);
+                }
             }
+
+            spriteShifterPatternLo[i] = spritePatternBitsLo;
+            spriteShifterPatternHi[i] = spritePatternBitsHi;
+
         }
     }
 
@@ -543,38 +767,143 @@ public class Ppu {
     Sprite[] spritePatternTable = {new Sprite(128, 128), new Sprite(128, 128)};
 
     public Sprite getScreen() {
+        catchUp();
         return spriteScreen;
     }
 
+    // What each pattern table view was last drawn from: the CHR offset and write stamp of every tile and the four
+    // colours of the palette. Only tiles where one of those changed get drawn again.
+    private final int[][] patternTileOffsets = {new int[256], new int[256]};
+    private final int[][] patternTileStamps = new int[2][256];
+    private final int[][] patternColours = new int[2][4];
+    {
+        Arrays.fill(patternTileOffsets[0], -1);
+        Arrays.fill(patternTileOffsets[1], -1);
+    }
+
     public Sprite getPatternTable(int index, int palette) {
-        for (int nTileY = 0; nTileY < 16; nTileY++) {
-            for (int nTileX = 0; nTileX < 16; nTileX++) {
-                int nOffset = nTileY * 256 + nTileX * 16;
-                for (int row = 0; row < 8; row++) {
-                    int tileLow = ppuRead(index * 0x1000 + nOffset + row);
-                    int tileHigh = ppuRead(index * 0x1000 + nOffset + row + 0x0008);
-                    for (int col = 0; col < 8; col++) {
-                        int pixel = ((tileLow & 0x01) << 1) | (tileHigh & 0x01);
-                        tileLow >>= 1;
-                        tileHigh >>= 1;
-                        spritePatternTable[index].setPixel(nTileX * 8 + (7 - col),
-                                nTileY * 8 + row, getColourFromPaletteRam(palette, pixel));
-                    }
-                }
+        int[] colours = patternColours[index];
+        boolean recolour = false;
+        for (int pixel = 0; pixel < 4; pixel++) {
+            int colour = getColourFromPaletteRam(palette, pixel);
+            if (colours[pixel] != colour) {
+                colours[pixel] = colour;
+                recolour = true;
             }
         }
 
-        return spritePatternTable[index];
+        Sprite table = spritePatternTable[index];
+        boolean changed = false;
+        for (int tile = 0; tile < 256; tile++) {
+            int address = index * 0x1000 + tile * 16;
+            int offset = cartridge.chrOffset(address);
+            int stamp = cartridge.tileStamp(address);
+            if (!recolour && patternTileOffsets[index][tile] == offset && patternTileStamps[index][tile] == stamp) {
+                continue;
+            }
+            patternTileOffsets[index][tile] = offset;
+            patternTileStamps[index][tile] = stamp;
+            int nTileX = tile & 0x0F;
+            int nTileY = tile >> 4;
+            for (int row = 0; row < 8; row++) {
+                int pattern = cartridge.patternRow(address + row, false);
+                for (int col = 0; col < 8; col++) {
+                    int pixel = ((pattern >> col) & 0x01) << 1 | ((pattern >> (8 + col)) & 0x01);
+                    table.setPixel(nTileX * 8 + (7 - col), nTileY * 8 + row, colours[pixel]);
+                }
+            }
+            changed = true;
+        }
+        if (changed) {
+            table.version++;
+        }
+        return table;
     }
 
-    public Color getColourFromPaletteRam(int palette, int pixel) {
-        return paletteColors[ppuRead(0x3F00 + (palette << 2) + pixel) & 0x3F];
+    // https://www.nesdev.org/wiki/PPU_palettes#Palettes, the colours themselves are in Colors
+    public int getColourFromPaletteRam(int palette, int pixel) {
+        return ppuRead(0x3F00 + (palette << 2) + pixel) & 0x3F;
     }
 
     public Sprite getNameTable(int index) {
         return spriteNameTable[index];
     }
 
+    // Registers, memories, the rendering pipeline and the picture drawn so far, enough to carry on from the same
+    // dot. Pending dots are run first, so a state never depends on the renderer that wrote it.
+    public void saveState(ByteBuffer buffer) {
+        catchUp();
+        for (byte[] table : tableName) buffer.put(table);
+        for (int colour : tablePalette) buffer.put((byte) colour);
+        OAM.saveState(buffer);
+
+        buffer.putInt(controlRegister.controlRegister);
+        buffer.putInt(maskRegister.maskRegister);
+        buffer.putInt(statusRegister.statusRegister);
+        buffer.putInt(addressLatch).putInt(ppuDataBuffer);
+        buffer.putInt(vRamAddress.loopyRegister).putInt(tRamAddress.loopyRegister);
+        buffer.putInt(fineX);
+        buffer.put((byte) (nonMaskableInterrupt ? 1 : 0)).put((byte) (frameComplete ? 1 : 0));
+        buffer.putShort((short) cycle).putShort((short) scanline);
+
+        buffer.put((byte) bgNextTileId).put((byte) bgNextTileAttrib).put((byte) bgNextTileLsb).put((byte) bgNextTileMsb);
+        buffer.putInt(bgShifterPatternLo).putInt(bgShifterPatternHi);
+        buffer.putInt(bgShifterAttribLo).putInt(bgShifterAttribHi);
+
+        buffer.put(spriteCount);
+        for (int i = 0; i < 8; i++) {
+            buffer.put((byte) spriteY[i]).put((byte) spriteId[i]).put((byte) spriteAttribute[i]).put((byte) spriteX[i]);
+            buffer.putInt(spriteShifterPatternLo[i]).putInt(spriteShifterPatternHi[i]);
+        }
+        buffer.put((byte) (isSpriteZeroHitPossible ? 1 : 0)).put((byte) (isSpriteZeroBeingRendered ? 1 : 0));
+
+        buffer.put(spriteScreen.indices).put(spriteScreen.emphasis);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        for (byte[] table : tableName) buffer.get(table);
+        for (int i = 0; i < tablePalette.length; i++) tablePalette[i] = buffer.get() & 0xFF;
+        OAM.loadState(buffer);
+
+        controlRegister.controlRegister = buffer.getInt();
+        maskRegister.maskRegister = buffer.getInt();
+        statusRegister.statusRegister = buffer.getInt();
+        addressLatch = buffer.getInt();
+        ppuDataBuffer = buffer.getInt();
+        vRamAddress.loopyRegister = buffer.getInt();
+        tRamAddress.loopyRegister = buffer.getInt();
+        fineX = buffer.getInt();
+        nonMaskableInterrupt = buffer.get() != 0;
+        frameComplete = buffer.get() != 0;
+        cycle = buffer.getShort();
+        scanline = buffer.getShort();
+
+        bgNextTileId = buffer.get() & 0xFF;
+        bgNextTileAttrib = buffer.get() & 0xFF;
+        bgNextTileLsb = buffer.get() & 0xFF;
+        bgNextTileMsb = buffer.get() & 0xFF;
+        bgShifterPatternLo = buffer.getInt();
+        bgShifterPatternHi = buffer.getInt();
+        bgShifterAttribLo = buffer.getInt();
+        bgShifterAttribHi = buffer.getInt();
+
+        spriteCount = buffer.get();
+        for (int i = 0; i < 8; i++) {
+            spriteY[i] = buffer.get() & 0xFF;
+            spriteId[i] = buffer.get() & 0xFF;
+            spriteAttribute[i] = buffer.get() & 0xFF;
+            spriteX[i] = buffer.get() & 0xFF;
+            spriteShifterPatternLo[i] = buffer.getInt();
+            spriteShifterPatternHi[i] = buffer.getInt();
+        }
+        isSpriteZeroHitPossible = buffer.get() != 0;
+        isSpriteZeroBeingRendered = buffer.get() != 0;
+
+        buffer.get(spriteScreen.indices).get(spriteScreen.emphasis);
+        pending = 0;
+        deadline = dotsUntilInterrupt();
+    }
+
     public void reset() {
         fineX = 0;
         addressLatch = 0;
@@ -594,6 +923,9 @@ public class Ppu {
         controlRegister.controlRegister = 0;
         vRamAddress.loopyRegister = 0;
         tRamAddress.loopyRegister = 0;
+        pending = 0;
+        deadline = dotsUntilInterrupt();
+        mapPages();
     }
 
 }
@@ -1,29 +1,70 @@
 package me.fabriciorby.nes.ppu;
 
-import javafx.scene.paint.Color;
-
-import java.util.Arrays;
+import java.nio.IntBuffer;
 
+// What the PPU draws is kept as it outputs it: one 6 bit palette index per pixel, row major, and the PPUMASK
+// emphasis bits once per row. Nothing gets turned into colours until someone asks for the ARGB pixels.
 public class Sprite {
-    Color[][] pixelArray;
+
+    private static final int[] ARGB = Colors.getEmphasisColors();
+
+    final byte[] indices;
+    final byte[] emphasis;
+    final int[] pixels;
+    final IntBuffer argbBuffer;
     int width;
     int height;
+    int version;
 
     public Sprite(int width, int height) {
-        this.pixelArray = new Color[width][height];
-        for (Color[] row: pixelArray)
-            Arrays.fill(row, Color.BLACK);
+        this.indices = new byte[width * height];
+        this.emphasis = new byte[height];
+        this.pixels = new int[width * height];
+        this.argbBuffer = IntBuffer.wrap(pixels);
         this.width = width;
         this.height = height;
     }
 
-    public void setPixel(int x, int y, Color pixel) {
+    public void setPixel(int x, int y, int index) {
         if (x >= width || y >= height || x < 0 || y < 0) return;
-        this.pixelArray[x][y] = pixel;
+        this.indices[y * width + x] = (byte) index;
+    }
+
+    public void setEmphasis(int y, int bits) {
+        if (y >= height || y < 0) return;
+        this.emphasis[y] = (byte) bits;
+    }
+
+    // Same size sprites only, the ARGB pixels aren't copied, toArgb() makes them again
+    public void copyFrom(Sprite other) {
+        System.arraycopy(other.indices, 0, indices, 0, indices.length);
+        System.arraycopy(other.emphasis, 0, emphasis, 0, emphasis.length);
+        version++;
+    }
+
+    public byte[] getIndices() {
+        return indices;
+    }
+
+    // Converts the indices to packed 0xAARRGGBB, row major, width pixels per row
+    public int[] toArgb() {
+        for (int y = 0, i = 0; y < height; y++) {
+            int base = emphasis[y] << 6;
+            for (int x = 0; x < width; x++, i++) {
+                pixels[i] = ARGB[base | indices[i]];
+            }
+        }
+        return pixels;
+    }
+
+    // Same memory as toArgb(), for whoever displays it without copying
+    public IntBuffer getArgbBuffer() {
+        return argbBuffer;
     }
 
-    public Color[][] getPixelArray() {
-        return pixelArray;
+    // Bumped by whoever redraws the sprite, so a viewer can skip converting one that didn't change
+    public int getVersion() {
+        return version;
     }
 
     public int getWidth() {
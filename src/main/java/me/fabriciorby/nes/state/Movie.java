@@ -0,0 +1,239 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Both controllers on every frame since a known start, enough to play a run back exactly: the machine is
+// deterministic, so the same state and the same input give the same frames. Next to the input it keeps
+// - the rom's hash, so a movie isn't played on another game
+// - a CRC32 of the whole save state every hashInterval frames, a desync is caught on the frame it shows up
+// - a deflated save state every keyframeInterval frames, frame 0 included, so seeking to frame N loads the
+//   keyframe before it and replays at most keyframeInterval frames instead of the whole movie
+// Play it in the mode it was recorded in, the recompiler's timing and so its states depend on what it has compiled.
+// File: magic, version, rom hash, both intervals, frame count, 2 input bytes per frame, the state hashes, then the
+// keyframe index (frame, size) followed by the keyframes themselves.
+public class Movie {
+
+    private static final int MAGIC = 0x4E45534D; // "NESM"
+    public static final short VERSION = 1;
+
+    private record Keyframe(int frame, byte[] state) {}
+
+    private final int romHash;
+    private final int hashInterval;
+    private final int keyframeInterval;
+
+    private byte[] inputs;
+    private int[] stateHashes;
+    private final List<Keyframe> keyframes = new ArrayList<>();
+    private int length;
+    private int position;
+
+    private final SaveState saveState = new SaveState();
+    private final CRC32 crc = new CRC32();
+
+    public Movie(int romHash, int hashInterval, int keyframeInterval) {
+        this(romHash, hashInterval, keyframeInterval, new byte[256], new int[16]);
+    }
+
+    private Movie(int romHash, int hashInterval, int keyframeInterval, byte[] inputs, int[] stateHashes) {
+        if (hashInterval < 1 || keyframeInterval < 1) {
+            throw new IllegalArgumentException("Intervals have to be at least 1 frame");
+        }
+        this.romHash = romHash;
+        this.hashInterval = hashInterval;
+        this.keyframeInterval = keyframeInterval;
+        this.inputs = inputs;
+        this.stateHashes = stateHashes;
+    }
+
+    // Call right before every frame, once the controllers are set. Recording after a seek back cuts the rest off.
+    public void record(Bus nes) {
+        checkRom(nes);
+        if (position < length) {
+            length = position;
+            keyframes.removeIf(keyframe -> keyframe.frame() >= position);
+        }
+
+        boolean hashed = position % hashInterval == 0;
+        boolean keyframe = position % keyframeInterval == 0;
+        if (hashed || keyframe) {
+            ByteBuffer saved = saveState.save(nes);
+            if (hashed) {
+                int index = position / hashInterval;
+                if (index >= stateHashes.length) stateHashes = Arrays.copyOf(stateHashes, 2 * stateHashes.length);
+                stateHashes[index] = hash(saved);
+            }
+            if (keyframe) {
+                keyframes.add(new Keyframe(position, deflate(saved)));
+            }
+        }
+
+        if (2 * position + 2 > inputs.length) inputs = Arrays.copyOf(inputs, 2 * inputs.length);
+        inputs[2 * position] = nes.controller[0];
+        inputs[2 * position + 1] = nes.controller[1];
+        length = ++position;
+    }
+
+    // Call right before every frame instead of setting the controllers, false once the movie is over
+    public boolean play(Bus nes) {
+        if (position >= length) return false;
+        if (position == 0) checkRom(nes);
+        if (position % hashInterval == 0) {
+            int hash = hash(saveState.save(nes));
+            if (hash != stateHashes[position / hashInterval]) {
+                throw new IllegalStateException("Movie desynced at frame " + position);
+            }
+        }
+        nes.controller[0] = inputs[2 * position];
+        nes.controller[1] = inputs[2 * position + 1];
+        position++;
+        return true;
+    }
+
+    // Leaves the machine right before the given frame, play() or record() carry on from there
+    public void seek(Bus nes, int frame) {
+        if (frame < 0 || frame > length) {
+            throw new IllegalArgumentException("Frame " + frame + " is outside the movie, it has " + length);
+        }
+        checkRom(nes);
+        Keyframe keyframe = keyframes.getFirst();
+        for (Keyframe candidate : keyframes) {
+            if (candidate.frame() > frame) break;
+            keyframe = candidate;
+        }
+        SaveState.load(nes, ByteBuffer.wrap(inflate(keyframe.state())));
+        position = keyframe.frame();
+        while (position < frame) {
+            play(nes);
+            nes.frame();
+        }
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getRomHash() {
+        return romHash;
+    }
+
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(romHash);
+            out.writeInt(hashInterval);
+            out.writeInt(keyframeInterval);
+            out.writeInt(length);
+            out.write(inputs, 0, 2 * length);
+            int hashes = (length + hashInterval - 1) / hashInterval;
+            for (int i = 0; i < hashes; i++) out.writeInt(stateHashes[i]);
+            out.writeInt(keyframes.size());
+            for (Keyframe keyframe : keyframes) {
+                out.writeInt(keyframe.frame());
+                out.writeInt(keyframe.state().length);
+            }
+            for (Keyframe keyframe : keyframes) out.write(keyframe.state());
+        }
+    }
+
+    public static Movie read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a movie: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Movie version " + version + ", this build reads " + VERSION);
+            }
+            int romHash = in.readInt();
+            int hashInterval = in.readInt();
+            int keyframeInterval = in.readInt();
+            int length = in.readInt();
+            byte[] inputs = new byte[Math.max(2 * length, 2)];
+            in.readFully(inputs, 0, 2 * length);
+            int[] stateHashes = new int[Math.max((length + hashInterval - 1) / hashInterval, 1)];
+            for (int i = 0; i < (length + hashInterval - 1) / hashInterval; i++) stateHashes[i] = in.readInt();
+
+            Movie movie = new Movie(romHash, hashInterval, keyframeInterval, inputs, stateHashes);
+            movie.length = length;
+            int[] frames = new int[in.readInt()];
+            int[] sizes = new int[frames.length];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = in.readInt();
+                sizes[i] = in.readInt();
+            }
+            for (int i = 0; i < frames.length; i++) {
+                movie.keyframes.add(new Keyframe(frames[i], in.readNBytes(sizes[i])));
+            }
+            if (movie.keyframes.isEmpty() || movie.keyframes.getFirst().frame() != 0) {
+                throw new IllegalArgumentException("Movie has no keyframe to start from: " + file);
+            }
+            return movie;
+        }
+    }
+
+    private void checkRom(Bus nes) {
+        int hash = nes.getCartridge().getRomHash();
+        if (hash != romHash) {
+            throw new IllegalArgumentException("Movie is for rom %08X, this one is %08X".formatted(romHash, hash));
+        }
+    }
+
+    private int hash(ByteBuffer saved) {
+        crc.reset();
+        crc.update(saved.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private byte[] deflate(ByteBuffer saved) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(saved.duplicate());
+            deflater.finish();
+            byte[] out = new byte[saved.remaining() + 1024]; // stored blocks if it doesn't compress at all
+            int size = deflater.deflate(out);
+            if (!deflater.finished()) {
+                throw new IllegalStateException("Keyframe didn't fit in " + out.length + " bytes");
+            }
+            return Arrays.copyOf(out, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] deflated) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            byte[] out = new byte[SaveState.CAPACITY];
+            int size = inflater.inflate(out);
+            return Arrays.copyOf(out, size);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted keyframe in movie", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
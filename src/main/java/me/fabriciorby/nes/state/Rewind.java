@@ -0,0 +1,168 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// Save states taken every few frames, newest last, going back as far as the memory budget allows.
+// Most of a state doesn't change from one frame to the next, so only every keyframeInterval-th snapshot is kept
+// whole. The ones in between are XORed against their keyframe and stored as runs: a count of unchanged bytes,
+// a count of changed ones, then the changed bytes themselves. Counts are varints, 7 bits per byte.
+// When over budget the oldest keyframe goes, together with every delta that depends on it.
+public class Rewind {
+
+    private record Snapshot(byte[] data, byte[] keyframe, int sinceKeyframe) {
+        boolean isKeyframe() {
+            return data == keyframe;
+        }
+    }
+
+    private final int interval;
+    private final int keyframeInterval;
+    private final long budget;
+
+    private final ArrayDeque<Snapshot> snapshots = new ArrayDeque<>();
+    private final SaveState saveState = new SaveState();
+    private byte[] state = new byte[0];
+    private byte[] delta = new byte[0];
+    private long memoryUsed;
+    private int frames;
+    private int wait;
+
+    public Rewind(int interval, int keyframeInterval, long budget) {
+        if (interval < 1 || keyframeInterval < 1) {
+            throw new IllegalArgumentException("Intervals have to be at least 1 frame");
+        }
+        this.interval = interval;
+        this.keyframeInterval = keyframeInterval;
+        this.budget = budget;
+    }
+
+    // Call once after every frame, only every interval-th one is kept
+    public void capture(Bus nes) {
+        if (++frames < interval) return;
+        frames = 0;
+
+        ByteBuffer saved = saveState.save(nes);
+        int length = saved.remaining();
+        if (state.length < length) {
+            state = new byte[length];
+            delta = new byte[2 * length + 16]; // runs of single bytes, the worst case
+        }
+        saved.get(state, 0, length);
+
+        Snapshot last = snapshots.peekLast();
+        Snapshot snapshot = null;
+        if (last != null && last.sinceKeyframe() + 1 < keyframeInterval && last.keyframe().length == length) {
+            int size = encode(state, last.keyframe(), length, delta);
+            if (size < length) {
+                snapshot = new Snapshot(Arrays.copyOf(delta, size), last.keyframe(), last.sinceKeyframe() + 1);
+            }
+        }
+        if (snapshot == null) {
+            byte[] keyframe = Arrays.copyOf(state, length);
+            snapshot = new Snapshot(keyframe, keyframe, 0);
+        }
+        snapshots.addLast(snapshot);
+        memoryUsed += snapshot.data().length;
+
+        while (memoryUsed > budget && snapshots.size() > 1) {
+            memoryUsed -= snapshots.removeFirst().data().length;
+            while (!snapshots.isEmpty() && !snapshots.peekFirst().isKeyframe()) {
+                memoryUsed -= snapshots.removeFirst().data().length;
+            }
+        }
+    }
+
+    // Call once per frame while going backwards: every interval frames the machine jumps to the previous snapshot,
+    // so history plays back at the speed it was recorded. False once there's nothing left to go back to.
+    public boolean rewind(Bus nes) {
+        if (snapshots.isEmpty()) return false;
+        if (--wait > 0) return true;
+        wait = interval;
+        frames = 0;
+
+        Snapshot snapshot = snapshots.removeLast();
+        memoryUsed -= snapshot.data().length;
+        byte[] keyframe = snapshot.keyframe();
+        if (snapshot.isKeyframe()) {
+            SaveState.load(nes, ByteBuffer.wrap(keyframe));
+        } else {
+            if (state.length < keyframe.length) state = new byte[keyframe.length];
+            decode(snapshot.data(), keyframe, state);
+            SaveState.load(nes, ByteBuffer.wrap(state, 0, keyframe.length));
+        }
+        return true;
+    }
+
+    public void clear() {
+        snapshots.clear();
+        memoryUsed = 0;
+        frames = 0;
+        wait = 0;
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    public long memoryUsed() {
+        return memoryUsed;
+    }
+
+    static int encode(byte[] state, byte[] keyframe, int length, byte[] out) {
+        int size = 0;
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            while (i < length && state[i] == keyframe[i]) i++;
+            size = putVarint(out, size, i - start);
+            start = i;
+            while (i < length && state[i] != keyframe[i]) i++;
+            size = putVarint(out, size, i - start);
+            for (int j = start; j < i; j++) {
+                out[size++] = (byte) (state[j] ^ keyframe[j]);
+            }
+        }
+        return size;
+    }
+
+    static void decode(byte[] delta, byte[] keyframe, byte[] out) {
+        System.arraycopy(keyframe, 0, out, 0, keyframe.length);
+        int position = 0;
+        int i = 0;
+        while (i < delta.length) {
+            int same = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = delta[i++];
+                same |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            position += same;
+            int changed = 0;
+            shift = 0;
+            do {
+                b = delta[i++];
+                changed |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            for (int j = 0; j < changed; j++, position++) {
+                out[position] ^= delta[i++];
+            }
+        }
+    }
+
+    private static int putVarint(byte[] out, int size, int value) {
+        while (value >= 0x80) {
+            out[size++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[size++] = (byte) value;
+        return size;
+    }
+
+}
@@ -0,0 +1,50 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.apu.AudioSink;
+import me.fabriciorby.nes.ppu.Sprite;
+
+// Hides the frames a game takes to react to the controller. Every host frame runs the real frame, saves, runs
+// `frames` more on the same input, keeps that last picture and loads the save back: the machine only ever moves
+// one frame, but the screen shows where it will be if the input doesn't change.
+// A host frame costs frames + 1 emulated frames plus a save and a load, see SaveState.
+public class RunAhead {
+
+    private final SaveState saveState = new SaveState();
+    private final Sprite ahead = new Sprite(256, 240);
+    private int frames;
+
+    public RunAhead(int frames) {
+        setFrames(frames);
+    }
+
+    public void frame(Bus nes) {
+        nes.frame();
+        if (frames == 0) return;
+
+        saveState.save(nes);
+        // frames that get thrown away aren't heard either
+        AudioSink sink = nes.apu.getSink();
+        nes.apu.setSink(AudioSink.NONE);
+        for (int i = 0; i < frames; i++) {
+            nes.frame();
+        }
+        ahead.copyFrom(nes.ppu.getScreen());
+        saveState.load(nes);
+        nes.apu.setSink(sink);
+        // The picture isn't machine state, the next frame draws over all of it anyway
+        nes.ppu.getScreen().copyFrom(ahead);
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public final void setFrames(int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("Can't run " + frames + " frames ahead");
+        }
+        this.frames = frames;
+    }
+
+}
@@ -0,0 +1,73 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.*;
+
+// A snapshot of a whole Bus: magic, format version, then whatever Bus.saveState() writes, every component its own
+// fields in a fixed order. It's a few bulk copies of RAM and a few dozen registers, so a save or a load is well
+// under a millisecond and the same buffer is reused every time.
+// Bump VERSION whenever a component changes what it writes, older states are refused instead of misread.
+public class SaveState {
+
+    private static final int MAGIC = 0x4E455353; // "NESS"
+    public static final short VERSION = 2;
+    static final int CAPACITY = 128 * 1024;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CAPACITY);
+    private int length; // of the last save, 0 before the first one
+
+    // The buffer is reused, its content only lasts until the next save
+    public ByteBuffer save(Bus nes) {
+        buffer.clear();
+        buffer.putInt(MAGIC).putShort(VERSION);
+        nes.saveState(buffer);
+        buffer.flip();
+        length = buffer.limit();
+        return buffer;
+    }
+
+    // Back to the last save
+    public void load(Bus nes) {
+        load(nes, saved());
+    }
+
+    public static void load(Bus nes, ByteBuffer state) {
+        ByteBuffer in = state.duplicate().rewind();
+        if (in.remaining() < 6 || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a save state");
+        }
+        short version = in.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Save state version " + version + ", this build reads " + VERSION);
+        }
+        nes.loadState(in);
+    }
+
+    // The last save, through a memory-mapped file so it's one copy into the page cache
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            channel.map(READ_WRITE, 0, length).put(saved());
+        }
+    }
+
+    // Whatever the caller did with the buffer save() returned, the last save is its first length bytes
+    private ByteBuffer saved() {
+        if (length == 0) throw new IllegalStateException("Nothing saved yet");
+        return buffer.duplicate().clear().limit(length);
+    }
+
+    public static ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return channel.map(READ_ONLY, 0, channel.size());
+        }
+    }
+
+}
@@ -2,11 +2,23 @@ package me.fabriciorby.nes;
 
 import me.fabriciorby.nes.cartridge.Cartridge;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
 import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 class BusTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void nesTest() {
 
@@ -19,4 +31,146 @@ class BusTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void instructionModeMatchesDotMode() {
+        Bus dot = boot(Bus.Mode.DOT);
+        Bus instruction = boot(Bus.Mode.INSTRUCTION);
+
+        for (int frame = 0; frame < 120; frame++) {
+            byte input = (byte) (frame >= 30 && frame < 34 ? 0x10 : 0x00); // START runs the test suite
+            dot.controller[0] = input;
+            instruction.controller[0] = input;
+            dot.frame();
+            instruction.frame();
+
+            assertEquals(dot.clockCounter, instruction.clockCounter);
+            assertEquals(dot.cpu.clockCount, instruction.cpu.clockCount);
+            assertEquals(dot.cpu.programCounter, instruction.cpu.programCounter);
+            assertArrayEquals(dot.cpuRam, instruction.cpuRam);
+            assertArrayEquals(dot.ppu.getScreen().getIndices(), instruction.ppu.getScreen().getIndices());
+        }
+    }
+
+    // Only the picture is pinned: an NMI raised while a block runs is taken when the block ends, so from frame 3 on
+    // it pushes a different return address ($01FC first, more of the stack and a few of nestest's variables like
+    // $0000 later) and cpuRam, clock counts and the program counter between frames don't match the instruction mode.
+    @Test
+    void recompiledModeDrawsTheSameFrames() {
+        Bus instruction = boot(Bus.Mode.INSTRUCTION);
+        Bus recompiled = boot(Bus.Mode.RECOMPILED);
+
+        for (int frame = 0; frame < 300; frame++) {
+            byte input = (byte) (frame >= 30 && frame < 34 ? 0x10 : 0x00); // START runs the test suite
+            instruction.controller[0] = input;
+            recompiled.controller[0] = input;
+            instruction.frame();
+            recompiled.frame();
+
+            assertArrayEquals(instruction.ppu.getScreen().getIndices(), recompiled.ppu.getScreen().getIndices(),
+                    "frame " + frame);
+        }
+        assertTrue(recompiled.cpu.getRecompiler().compiledCount() > 0);
+    }
+
+    @Test
+    void pageTableMapsCpuAddressSpace() {
+        Bus nes = boot(Bus.Mode.DOT);
+        Cartridge cartridge = new Cartridge("nestest.nes");
+
+        nes.cpuWrite(0x0012, 0x34);
+        assertEquals(0x34, nes.cpuRead(0x0812));
+        assertEquals(0x34, nes.cpuRead(0x1812));
+        // nestest has a single 16KB PRG bank, mirrored at $C000
+        assertEquals(Byte.toUnsignedInt(cartridge.getPRG()[0x3FFC]), nes.cpuRead(0xBFFC));
+        assertEquals(Byte.toUnsignedInt(cartridge.getPRG()[0x3FFC]), nes.cpuRead(0xFFFC));
+        assertEquals(0x00, nes.cpuRead(0x5000));
+    }
+
+    @Test
+    void liveInputIsSampledOnStrobe() {
+        Bus nes = boot(Bus.Mode.DOT);
+        Controller controller = new Controller();
+        nes.setInput(0, controller);
+
+        controller.set(Controller.Key.START, true);
+        controller.set(Controller.Key.A, true);
+        nes.cpuWrite(0x4016, 1);
+        nes.cpuWrite(0x4016, 0);
+        controller.set(Controller.Key.A, false); // too late, already latched
+
+        nes.cpuRead(0x4016, true); // peeking doesn't shift the port
+        nes.cpuRead(0x4016, true);
+        int[] bits = IntStream.range(0, 8).map(i -> nes.cpuRead(0x4016)).toArray();
+        assertArrayEquals(new int[]{0, 1, 0, 1, 0, 0, 0, 0}, bits); // bit 7 first: B, A, SELECT, START, UP, DOWN, LEFT, RIGHT
+        assertEquals(0x50, nes.controller[0]);
+
+        nes.setInput(0, null);
+        nes.controller[0] = (byte) 0x80;
+        nes.cpuWrite(0x4016, 1);
+        assertEquals(1, nes.cpuRead(0x4016));
+    }
+
+    // Blocks translated from the bank a game switched in can't outlive a reset that brings bank 0 back
+    @Test
+    void resetDropsBlocksOfTheSwitchedBank() throws IOException {
+        // bank 0: INC $02 ; JMP $8000, bank 1: INC $01 ; JMP $8000, fixed at $C000: JMP $8000
+        Bus nes = uxrom("E6 02 4C 00 80", "E6 01 4C 00 80", "4C 00 80");
+        nes.cpuWrite(0x8000, 1);
+        nes.frame();
+        assertTrue(nes.cpu.getRecompiler().compiledCount() > 0);
+        assertTrue(nes.cpuRam[0x01] > 0);
+
+        nes.reset();
+        int bankOneLoops = nes.cpuRam[0x01];
+        nes.frame();
+        assertEquals(bankOneLoops, nes.cpuRam[0x01]);
+        assertTrue(nes.cpuRam[0x02] > 0);
+    }
+
+    // A write that selects the bank already there changes nothing, a switch only drops the blocks of its window
+    @Test
+    void bankSwitchKeepsBlocksOutsideTheWindow() throws IOException {
+        // fixed at $C000: INC $01 ; JMP $C000
+        Bus nes = uxrom("", "", "E6 01 4C 00 C0");
+        nes.frame();
+        int compiled = nes.cpu.getRecompiler().compiledCount();
+        assertTrue(compiled > 0);
+
+        nes.cpuWrite(0x8000, 0);
+        assertEquals(compiled, nes.cpu.getRecompiler().compiledCount());
+        nes.cpuWrite(0x8000, 2);
+        assertEquals(compiled, nes.cpu.getRecompiler().compiledCount());
+    }
+
+    // 4 banks of UxROM in RECOMPILED mode, reset into the fixed bank at $C000
+    private Bus uxrom(String bank0, String bank1, String fixed) throws IOException {
+        byte[] rom = new byte[16 + 4 * 16384];
+        System.arraycopy(new byte[]{'N', 'E', 'S', 0x1A, 4, 0, 0x20}, 0, rom, 0, 7);
+        loadPrg(rom, 0, 0x0000, bank0);
+        loadPrg(rom, 1, 0x0000, bank1);
+        loadPrg(rom, 3, 0x0000, fixed);
+        loadPrg(rom, 3, 0x3FFC, "00 C0");
+        Path file = tempDir.resolve("uxrom.nes");
+        Files.write(file, rom);
+
+        Bus nes = new Bus();
+        nes.setMode(Bus.Mode.RECOMPILED);
+        nes.insert(new Cartridge(file.toString()));
+        nes.reset();
+        return nes;
+    }
+
+    private static void loadPrg(byte[] rom, int bank, int offset, String bytes) {
+        byte[] code = HexFormat.ofDelimiter(" ").parseHex(bytes);
+        System.arraycopy(code, 0, rom, 16 + bank * 16384 + offset, code.length);
+    }
+
+    private static Bus boot(Bus.Mode mode) {
+        Bus nes = new Bus();
+        nes.setMode(mode);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        return nes;
+    }
+
+}
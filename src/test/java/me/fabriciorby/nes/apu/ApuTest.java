@@ -0,0 +1,87 @@
+package me.fabriciorby.nes.apu;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApuTest {
+
+    @Test
+    void lengthCountersShowInStatus() {
+        Apu apu = new Apu();
+        apu.cpuWrite(0x4003, 0x08); // disabled channels ignore the length
+        assertEquals(0x00, apu.readStatus(false));
+
+        apu.cpuWrite(0x4015, 0x0F);
+        apu.cpuWrite(0x4003, 0x08); // index 1, 254
+        apu.cpuWrite(0x400B, 0x18); // index 3, 2
+        assertEquals(0x05, apu.readStatus(false));
+
+        // two half frames run the triangle's out
+        for (int i = 0; i < 29830; i++) apu.clock();
+        assertEquals(0x01, apu.readStatus(false) & 0x0F);
+
+        apu.cpuWrite(0x4015, 0x00);
+        assertEquals(0x00, apu.readStatus(false) & 0x0F);
+    }
+
+    @Test
+    void frameIrq() {
+        Apu apu = new Apu();
+        for (int i = 0; i < 29827; i++) apu.clock();
+        assertFalse(apu.irq());
+        apu.clock();
+        assertTrue(apu.irq());
+
+        assertEquals(0x40, apu.readStatus(true));
+        assertTrue(apu.irq());
+        assertEquals(0x40, apu.readStatus(false));
+        assertFalse(apu.irq());
+
+        apu.cpuWrite(0x4017, 0x40); // inhibited
+        for (int i = 0; i < 2 * 29830; i++) apu.clock();
+        assertFalse(apu.irq());
+
+        apu.cpuWrite(0x4017, 0x80); // 5 step mode never raises it
+        for (int i = 0; i < 2 * 37282; i++) apu.clock();
+        assertFalse(apu.irq());
+    }
+
+    @Test
+    void writesWav(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("pulse.wav");
+        Apu apu = new Apu();
+        try (WavSink sink = new WavSink(file, 44100)) {
+            apu.setSink(sink);
+            apu.cpuWrite(0x4015, 0x01);
+            apu.cpuWrite(0x4000, 0xBF); // 50% duty, constant volume 15
+            apu.cpuWrite(0x4002, 0xFD); // about 440Hz
+            apu.cpuWrite(0x4003, 0x08);
+            for (int i = 0; i < Apu.CPU_RATE / 10; i++) apu.clock();
+            apu.endFrame();
+        }
+
+        ByteBuffer wav = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x46464952, wav.getInt(0)); // "RIFF"
+        assertEquals(44100, wav.getInt(24));
+        int dataBytes = wav.getInt(40);
+        assertEquals(wav.capacity() - 44, dataBytes);
+        assertEquals(4410, dataBytes / 2, 1);
+
+        // a square wave swings both ways once the high passes settle
+        short min = 0, max = 0;
+        for (int i = 44 + 2000; i < wav.capacity(); i += 2) {
+            min = (short) Math.min(min, wav.getShort(i));
+            max = (short) Math.max(max, wav.getShort(i));
+        }
+        assertTrue(min < -1000 && max > 1000, min + " " + max);
+    }
+
+}
@@ -0,0 +1,55 @@
+package me.fabriciorby.nes.apu;
+
+import me.fabriciorby.nes.emulation.FramePacer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioOutputTest {
+
+    @Test
+    void followsAFastDevice() throws InterruptedException {
+        AudioOutput.Stats stats = play(1.003);
+        assertEquals(0.003, stats.drift(), 0.0003, stats.toString());
+    }
+
+    @Test
+    void followsASlowDevice() throws InterruptedException {
+        AudioOutput.Stats stats = play(0.997);
+        assertEquals(-0.003, stats.drift(), 0.0003, stats.toString());
+    }
+
+    // A minute of a 440Hz tone at the NTSC frame rate into a device whose clock is off by `drift`, in simulated time
+    private static AudioOutput.Stats play(double drift) throws InterruptedException {
+        int rate = 44100;
+        FakeAudioDevice device = new FakeAudioDevice(rate, rate * drift, 256);
+        AudioOutput output = new AudioOutput(device, 0.040);
+        float[] frame = new float[1024];
+        double samplesPerFrame = rate / FramePacer.NTSC_FPS;
+        long period = new FramePacer(FramePacer.NTSC_FPS).getPeriod();
+        double owed = 0;
+        long sample = 0;
+        try {
+            for (int i = 0; i < 3600; i++) {
+                owed += samplesPerFrame;
+                int count = (int) owed;
+                owed -= count;
+                for (int j = 0; j < count; j++, sample++) {
+                    frame[j] = (float) Math.sin(2 * Math.PI * 440 * sample / rate) / 2;
+                }
+                output.write(frame, count);
+                device.advance(period);
+                device.awaitIdle();
+            }
+            AudioOutput.Stats stats = output.getStats();
+            assertTrue(stats.target() + rate / 60 + 256 <= rate * 0.040, "latency over budget: " + stats);
+            assertEquals(stats.target(), stats.fill(), stats.target() / 4.0, stats.toString());
+            assertEquals(0, stats.underruns(), stats.toString());
+            assertEquals(0, stats.overruns(), stats.toString());
+            return stats;
+        } finally {
+            output.close();
+        }
+    }
+
+}
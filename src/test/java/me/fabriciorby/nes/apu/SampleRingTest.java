@@ -0,0 +1,32 @@
+package me.fabriciorby.nes.apu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleRingTest {
+
+    @Test
+    void wrapsAroundAndStopsWhenFull() {
+        SampleRing ring = new SampleRing(8);
+        float[] in = {1, 2, 3, 4, 5, 6};
+        float[] out = new float[8];
+
+        assertEquals(6, ring.offer(in, 0, 6));
+        assertEquals(4, ring.poll(out, 0, 4));
+        assertArrayEquals(new float[]{1, 2, 3, 4}, java.util.Arrays.copyOf(out, 4));
+
+        assertEquals(6, ring.offer(in, 0, 6)); // wraps
+        assertEquals(0, ring.offer(in, 0, 1)); // full
+        assertEquals(8, ring.size());
+        assertEquals(8, ring.poll(out, 0, 10));
+        assertArrayEquals(new float[]{5, 6, 1, 2, 3, 4, 5, 6}, out);
+        assertEquals(0, ring.poll(out, 0, 1));
+    }
+
+    @Test
+    void rejectsOtherCapacities() {
+        assertThrows(IllegalArgumentException.class, () -> new SampleRing(1000));
+    }
+
+}
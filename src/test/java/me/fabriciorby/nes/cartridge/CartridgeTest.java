@@ -1,7 +1,14 @@
 package me.fabriciorby.nes.cartridge;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static me.fabriciorby.nes.utils.ByteUtils.flipByte;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class CartridgeTest {
@@ -14,4 +21,55 @@ class CartridgeTest {
         System.out.println(cartridge.header);
     }
 
-}
\ No newline at end of file
+    @Test
+    void readsMapperAndBanksFromHeader(@TempDir Path tempDir) throws IOException {
+        assertHeader(tempDir, 1, 8, 0);
+        assertHeader(tempDir, 2, 8, 0);
+        assertHeader(tempDir, 3, 2, 4);
+        assertHeader(tempDir, 7, 8, 0);
+    }
+
+    @Test
+    void patternRowsMatchChr() {
+        Cartridge cartridge = new Cartridge("nestest.nes");
+        for (int address = 0; address < 0x2000; address++) {
+            if ((address & 0x08) != 0) continue;
+            int lo = cartridge.ppuRead(address);
+            int hi = cartridge.ppuRead(address + 8);
+            assertEquals(hi << 8 | lo, cartridge.patternRow(address, false));
+            assertEquals(flipByte(hi) << 8 | flipByte(lo), cartridge.patternRow(address, true));
+        }
+    }
+
+    @Test
+    void chrRamWriteRedecodesRow(@TempDir Path tempDir) throws IOException {
+        byte[] rom = new byte[16 + 16384];
+        System.arraycopy(new byte[]{'N', 'E', 'S', 0x1A, 1, 0}, 0, rom, 0, 6);
+        Path file = tempDir.resolve("chrram.nes");
+        Files.write(file, rom);
+        Cartridge cartridge = new Cartridge(file.toString());
+
+        assertEquals(0x0000, cartridge.patternRow(0x0123, false));
+        cartridge.ppuWrite(0x0123, 0x81);
+        cartridge.ppuWrite(0x012B, 0x0F);
+        assertEquals(0x0F81, cartridge.patternRow(0x0123, false));
+        assertEquals(0xF081, cartridge.patternRow(0x012B, true));
+    }
+
+    private static void assertHeader(Path tempDir, int mapperId, int prgBanks, int chrBanks) throws IOException {
+        byte[] rom = new byte[16 + prgBanks * 16384 + Math.max(chrBanks, 1) * 8192];
+        System.arraycopy(new byte[]{'N', 'E', 'S', 0x1A, (byte) prgBanks, (byte) chrBanks,
+                (byte) ((mapperId & 0x0F) << 4), (byte) (mapperId & 0xF0)}, 0, rom, 0, 8);
+        // whatever follows PRG on a CHR RAM board isn't CHR, the RAM has to start out zeroed
+        Arrays.fill(rom, 16 + prgBanks * 16384, rom.length, (byte) 0xFF);
+        Path file = tempDir.resolve("mapper" + mapperId + ".nes");
+        Files.write(file, rom);
+
+        Cartridge cartridge = new Cartridge(file.toString());
+        assertEquals(mapperId, cartridge.mapperId);
+        assertEquals(prgBanks, cartridge.PRGBanks);
+        assertEquals(chrBanks, cartridge.CHRBanks);
+        assertEquals(chrBanks == 0 ? 0x00 : 0xFF, cartridge.ppuRead(0x0000));
+    }
+
+}
@@ -0,0 +1,38 @@
+package me.fabriciorby.nes.cpu;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CpuSnapshotTest {
+
+    @Test
+    void debuggerShowsTheSameFromASnapshot() {
+        Bus nes = new Bus();
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        for (int i = 0; i < 50; i++) nes.step();
+
+        CpuSnapshot snapshot = new CpuSnapshot(13, 18);
+        snapshot.capture(nes.cpu);
+        Debugger live = new Debugger(nes.cpu);
+        Debugger copied = new Debugger(snapshot);
+        assertEquals(live.getCurrentInstruction(), copied.getCurrentInstruction());
+        assertEquals(live.getFlags(), copied.getFlags());
+        assertEquals(live.getStackPointer(), copied.getStackPointer());
+        for (int address = nes.cpu.programCounter - 13; address < nes.cpu.programCounter + 16; address++) {
+            assertEquals(live.getInstruction(address), copied.getInstruction(address));
+        }
+
+        CpuSnapshot shown = new CpuSnapshot(13, 18);
+        assertFalse(shown.sameAs(snapshot));
+        shown.copyFrom(snapshot);
+        assertTrue(shown.sameAs(snapshot));
+        nes.step();
+        snapshot.capture(nes.cpu);
+        assertFalse(shown.sameAs(snapshot));
+    }
+
+}
@@ -0,0 +1,203 @@
+package me.fabriciorby.nes.cpu;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import me.fabriciorby.nes.state.SaveState;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NestestLogTest {
+
+    @Test
+    void formatsEveryAddressingMode() {
+        Bus bus = flatBus();
+        bus.cpu.xRegister = 0x02;
+        bus.cpu.yRegister = 0x03;
+        poke(bus, 0x0035, "AA");
+        poke(bus, 0x0082, "00 02");
+        poke(bus, 0x0089, "00 03");
+        poke(bus, 0x0200, "DB");
+        poke(bus, 0x02FF, "7E");
+        poke(bus, 0x0302, "11");
+        poke(bus, 0x0303, "89");
+
+        assertEquals("0600  A9 01     LDA #$01", disassemble(bus, "A9 01"));
+        assertEquals("0600  A5 35     LDA $35 = AA", disassemble(bus, "A5 35"));
+        assertEquals("0600  B5 33     LDA $33,X @ 35 = AA", disassemble(bus, "B5 33"));
+        assertEquals("0600  B6 32     LDX $32,Y @ 35 = AA", disassemble(bus, "B6 32"));
+        assertEquals("0600  8D 00 02  STA $0200 = DB", disassemble(bus, "8D 00 02"));
+        assertEquals("0600  BD 00 03  LDA $0300,X @ 0302 = 11", disassemble(bus, "BD 00 03"));
+        assertEquals("0600  B9 00 03  LDA $0300,Y @ 0303 = 89", disassemble(bus, "B9 00 03"));
+        assertEquals("0600  6C FF 02  JMP ($02FF) = DB7E", disassemble(bus, "6C FF 02"));
+        assertEquals("0600  A1 80     LDA ($80,X) @ 82 = 0200 = DB", disassemble(bus, "A1 80"));
+        assertEquals("0600  B1 89     LDA ($89),Y = 0300 @ 0303 = 89", disassemble(bus, "B1 89"));
+        assertEquals("0600  20 2D C7  JSR $C72D", disassemble(bus, "20 2D C7"));
+        assertEquals("0600  F0 FE     BEQ $0600", disassemble(bus, "F0 FE"));
+        assertEquals("0600  4A        LSR A", disassemble(bus, "4A"));
+        assertEquals("0600  EA        NOP", disassemble(bus, "EA"));
+        assertEquals("0600  04       *NOP", disassemble(bus, "04"));
+    }
+
+    @Test
+    void formatsRegistersAndTiming() {
+        Bus bus = flatBus();
+        poke(bus, 0xC72F, "B0 04");
+        bus.cpu.statusRegister = 0x27;
+        bus.cpu.stackPointer = 0xFB;
+        bus.cpu.clockCount = 31;
+        assertEquals("C72F  B0 04     BCS $C735                       A:00 X:00 Y:00 P:27 SP:FB PPU:  0, 93 CYC:31\n",
+                log(bus, 0xC72F));
+
+        bus.cpu.clockCount = 27000;
+        assertTrue(log(bus, 0xC72F).endsWith("PPU:237,183 CYC:27000\n"));
+    }
+
+    @Test
+    void stopsAtTheFirstDivergence() {
+        Bus bus = flatBus();
+        poke(bus, 0x8000, "A2 01 A0 02 A9 03 EA EA EA");
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        NestestLog log = new NestestLog(reference);
+        bus.cpu.setHook(log);
+        for (int i = 0; i < 6; i++) instruction(bus.cpu);
+        String[] lines = reference.toString(StandardCharsets.US_ASCII).split("\n");
+
+        // the golden log is the same run with CRLF line endings and line 3 changed
+        String changed = lines[2].replace("A:00", "A:42");
+        String golden = String.join("\r\n", lines[0], lines[1], changed, lines[3]) + "\r\n";
+        NestestLog checked = replay(golden);
+        assertTrue(checked.done());
+        assertEquals(3, checked.lines());
+        assertEquals(new NestestLog.Divergence(3, changed, lines[2]), checked.divergence());
+
+        NestestLog matching = replay(String.join("\r\n", lines[0], lines[1]) + "\r\n");
+        assertTrue(matching.done());
+        assertEquals(2, matching.lines());
+        assertNull(matching.divergence());
+    }
+
+    @Test
+    void doesNotAllocatePerLine() {
+        Bus bus = flatBus();
+        poke(bus, 0x8000, "A1 80 B1 89 6C FF 02");
+        NestestLog log = new NestestLog(OutputStream.nullOutputStream());
+        for (int i = 0; i < 20_000; i++) log.accept(bus.cpu, 0x8000 + 2 * (i % 3), bus.cpu.peek(0x8000 + 2 * (i % 3)));
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 20_000; i++) log.accept(bus.cpu, 0x8000 + 2 * (i % 3), bus.cpu.peek(0x8000 + 2 * (i % 3)));
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated < 20_000, "allocated " + allocated + " bytes for 20000 lines");
+    }
+
+    /*
+        *=$0200
+        LDA $2002   ;vblank and the address latch
+        STA $10
+        LDA $2007   ;the read buffer and the VRAM address
+        STA $11
+        LDA $4016   ;the controller shift register
+        STA $12
+        LDA $2002
+        STA $13
+        LDA $4016
+        STA $14
+    */
+    String readsRegisters = "AD 02 20 85 10 AD 07 20 85 11 AD 16 40 85 12 AD 02 20 85 13 AD 16 40 85 14";
+
+    @Test
+    void tracingDoesNotChangeTheRun() {
+        Bus traced = registerReads();
+        Bus untraced = registerReads();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        traced.cpu.setHook(new NestestLog(out));
+        for (int i = 0; i < 10; i++) {
+            traced.step();
+            untraced.step();
+        }
+
+        assertTrue(out.toString(StandardCharsets.US_ASCII).contains("LDA $2002 = 80"));
+        assertEquals(0x80, untraced.cpuRam[0x10] & 0x80);
+        assertEquals(0x00, untraced.cpuRam[0x13] & 0x80);
+        assertEquals(new SaveState().save(untraced), new SaveState().save(traced));
+    }
+
+    // Sitting on vblank with NMIs off, B held and latched on player 1, about to run readsRegisters from RAM
+    private Bus registerReads() {
+        Bus nes = new Bus();
+        nes.setMode(Bus.Mode.INSTRUCTION);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        nes.cpuWrite(0x2000, 0x00);
+        while ((nes.cpuRead(0x2002, true) & 0x80) == 0 || !nes.cpu.complete()) nes.clock();
+        nes.cpuWrite(0x2000, 0x00);
+        nes.controller[0] = (byte) 0x80;
+        nes.cpuWrite(0x4016, 1);
+        poke(nes, 0x0200, readsRegisters);
+        nes.cpu.programCounter = 0x0200;
+        return nes;
+    }
+
+    private static NestestLog replay(String golden) {
+        Bus bus = flatBus();
+        poke(bus, 0x8000, "A2 01 A0 02 A9 03 EA EA EA");
+        NestestLog log = new NestestLog(OutputStream.nullOutputStream());
+        log.setGolden(golden.getBytes(StandardCharsets.US_ASCII));
+        bus.cpu.setHook(log);
+        for (int i = 0; i < 6; i++) instruction(bus.cpu);
+        return log;
+    }
+
+    private static String disassemble(Bus bus, String instruction) {
+        poke(bus, 0x0600, instruction);
+        return log(bus, 0x0600).substring(0, 48).stripTrailing();
+    }
+
+    private static String log(Bus bus, int address) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NestestLog(out).accept(bus.cpu, address, bus.cpu.peek(address));
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static void poke(Bus bus, int address, String bytes) {
+        byte[] parsed = HexFormat.ofDelimiter(" ").parseHex(bytes);
+        for (int i = 0; i < parsed.length; i++) {
+            bus.cpuRam[address + i] = Byte.toUnsignedInt(parsed[i]);
+        }
+    }
+
+    private static void instruction(Cpu cpu) {
+        do { cpu.clock(); } while (!cpu.complete());
+    }
+
+    private static Bus flatBus() {
+        Bus bus = new Bus() {
+            {
+                this.cpuRam = new int[0x10000];
+            }
+
+            @Override
+            public void cpuWrite(int address, int data) {
+                cpuRam[address] = data;
+            }
+
+            @Override
+            public int cpuRead(int address, boolean readOnly) {
+                return cpuRam[address];
+            }
+        };
+        bus.cpuRam[0xFFFC] = 0x00;
+        bus.cpuRam[0xFFFD] = 0x80;
+        bus.cpu.reset();
+        bus.cpu.skipCycles(bus.cpu.getCycles());
+        return bus;
+    }
+
+}
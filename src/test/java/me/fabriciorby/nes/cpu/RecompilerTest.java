@@ -0,0 +1,159 @@
+package me.fabriciorby.nes.cpu;
+
+import me.fabriciorby.nes.Bus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecompilerTest {
+
+    private final int RAM_SIZE = 0xFFFF + 1;
+
+    /*
+        *=$8000
+        LDX #200
+        LDA #0
+        CLC
+        loop
+        ADC #3
+        STA $0010,X
+        DEX
+        BNE loop
+        NOP
+        JMP *
+    */
+    String sumLoop = "A2 C8 A9 00 18 69 03 9D 10 00 CA D0 F8 EA 4C 0E 80";
+
+    private Bus interpreted;
+    private Bus recompiled;
+
+    @BeforeEach
+    void setup() {
+        interpreted = flatBus();
+        recompiled = flatBus();
+        recompiled.cpu.setRecompiler(true);
+    }
+
+    @Test
+    void sameStateAsInterpreter() {
+        load(interpreted, 0x8000, sumLoop);
+        load(recompiled, 0x8000, sumLoop);
+
+        while (interpreted.cpu.programCounter != 0x800E) instruction(interpreted.cpu);
+        while (recompiled.cpu.programCounter != 0x800E) {
+            if (recompiled.cpu.runBlock() == 0) instruction(recompiled.cpu);
+        }
+
+        assertTrue(recompiled.cpu.getRecompiler().isCompiled(0x8005));
+        assertEquals(interpreted.cpu.accumulator, recompiled.cpu.accumulator);
+        assertEquals(interpreted.cpu.xRegister, recompiled.cpu.xRegister);
+        assertEquals(interpreted.cpu.statusRegister, recompiled.cpu.statusRegister);
+        assertEquals(interpreted.cpu.clockCount, recompiled.cpu.clockCount);
+        assertArrayEquals(interpreted.cpuRam, recompiled.cpuRam);
+    }
+
+    @Test
+    void writeToCodeInvalidatesBlock() {
+        // INX ; JMP $0200
+        load(recompiled, 0x0200, "E8 4C 00 02");
+        recompiled.cpuRam[0xFFFC] = 0x00;
+        recompiled.cpuRam[0xFFFD] = 0x02;
+        recompiled.cpu.reset();
+        instruction(recompiled.cpu); // reset cycles
+        for (int i = 0; i < 2 * Recompiler.HOT_THRESHOLD; i++) {
+            if (recompiled.cpu.runBlock() == 0) instruction(recompiled.cpu);
+        }
+        assertTrue(recompiled.cpu.getRecompiler().isCompiled(0x0200));
+
+        recompiled.cpu.write(0x0200, 0xC8); // INX becomes INY
+        assertFalse(recompiled.cpu.getRecompiler().isCompiled(0x0200));
+
+        int x = recompiled.cpu.xRegister;
+        int y = recompiled.cpu.yRegister;
+        if (recompiled.cpu.runBlock() == 0) instruction(recompiled.cpu);
+        assertEquals(x, recompiled.cpu.xRegister);
+        assertEquals(y + 1, recompiled.cpu.yRegister);
+    }
+
+    @Test
+    void storeIntoRunningBlockLeavesIt() {
+        // LDA #$C8 ; STA ($10),Y ; INX ; JMP $0200, pointing $10 at the INX makes the store rewrite it to INY
+        load(recompiled, 0x0200, "A9 C8 91 10 E8 4C 00 02");
+        recompiled.cpuRam[0x0011] = 0x03;
+        recompiled.cpuRam[0xFFFC] = 0x00;
+        recompiled.cpuRam[0xFFFD] = 0x02;
+        recompiled.cpu.reset();
+        instruction(recompiled.cpu); // reset cycles
+        while (!recompiled.cpu.getRecompiler().isCompiled(0x0200) || recompiled.cpu.programCounter != 0x0200) {
+            if (recompiled.cpu.runBlock() == 0) instruction(recompiled.cpu);
+        }
+
+        recompiled.cpuRam[0x0010] = 0x04;
+        recompiled.cpuRam[0x0011] = 0x02;
+        int x = recompiled.cpu.xRegister;
+        int y = recompiled.cpu.yRegister;
+        assertTrue(recompiled.cpu.runBlock() > 0);
+        assertEquals(0x0204, recompiled.cpu.programCounter);
+        assertFalse(recompiled.cpu.getRecompiler().isCompiled(0x0200));
+
+        instruction(recompiled.cpu);
+        assertEquals(x, recompiled.cpu.xRegister);
+        assertEquals(y + 1, recompiled.cpu.yRegister);
+    }
+
+    @Test
+    void storeToDmaOrStrobeEndsBlock() {
+        // LDA #$02 ; STA/STX/STY $4014 or $4016 ; INX ; JMP $8000
+        for (String store : new String[]{"8D 14 40", "8E 16 40", "8C 14 40", "8D 16 40"}) {
+            Bus bus = flatBus();
+            bus.cpu.setRecompiler(true);
+            load(bus, 0x8000, "A9 02 " + store + " E8 4C 00 80");
+            instruction(bus.cpu); // reset cycles
+            while (!bus.cpu.getRecompiler().isCompiled(0x8000) || bus.cpu.programCounter != 0x8000) {
+                if (bus.cpu.runBlock() == 0) instruction(bus.cpu);
+            }
+
+            int x = bus.cpu.xRegister;
+            assertTrue(bus.cpu.runBlock() > 0, store);
+            assertEquals(0x8005, bus.cpu.programCounter, store);
+            assertEquals(x, bus.cpu.xRegister, store);
+        }
+    }
+
+    private static void instruction(Cpu cpu) {
+        do { cpu.clock(); } while (!cpu.complete());
+    }
+
+    private void load(Bus bus, int offset, String program) {
+        byte[] bytes = HexFormat.ofDelimiter(" ").parseHex(program);
+        for (int i = 0; i < bytes.length; i++) {
+            bus.cpuRam[offset + i] = Byte.toUnsignedInt(bytes[i]);
+        }
+    }
+
+    private Bus flatBus() {
+        Bus bus = new Bus() {
+            {
+                this.cpuRam = new int[RAM_SIZE];
+            }
+
+            @Override
+            public void cpuWrite(int address, int data) {
+                cpuRam[address] = data;
+            }
+
+            @Override
+            public int cpuRead(int address, boolean readOnly) {
+                return cpuRam[address];
+            }
+        };
+        bus.cpuRam[0xFFFC] = 0x00;
+        bus.cpuRam[0xFFFD] = 0x80;
+        bus.cpu.reset();
+        return bus;
+    }
+
+}
@@ -0,0 +1,79 @@
+package me.fabriciorby.nes.cpu;
+
+import me.fabriciorby.nes.Bus;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceBufferTest {
+
+    /*
+        *=$8000
+        LDX #1
+        LDY #2
+        LDA #3
+        NOP
+        NOP
+        NOP
+    */
+    String program = "A2 01 A0 02 A9 03 EA EA EA";
+
+    @Test
+    void keepsLastInstructionsOldestFirst() {
+        Bus bus = flatBus(program);
+        TraceBuffer trace = new TraceBuffer(4);
+        bus.cpu.setHook(trace);
+
+        for (int i = 0; i < 6; i++) instruction(bus.cpu);
+
+        assertEquals(6, trace.totalCount());
+        assertEquals(4, trace.size());
+        assertEquals(0x8004, trace.programCounter(0));
+        assertEquals(0xA9, trace.operationCode(0));
+        assertEquals(1, trace.xRegister(0));
+        assertEquals(2, trace.yRegister(0));
+        assertEquals(0, trace.accumulator(0)); // registers as the instruction found them
+        assertEquals(3, trace.accumulator(1));
+        assertEquals(0x8008, trace.programCounter(3));
+        assertTrue(trace.clockCount(0) < trace.clockCount(3));
+    }
+
+    @Test
+    void capacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TraceBuffer(1000));
+    }
+
+    private static void instruction(Cpu cpu) {
+        do { cpu.clock(); } while (!cpu.complete());
+    }
+
+    private static Bus flatBus(String program) {
+        Bus bus = new Bus() {
+            {
+                this.cpuRam = new int[0x10000];
+            }
+
+            @Override
+            public void cpuWrite(int address, int data) {
+                cpuRam[address] = data;
+            }
+
+            @Override
+            public int cpuRead(int address, boolean readOnly) {
+                return cpuRam[address];
+            }
+        };
+        byte[] bytes = HexFormat.ofDelimiter(" ").parseHex(program);
+        for (int i = 0; i < bytes.length; i++) {
+            bus.cpuRam[0x8000 + i] = Byte.toUnsignedInt(bytes[i]);
+        }
+        bus.cpuRam[0xFFFC] = 0x00;
+        bus.cpuRam[0xFFFD] = 0x80;
+        bus.cpu.reset();
+        instruction(bus.cpu); // reset cycles
+        return bus;
+    }
+
+}
@@ -0,0 +1,27 @@
+package me.fabriciorby.nes.emulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmulationThreadTest {
+
+    @Test
+    void failingFramePausesAndReports() throws Exception {
+        CompletableFuture<RuntimeException> error = new CompletableFuture<>();
+        IllegalStateException failure = new IllegalStateException("bad opcode");
+        EmulationThread emulation = new EmulationThread(new FramePacer(1000), () -> {
+            throw failure;
+        }, error::complete);
+        emulation.start();
+        emulation.setRunning(true);
+
+        assertSame(failure, error.get(5, TimeUnit.SECONDS));
+        assertFalse(emulation.isRunning());
+        emulation.stop();
+    }
+
+}
@@ -0,0 +1,38 @@
+package me.fabriciorby.nes.emulation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FramePacerTest {
+
+    @Test
+    void keepsTheRate() {
+        FramePacer pacer = new FramePacer(FramePacer.NTSC_FPS);
+        assertEquals(16_639_267, pacer.getPeriod());
+
+        pacer.restart();
+        for (int i = 0; i < 30; i++) {
+            pacer.await();
+        }
+        FramePacer.Stats stats = pacer.getStats();
+        assertEquals(30, stats.frames());
+        // loose, a shared CI machine can be late, but never early and never off by a whole frame on average
+        assertEquals(FramePacer.NTSC_FPS, stats.fps(), 3.0);
+        assertTrue(stats.meanLatenessMicros() >= 0);
+    }
+
+    @Test
+    void startsOverAfterFallingBehind() throws InterruptedException {
+        FramePacer pacer = new FramePacer(1000);
+        pacer.restart();
+        Thread.sleep(50); // 50 frames late
+        pacer.await();
+        long start = System.nanoTime();
+        pacer.await();
+        // the next frame is a period after the late one, not due straight away
+        assertTrue(System.nanoTime() - start >= 500_000);
+        assertEquals(1, pacer.getStats().overruns());
+    }
+
+}
@@ -0,0 +1,40 @@
+package me.fabriciorby.nes.emulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TripleBufferTest {
+
+    @Test
+    void consumerOnlySeesWholeNewerFrames() throws InterruptedException {
+        TripleBuffer<int[]> buffer = new TripleBuffer<>(() -> new int[4096]);
+        int frames = 20_000;
+
+        Thread producer = new Thread(() -> {
+            for (int frame = 1; frame <= frames; frame++) {
+                Arrays.fill(buffer.back(), frame);
+                buffer.publish();
+            }
+        });
+        producer.start();
+
+        int last = 0;
+        while (last < frames) {
+            if (!buffer.update()) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int[] front = buffer.front();
+            int frame = front[0];
+            assertTrue(frame > last, "went from frame " + last + " back to " + frame);
+            assertEquals(frame, front[front.length - 1], "torn frame");
+            last = frame;
+        }
+        producer.join();
+        assertFalse(buffer.update());
+    }
+
+}
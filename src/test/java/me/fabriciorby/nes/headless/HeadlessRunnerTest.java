@@ -0,0 +1,37 @@
+package me.fabriciorby.nes.headless;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeadlessRunnerTest {
+
+    @Test
+    void runInParallel() {
+        InputScript input = InputScript.parse(List.of("# press start for a few frames", "10 10", "14 00"));
+        HeadlessRunner.Report report = new HeadlessRunner(2).run(List.of(
+                new HeadlessRunner.Job("nestest.nes", 20),
+                new HeadlessRunner.Job("nestest.nes", 20, input)));
+
+        assertEquals(2, report.results().size());
+        assertEquals(40, report.frames());
+        assertTrue(report.fps() > 0);
+    }
+
+    @Test
+    void inputScript() {
+        InputScript input = InputScript.parse(List.of("0 00", "120 10 80  # START on player 1, B on player 2", "124 00"));
+
+        int index = input.advance(-1, 0);
+        assertEquals(0, input.player1(index));
+        index = input.advance(index, 121);
+        assertEquals(0x10, input.player1(index));
+        assertEquals((byte) 0x80, input.player2(index));
+        index = input.advance(index, 500);
+        assertEquals(0, input.player1(index));
+    }
+
+}
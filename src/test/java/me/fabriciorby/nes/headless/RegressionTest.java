@@ -0,0 +1,42 @@
+package me.fabriciorby.nes.headless;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.ppu.Ppu;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegressionTest {
+
+    @Test
+    void comparesWithTheBaseline(@TempDir Path roms) throws IOException {
+        Files.copy(Path.of("nestest.nes"), roms.resolve("idle.nes"));
+        Files.copy(Path.of("nestest.nes"), roms.resolve("tests.nes"));
+        Files.writeString(roms.resolve("tests.txt"), "30 10 # START runs the tests\n34 00\n");
+        Regression regression = new Regression(2, Bus.Mode.INSTRUCTION, Ppu.Renderer.SCANLINE, 10, false);
+
+        List<Regression.Outcome> first = regression.run(Regression.jobs(roms, 60));
+        assertEquals(List.of(Regression.Status.NEW, Regression.Status.NEW), first.stream().map(Regression.Outcome::status).toList());
+        assertTrue(Files.exists(roms.resolve("tests.hashes")));
+
+        List<Regression.Outcome> second = regression.run(Regression.jobs(roms, 60));
+        assertEquals(List.of(Regression.Status.PASS, Regression.Status.PASS), second.stream().map(Regression.Outcome::status).toList());
+        assertEquals(6, second.getFirst().samples());
+
+        // the input script changes what happens after frame 30, the idle baseline doesn't know about it
+        Files.copy(roms.resolve("idle.hashes"), roms.resolve("tests.hashes"), StandardCopyOption.REPLACE_EXISTING);
+        Regression.Outcome failed = regression.run(Regression.jobs(roms, 60)).getLast();
+        assertEquals(Regression.Status.FAIL, failed.status());
+        assertEquals(40, failed.firstFrame());
+        assertEquals(3, failed.mismatches());
+        assertEquals(failed.expected().frame(), failed.actual().frame());
+    }
+
+}
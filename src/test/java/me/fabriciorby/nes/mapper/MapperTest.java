@@ -0,0 +1,87 @@
+package me.fabriciorby.nes.mapper;
+
+import me.fabriciorby.nes.cartridge.Cartridge;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapperTest {
+
+    @Test
+    void nromMirrorsSingleBank() {
+        Mapper mapper = new Mapper000(1, 1);
+        assertArrayEquals(new int[]{0x0000, 0x2000, 0x0000, 0x2000}, mapper.prgOffsets);
+        assertEquals(0x1C00, mapper.chrOffsets[7]);
+    }
+
+    @Test
+    void mmc1LoadsRegistersSerially() {
+        Mapper mapper = new Mapper001(8, 4);
+        int[] switches = new int[1];
+        mapper.setBankListener(() -> switches[0]++);
+
+        // power on: last bank fixed at $C000
+        assertEquals(7 * 0x4000, mapper.prgOffsets[2]);
+
+        serialWrite(mapper, 0x8000, 0b10011); // 4KB CHR, PRG mode 0 (32KB), horizontal
+        assertEquals(Cartridge.Mirror.HORIZONTAL, mapper.getMirror());
+        serialWrite(mapper, 0xE000, 0b00101);
+        assertArrayEquals(new int[]{4 * 0x4000, 4 * 0x4000 + 0x2000, 5 * 0x4000, 5 * 0x4000 + 0x2000}, mapper.prgOffsets);
+        serialWrite(mapper, 0xC000, 3);
+        assertEquals(3 * 0x1000, mapper.chrOffsets[4]);
+        assertEquals(3, switches[0]);
+
+        // a reset bit in the middle drops the bits shifted so far
+        mapper.cpuWrite(0xE000, 1);
+        mapper.cpuWrite(0xE000, 0x80);
+        serialWrite(mapper, 0xE000, 2);
+        assertEquals(2 * 0x4000, mapper.prgOffsets[0]);
+        assertEquals(7 * 0x4000, mapper.prgOffsets[2]);
+    }
+
+    @Test
+    void uxromSwitchesLowBank() {
+        Mapper mapper = new Mapper002(8, 0);
+        mapper.cpuWrite(0x8000, 5);
+        assertEquals(5 * 0x4000, mapper.prgOffsets[0]);
+        assertEquals(7 * 0x4000 + 0x2000, mapper.prgOffsets[3]);
+    }
+
+    @Test
+    void cnromSwitchesChr() {
+        Mapper mapper = new Mapper003(2, 4);
+        mapper.cpuWrite(0x8000, 2);
+        assertEquals(2 * 0x2000, mapper.chrOffsets[0]);
+        assertEquals(2 * 0x2000 + 0x1C00, mapper.chrOffsets[7]);
+    }
+
+    @Test
+    void rewritingTheSameBankIsNotASwitch() {
+        Mapper mapper = new Mapper002(8, 0);
+        int[] switches = new int[1];
+        mapper.setBankListener(() -> switches[0]++);
+        mapper.cpuWrite(0x8000, 0);
+        mapper.reset();
+        assertEquals(0, switches[0]);
+        mapper.cpuWrite(0x8000, 3);
+        mapper.cpuWrite(0x8000, 3);
+        assertEquals(1, switches[0]);
+        mapper.reset();
+        assertEquals(2, switches[0]);
+    }
+
+    @Test
+    void axromSwitchesPrgAndScreen() {
+        Mapper mapper = new Mapper007(8, 0);
+        mapper.cpuWrite(0x8000, 0x12);
+        assertEquals(4 * 0x4000, mapper.prgOffsets[0]);
+        assertEquals(Cartridge.Mirror.ONESCREEN_HI, mapper.getMirror());
+    }
+
+    private static void serialWrite(Mapper mapper, int address, int value) {
+        for (int i = 0; i < 5; i++) {
+            mapper.cpuWrite(address, value >> i);
+        }
+    }
+
+}
@@ -12,20 +12,22 @@ class ObjectAttributeMemoryTest {
         OAM.setAddress(0);
         assertEquals(0, OAM.getData());
 
-        OAM.memoryEntries[1].id = 1;
+        OAM.setData(1, 4*1 + 1);
         OAM.setAddress(4*1 + 1);
         assertEquals(1, OAM.getData());
 
-        OAM.memoryEntries[2].attribute = 2;
+        OAM.setData(2, 4*2 + 2);
         OAM.setAddress(4*2 + 2);
         assertEquals(2, OAM.getData());
 
-        OAM.memoryEntries[2].x = 3;
+        OAM.setData(3, 4*2 + 3);
         OAM.setAddress(4*2 + 3);
         assertEquals(3, OAM.getData());
 
-        OAM.memoryEntries[63].x = 5;
+        OAM.setData(5, 4*63 + 3);
         OAM.setAddress(255);
         assertEquals(5, OAM.getData());
+        assertEquals(5, OAM.x(63));
+        assertEquals(2, OAM.attribute(2));
     }
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+package me.fabriciorby.nes.ppu;
+
+import me.fabriciorby.nes.cartridge.Cartridge;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PpuTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Random pattern tables, nametables, palettes, sprites and register writes at random dots, mid-line writes
+    // included: the scanline renderer has to end up exactly where the dot renderer does
+    @Test
+    void scanlineRendererMatchesDotRenderer() throws IOException {
+        for (int seed = 0; seed < 6; seed++) {
+            Random random = new Random(seed);
+            Cartridge cartridge = randomCartridge(random, seed);
+            Ppu dot = new Ppu();
+            Ppu scanline = new Ppu();
+            scanline.setRenderer(Ppu.Renderer.SCANLINE);
+            for (Ppu ppu : new Ppu[]{dot, scanline}) {
+                ppu.connect(cartridge);
+                ppu.reset();
+            }
+
+            long setupSeed = random.nextLong();
+            setup(dot, new Random(setupSeed));
+            setup(scanline, new Random(setupSeed));
+
+            for (int frame = 0; frame < 4; frame++) {
+                int[] writeDots = random.ints(40, 0, 89341).sorted().toArray();
+                int next = 0;
+                for (int clock = 0; clock < 89341; clock++) {
+                    dot.clock();
+                    scanline.clock();
+                    assertEquals(dot.nonMaskableInterrupt, scanline.nonMaskableInterrupt, "seed " + seed);
+                    assertEquals(dot.frameComplete, scanline.frameComplete, "seed " + seed);
+                    dot.nonMaskableInterrupt = scanline.nonMaskableInterrupt = false;
+                    while (next < writeDots.length && writeDots[next] == clock) {
+                        int register = random.nextInt(8);
+                        int data = random.nextInt(256);
+                        if (register == 2 || (register == 7 && random.nextBoolean())) {
+                            assertEquals(dot.cpuRead(register, false), scanline.cpuRead(register, false), "seed " + seed);
+                        } else {
+                            if (register == 1) data |= 0x18; // keep rendering on most of the time
+                            dot.cpuWrite(register, data);
+                            scanline.cpuWrite(register, data);
+                        }
+                        next++;
+                    }
+                }
+                assertTrue(scanline.frameComplete);
+                dot.frameComplete = scanline.frameComplete = false;
+
+                assertArrayEquals(dot.getScreen().getIndices(), scanline.getScreen().getIndices(), "seed " + seed);
+                assertEquals(dot.statusRegister.statusRegister, scanline.statusRegister.statusRegister, "seed " + seed);
+                assertEquals(dot.vRamAddress.loopyRegister, scanline.vRamAddress.loopyRegister, "seed " + seed);
+                assertEquals(dot.bgShifterPatternLo, scanline.bgShifterPatternLo, "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void patternTableRedrawsOnlyChangedTiles() throws IOException {
+        byte[] rom = new byte[16 + 16384];
+        System.arraycopy(new byte[]{'N', 'E', 'S', 0x1A, 1, 0}, 0, rom, 0, 6);
+        Path file = tempDir.resolve("chrram.nes");
+        Files.write(file, rom);
+        Cartridge cartridge = new Cartridge(file.toString());
+        Ppu ppu = new Ppu();
+        ppu.connect(cartridge);
+        ppu.cpuWrite(0x0006, 0x3F);
+        ppu.cpuWrite(0x0006, 0x00);
+        for (int colour : new int[]{0x0F, 0x16, 0x27, 0x30}) {
+            ppu.cpuWrite(0x0007, colour);
+        }
+
+        Sprite table = ppu.getPatternTable(0, 0);
+        int version = table.getVersion();
+        assertEquals(version, ppu.getPatternTable(0, 0).getVersion());
+
+        // tile 1, row 2: a low plane bit on the leftmost pixel, a high plane bit on the rightmost
+        ppu.ppuWrite(0x0012, 0x80);
+        ppu.ppuWrite(0x001A, 0x01);
+        assertNotEquals(version, ppu.getPatternTable(0, 0).getVersion());
+        assertEquals(0x27, table.getIndices()[2 * 128 + 8] & 0xFF);
+        assertEquals(0x16, table.getIndices()[2 * 128 + 15] & 0xFF);
+        assertEquals(0x0F, table.getIndices()[2 * 128 + 9] & 0xFF);
+
+        version = table.getVersion();
+        ppu.ppuWrite(0x3F02, 0x11);
+        assertNotEquals(version, ppu.getPatternTable(0, 0).getVersion());
+        assertEquals(0x11, table.getIndices()[2 * 128 + 8] & 0xFF);
+    }
+
+    @Test
+    void nametablesFollowMirroring() throws IOException {
+        // which of the four 1KB tables $2000, $2400, $2800 and $2C00 end up in
+        assertArrayEquals(new int[]{0, 0, 1, 1}, nametables(0x00, 0, -1));
+        assertArrayEquals(new int[]{0, 1, 0, 1}, nametables(0x01, 0, -1));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, nametables(0x08, 0, -1));
+        assertArrayEquals(new int[]{0, 0, 0, 0}, nametables(0x70, 0, 0x00));
+        assertArrayEquals(new int[]{1, 1, 1, 1}, nametables(0x70, 0, 0x10));
+    }
+
+    @Test
+    void peekingRegistersHasNoSideEffects() {
+        Ppu ppu = new Ppu();
+        ppu.connect(new Cartridge("nestest.nes"));
+        ppu.reset();
+        ppu.cpuWrite(0x0006, 0x20);
+        ppu.cpuWrite(0x0006, 0x00);
+        ppu.cpuWrite(0x0007, 0x12);
+        ppu.cpuWrite(0x0007, 0x34);
+        ppu.cpuWrite(0x0006, 0x20);
+        ppu.cpuWrite(0x0006, 0x00);
+        for (int clock = 0; clock < 89341 && (ppu.cpuRead(0x0002, true) & 0x80) == 0; clock++) ppu.clock();
+
+        // vblank survives any number of peeks, so does the VRAM address
+        assertEquals(0x80, ppu.cpuRead(0x0002, true) & 0x80);
+        assertEquals(0x80, ppu.cpuRead(0x0002, true) & 0x80);
+        ppu.cpuRead(0x0007, true);
+        ppu.cpuRead(0x0007, true);
+        ppu.cpuRead(0x0007, false); // fills the read buffer from $2000
+        assertEquals(0x12, ppu.cpuRead(0x0007, false));
+
+        assertEquals(0x80, ppu.cpuRead(0x0002, false) & 0x80);
+        assertEquals(0x00, ppu.cpuRead(0x0002, true) & 0x80);
+    }
+
+    // Both renderers set the overflow on the same dot of the line with the 9th sprite, and clear it on the
+    // pre-render line
+    @Test
+    void ninthSpriteOnALineSetsOverflow() {
+        int dot = overflowDot(Ppu.Renderer.DOT, 9);
+        assertTrue(dot > 0);
+        assertEquals(dot, overflowDot(Ppu.Renderer.SCANLINE, 9));
+        assertEquals(-1, overflowDot(Ppu.Renderer.DOT, 8));
+        assertEquals(-1, overflowDot(Ppu.Renderer.SCANLINE, 8));
+    }
+
+    // The first dot of the frame the flag shows up on, -1 if it never does
+    private static int overflowDot(Ppu.Renderer renderer, int sprites) {
+        Ppu ppu = new Ppu();
+        ppu.setRenderer(renderer);
+        ppu.connect(new Cartridge("nestest.nes"));
+        ppu.reset();
+        for (int i = 0; i < 64; i++) {
+            ppu.cpuWrite(0x0003, i * 4);
+            ppu.cpuWrite(0x0004, i < sprites ? 100 : 0xFF);
+        }
+        ppu.cpuWrite(0x0001, 0x18);
+
+        int first = -1;
+        for (int clock = 0; clock < 2 * 89342; clock++) {
+            ppu.clock();
+            boolean overflow = (ppu.cpuRead(0x0002, true) & 0x20) != 0;
+            if (overflow && first < 0) first = clock;
+            if (ppu.frameComplete) {
+                ppu.frameComplete = false;
+                if (first >= 0) {
+                    // the next frame's pre-render line clears it
+                    assertTrue(overflow);
+                    for (int i = 0; i < 341 * 22 && (ppu.cpuRead(0x0002, true) & 0x20) != 0; i++) ppu.clock();
+                    assertEquals(0, ppu.cpuRead(0x0002, true) & 0x20);
+                    return first;
+                }
+            }
+        }
+        return first;
+    }
+
+    private int[] nametables(int flags6, int flags7, int axromWrite) throws IOException {
+        byte[] rom = new byte[16 + 32768];
+        System.arraycopy(new byte[]{'N', 'E', 'S', 0x1A, 2, 0, (byte) flags6, (byte) flags7}, 0, rom, 0, 8);
+        Path file = tempDir.resolve("mirror" + flags6 + "_" + axromWrite + ".nes");
+        Files.write(file, rom);
+        Cartridge cartridge = new Cartridge(file.toString());
+        Ppu ppu = new Ppu();
+        ppu.connect(cartridge);
+        cartridge.setBankListener(ppu::mapPages);
+        if (axromWrite >= 0) cartridge.cpuWrite(0x8000, axromWrite);
+
+        for (int table = 0; table < 4; table++) {
+            ppu.ppuWrite(0x2000 + table * 0x400 + 0x55, 0x10 + table);
+        }
+        int[] tables = new int[4];
+        for (int table = 0; table < 4; table++) {
+            int data = ppu.ppuRead(0x3000 + table * 0x400 + 0x55);
+            for (int other = 0; other < 4; other++) {
+                if (ppu.tableName[other][0x55] == data) tables[table] = other;
+            }
+        }
+        return tables;
+    }
+
+    private static void setup(Ppu ppu, Random random) {
+        ppu.cpuWrite(0x0006, 0x20);
+        ppu.cpuWrite(0x0006, 0x00);
+        for (int i = 0; i < 0x1000; i++) {
+            ppu.cpuWrite(0x0007, random.nextInt(256));
+        }
+        ppu.cpuWrite(0x0006, 0x3F);
+        ppu.cpuWrite(0x0006, 0x00);
+        for (int i = 0; i < 32; i++) {
+            ppu.cpuWrite(0x0007, random.nextInt(64));
+        }
+        for (int i = 0; i < 256; i++) {
+            ppu.cpuWrite(0x0003, i);
+            ppu.cpuWrite(0x0004, (i & 0x03) == 0 ? random.nextInt(250) : random.nextInt(256));
+        }
+        ppu.cpuWrite(0x0005, random.nextInt(256));
+        ppu.cpuWrite(0x0005, random.nextInt(240));
+        ppu.cpuWrite(0x0000, random.nextInt(256));
+        ppu.cpuWrite(0x0001, 0x1E);
+    }
+
+    private Cartridge randomCartridge(Random random, int seed) throws IOException {
+        byte[] rom = new byte[16 + 16384 + 8192];
+        System.arraycopy(new byte[]{'N', 'E', 'S', 0x1A, 1, 1, (byte) (seed & 0x01)}, 0, rom, 0, 7);
+        byte[] chr = new byte[8192];
+        random.nextBytes(chr);
+        System.arraycopy(chr, 0, rom, 16 + 16384, chr.length);
+        Path file = tempDir.resolve("random" + seed + ".nes");
+        Files.write(file, rom);
+        return new Cartridge(file.toString());
+    }
+
+}
@@ -0,0 +1,34 @@
+package me.fabriciorby.nes.ppu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpriteTest {
+
+    @Test
+    void convertsIndicesToArgbRowMajor() {
+        Sprite sprite = new Sprite(4, 2);
+        sprite.setPixel(3, 1, 0x21);
+        sprite.setPixel(4, 1, 0x30); // outside, ignored
+
+        int[] argb = sprite.toArgb();
+
+        assertEquals(0xFF545454, argb[0]);
+        assertEquals(0xFF4C9AEC, argb[7]);
+    }
+
+    @Test
+    void emphasisDimsOtherChannels() {
+        Sprite sprite = new Sprite(2, 1);
+        sprite.setPixel(0, 0, 0x20);
+        sprite.setPixel(1, 0, 0x0F);
+        sprite.setEmphasis(0, 0x01); // red
+
+        int[] argb = sprite.toArgb();
+
+        assertEquals(0xFFECC2C0, argb[0]);
+        assertEquals(0xFF000000, argb[1]);
+    }
+
+}
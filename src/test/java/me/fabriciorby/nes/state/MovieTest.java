@@ -0,0 +1,82 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import me.fabriciorby.nes.ppu.Ppu;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieTest {
+
+    @Test
+    void playsBackAndSeeks(@TempDir Path tempDir) throws IOException {
+        Bus original = boot();
+        Movie recording = new Movie(original.getCartridge().getRomHash(), 10, 25);
+        byte[][] screens = new byte[80][];
+        for (int frame = 0; frame < 80; frame++) {
+            original.controller[0] = (byte) (frame >= 30 && frame < 34 ? 0x10 : 0x00); // START runs the tests
+            original.controller[1] = (byte) frame;
+            recording.record(original);
+            original.frame();
+            screens[frame] = original.ppu.getScreen().getIndices().clone();
+        }
+        recording.write(tempDir.resolve("nestest.movie"));
+
+        Movie movie = Movie.read(tempDir.resolve("nestest.movie"));
+        assertEquals(80, movie.getLength());
+
+        Bus played = boot();
+        movie.seek(played, 0);
+        for (int frame = 0; frame < 80; frame++) {
+            assertTrue(movie.play(played));
+            assertEquals((byte) frame, played.controller[1]);
+            played.frame();
+            assertArrayEquals(screens[frame], played.ppu.getScreen().getIndices());
+        }
+        assertFalse(movie.play(played));
+
+        // from the keyframe at 50, then 7 frames forward
+        movie.seek(played, 57);
+        assertEquals(57, movie.getPosition());
+        played.frame();
+        assertArrayEquals(screens[56], played.ppu.getScreen().getIndices());
+    }
+
+    @Test
+    void detectsDesync() {
+        Bus nes = boot();
+        Movie movie = new Movie(nes.getCartridge().getRomHash(), 10, 100);
+        for (int frame = 0; frame < 20; frame++) {
+            movie.record(nes);
+            nes.frame();
+        }
+
+        movie.seek(nes, 5);
+        nes.cpuRam[0x10] ^= 0xFF; // something the input alone can't explain
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+            while (movie.play(nes)) nes.frame();
+        });
+        assertEquals("Movie desynced at frame 10", e.getMessage());
+    }
+
+    @Test
+    void rejectsOtherRoms() {
+        Movie movie = new Movie(0x12345678, 60, 600);
+        assertThrows(IllegalArgumentException.class, () -> movie.record(boot()));
+    }
+
+    private static Bus boot() {
+        Bus nes = new Bus();
+        nes.setMode(Bus.Mode.INSTRUCTION);
+        nes.ppu.setRenderer(Ppu.Renderer.SCANLINE);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        return nes;
+    }
+
+}
@@ -0,0 +1,83 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RewindTest {
+
+    @Test
+    void playsHistoryBackwards() {
+        Bus nes = boot();
+        Rewind rewind = new Rewind(2, 8, Long.MAX_VALUE);
+        List<int[]> rams = new ArrayList<>();
+        for (int frame = 0; frame < 100; frame++) {
+            nes.controller[0] = (byte) (frame >= 30 && frame < 34 ? 0x10 : 0x00);
+            nes.frame();
+            rewind.capture(nes);
+            if (frame % 2 == 1) rams.add(nes.cpuRam.clone());
+        }
+        assertEquals(50, rewind.size());
+
+        // one snapshot every other call, newest first
+        for (int i = rams.size() - 1; i >= 0; i--) {
+            assertTrue(rewind.rewind(nes));
+            assertArrayEquals(rams.get(i), nes.cpuRam);
+            if (i > 0) assertTrue(rewind.rewind(nes));
+        }
+        assertEquals(0, rewind.size());
+        assertFalse(rewind.rewind(nes));
+    }
+
+    @Test
+    void staysWithinBudget() {
+        Bus nes = boot();
+        Rewind unbounded = new Rewind(1, 10, Long.MAX_VALUE);
+        Rewind bounded = new Rewind(1, 10, 400_000);
+        List<int[]> rams = new ArrayList<>();
+        for (int frame = 0; frame < 120; frame++) {
+            nes.frame();
+            unbounded.capture(nes);
+            bounded.capture(nes);
+            rams.add(nes.cpuRam.clone());
+        }
+        assertTrue(bounded.memoryUsed() <= 400_000);
+        assertTrue(bounded.size() < unbounded.size());
+        // deltas are a fraction of a whole state
+        assertTrue(unbounded.memoryUsed() < 120L * new SaveState().save(nes).remaining() / 4);
+
+        // the oldest ones went, whatever is left still goes back to where it was taken
+        int oldest = 120 - bounded.size();
+        while (bounded.size() > 0) bounded.rewind(nes);
+        assertArrayEquals(rams.get(oldest), nes.cpuRam);
+    }
+
+    @Test
+    void deltaRoundTrips() {
+        byte[] keyframe = new byte[1000];
+        byte[] state = new byte[1000];
+        for (int i = 0; i < state.length; i++) {
+            keyframe[i] = (byte) i;
+            state[i] = (byte) (i % 3 == 0 || (i > 500 && i < 700) ? i * 7 : i);
+        }
+        byte[] delta = new byte[2 * state.length + 16];
+        int size = Rewind.encode(state, keyframe, state.length, delta);
+        byte[] decoded = new byte[1000];
+        Rewind.decode(java.util.Arrays.copyOf(delta, size), keyframe, decoded);
+        assertArrayEquals(state, decoded);
+    }
+
+    private static Bus boot() {
+        Bus nes = new Bus();
+        nes.setMode(Bus.Mode.INSTRUCTION);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        return nes;
+    }
+
+}
@@ -0,0 +1,50 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunAheadTest {
+
+    @Test
+    void showsTheFutureWithoutChangingThePresent() {
+        // not RECOMPILED: when interrupts land there depends on which blocks are already translated, and the
+        // frames run ahead translate them sooner
+        for (Bus.Mode mode : new Bus.Mode[]{Bus.Mode.DOT, Bus.Mode.INSTRUCTION}) {
+            Bus plain = boot(mode);
+            Bus ahead = boot(mode);
+            RunAhead runAhead = new RunAhead(2);
+            SaveState fork = new SaveState();
+            Bus future = boot(mode);
+
+            for (int frame = 0; frame < 60; frame++) {
+                byte input = (byte) (frame >= 30 && frame < 34 ? 0x10 : 0x00);
+                plain.controller[0] = input;
+                ahead.controller[0] = input;
+                plain.frame();
+                runAhead.frame(ahead);
+
+                assertEquals(plain.cpu.clockCount, ahead.cpu.clockCount, mode.name());
+                assertArrayEquals(plain.cpuRam, ahead.cpuRam, mode.name());
+
+                // two more frames on the same input is what's on the screen
+                SaveState.load(future, fork.save(plain));
+                future.controller[0] = input;
+                future.frame();
+                future.frame();
+                assertArrayEquals(future.ppu.getScreen().getIndices(), ahead.ppu.getScreen().getIndices(), mode.name());
+            }
+        }
+    }
+
+    private static Bus boot(Bus.Mode mode) {
+        Bus nes = new Bus();
+        nes.setMode(mode);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        return nes;
+    }
+
+}
@@ -0,0 +1,80 @@
+package me.fabriciorby.nes.state;
+
+import me.fabriciorby.nes.Bus;
+import me.fabriciorby.nes.cartridge.Cartridge;
+import me.fabriciorby.nes.ppu.Ppu;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveStateTest {
+
+    @Test
+    void loadedStateContinuesIdentically(@TempDir Path tempDir) throws IOException {
+        Bus original = boot(Bus.Mode.INSTRUCTION, Ppu.Renderer.DOT);
+        for (int frame = 0; frame < 40; frame++) {
+            original.controller[0] = (byte) (frame >= 30 && frame < 34 ? 0x10 : 0x00); // START runs the tests
+            original.frame();
+        }
+        // halfway through a frame, in the middle of an instruction
+        for (int i = 0; i < 12345; i++) original.clock();
+
+        SaveState state = new SaveState();
+        state.save(original);
+        state.write(tempDir.resolve("nestest.state"));
+
+        // a state doesn't care which mode or renderer wrote it
+        Bus restored = boot(Bus.Mode.DOT, Ppu.Renderer.SCANLINE);
+        SaveState.load(restored, SaveState.read(tempDir.resolve("nestest.state")));
+
+        for (int frame = 0; frame < 30; frame++) {
+            original.frame();
+            restored.frame();
+            assertEquals(original.cpu.clockCount, restored.cpu.clockCount);
+            assertEquals(original.cpu.programCounter, restored.cpu.programCounter);
+            assertArrayEquals(original.cpuRam, restored.cpuRam);
+            assertArrayEquals(original.ppu.getScreen().getIndices(), restored.ppu.getScreen().getIndices());
+        }
+
+        // and the same state loads again into the machine that wrote it
+        state.load(original);
+        ByteBuffer again = new SaveState().save(original);
+        assertEquals(state.save(original), again);
+    }
+
+    @Test
+    void rejectsOtherData() {
+        Bus nes = boot(Bus.Mode.INSTRUCTION, Ppu.Renderer.DOT);
+        assertThrows(IllegalArgumentException.class, () -> SaveState.load(nes, ByteBuffer.allocate(64)));
+    }
+
+    @Test
+    void writesOnlyTheLastSave(@TempDir Path tempDir) throws IOException {
+        SaveState state = new SaveState();
+        Path file = tempDir.resolve("nestest.state");
+        assertThrows(IllegalStateException.class, () -> state.write(file));
+        assertThrows(IllegalStateException.class, () -> state.load(boot(Bus.Mode.INSTRUCTION, Ppu.Renderer.DOT)));
+
+        ByteBuffer saved = state.save(boot(Bus.Mode.INSTRUCTION, Ppu.Renderer.DOT));
+        int length = saved.limit();
+        saved.position(length).limit(SaveState.CAPACITY); // the caller is free to use the buffer
+        state.write(file);
+        assertEquals(length, Files.size(file));
+    }
+
+    private static Bus boot(Bus.Mode mode, Ppu.Renderer renderer) {
+        Bus nes = new Bus();
+        nes.setMode(mode);
+        nes.ppu.setRenderer(renderer);
+        nes.insert(new Cartridge("nestest.nes"));
+        nes.reset();
+        return nes;
+    }
+
+}